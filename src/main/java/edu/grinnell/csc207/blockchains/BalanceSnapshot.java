@@ -0,0 +1,205 @@
+package edu.grinnell.csc207.blockchains;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+import edu.grinnell.csc207.util.BalanceTable;
+import edu.grinnell.csc207.util.NullKeyException;
+
+/**
+ * Every user's balance as of one block in a chain, tagged with the height and hash of that block
+ * so it can be matched against the chain when it is read back. A chain that finds a matching
+ * snapshot on startup only has to replay the transactions after it.
+ *
+ * A snapshot is stored as [magic][height][hash][number of accounts][accounts...][CRC-32], with
+ * each account as a length-prefixed UTF-8 name and a balance. It is written to a temporary file
+ * that is then renamed over the old snapshot, so a crash leaves either the old snapshot or the
+ * new one, never a mix.
+ *
+ * @author Alex Pollock
+ * @author Kevin Tang
+ */
+public class BalanceSnapshot {
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * The first four bytes of every snapshot ("BAL1").
+   */
+  static final int MAGIC = 0x42414c31;
+
+  /**
+   * The name of the snapshot file.
+   */
+  static final String FILE = "balances.snap";
+
+  /**
+   * The name of the file the next snapshot is written to before it replaces the old one.
+   */
+  static final String TEMP_FILE = "balances.snap.tmp";
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The height of the last block whose transaction the balances include.
+   */
+  int height;
+
+  /**
+   * The hash of that block.
+   */
+  Hash tip;
+
+  /**
+   * The balances.
+   */
+  BalanceTable balances;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Create a snapshot.
+   *
+   * @param blockHeight The height of the last block whose transaction the balances include.
+   * @param tipHash The hash of that block.
+   * @param table The balances.
+   */
+  public BalanceSnapshot(int blockHeight, Hash tipHash, BalanceTable table) {
+    this.height = blockHeight;
+    this.tip = tipHash;
+    this.balances = table;
+  } // BalanceSnapshot(int, Hash, BalanceTable)
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Read a length-prefixed array of bytes.
+   *
+   * @param buf Where to read from.
+   *
+   * @return the bytes.
+   */
+  static byte[] bytes(ByteBuffer buf) {
+    byte[] result = new byte[buf.getInt()];
+    buf.get(result);
+    return result;
+  } // bytes(ByteBuffer)
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  /**
+   * Get the height of the last block whose transaction the balances include.
+   *
+   * @return the height.
+   */
+  public int getHeight() {
+    return this.height;
+  } // getHeight()
+
+  /**
+   * Get the hash of the last block whose transaction the balances include.
+   *
+   * @return the hash.
+   */
+  public Hash getTip() {
+    return this.tip;
+  } // getTip()
+
+  /**
+   * Get the balances.
+   *
+   * @return the balances.
+   */
+  public BalanceTable getBalances() {
+    return this.balances;
+  } // getBalances()
+
+  /**
+   * Write the snapshot to a directory, replacing any snapshot already there.
+   *
+   * @param dir The directory.
+   *
+   * @throws IOException if the snapshot cannot be written.
+   */
+  public void write(Path dir) throws IOException {
+    byte[][] names = new byte[this.balances.size()][];
+    byte[] hash = this.tip.getBytes();
+    int length = Integer.BYTES * 4 + hash.length + Long.BYTES * names.length;
+    for (int i = 0; i < names.length; i++) {
+      names[i] = this.balances.keyAt(i).getBytes(StandardCharsets.UTF_8);
+      length += Integer.BYTES + names[i].length;
+    } // for
+    ByteBuffer buf = ByteBuffer.allocate(length + Integer.BYTES);
+    buf.putInt(MAGIC).putInt(this.height).putInt(hash.length).put(hash).putInt(names.length);
+    for (int i = 0; i < names.length; i++) {
+      buf.putInt(names[i].length).put(names[i]).putLong(this.balances.valueAt(i));
+    } // for
+    CRC32 crc = new CRC32();
+    crc.update(buf.array(), 0, length);
+    buf.putInt((int) crc.getValue()).flip();
+
+    Path temp = dir.resolve(TEMP_FILE);
+    try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE,
+        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+      while (buf.hasRemaining()) {
+        out.write(buf);
+      } // while
+      out.force(true);
+    } // try
+    Files.move(temp, dir.resolve(FILE), StandardCopyOption.REPLACE_EXISTING,
+        StandardCopyOption.ATOMIC_MOVE);
+  } // write(Path)
+
+  /**
+   * Read the snapshot in a directory.
+   *
+   * @param dir The directory.
+   *
+   * @return the snapshot, or null if there is none or it is damaged.
+   *
+   * @throws IOException if the snapshot exists but cannot be read.
+   */
+  public static BalanceSnapshot read(Path dir) throws IOException {
+    Path file = dir.resolve(FILE);
+    if (!Files.exists(file)) {
+      return null;
+    } // if
+    byte[] data = Files.readAllBytes(file);
+    if (data.length < Integer.BYTES * 5) {
+      return null;
+    } // if
+    CRC32 crc = new CRC32();
+    crc.update(data, 0, data.length - Integer.BYTES);
+    ByteBuffer buf = ByteBuffer.wrap(data);
+    if (buf.getInt() != MAGIC || buf.getInt(data.length - Integer.BYTES) != (int) crc.getValue()) {
+      return null;
+    } // if
+    try {
+      int blockHeight = buf.getInt();
+      Hash hash = new Hash(bytes(buf));
+      BalanceTable table = new BalanceTable();
+      for (int count = buf.getInt(); count > 0; count--) {
+        table.add(new String(bytes(buf), StandardCharsets.UTF_8), buf.getLong());
+      } // for
+      return new BalanceSnapshot(blockHeight, hash, table);
+    } catch (BufferUnderflowException | NegativeArraySizeException | NullKeyException e) {
+      return null;
+    } // try/catch
+  } // read(Path)
+} // class BalanceSnapshot
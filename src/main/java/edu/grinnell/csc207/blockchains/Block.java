@@ -1,30 +1,25 @@
 package edu.grinnell.csc207.blockchains;
 
 import java.nio.ByteBuffer;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.Random;
 
 /**
- * Blocks to be stored in blockchains.
+ * Blocks to be stored in blockchains. A block carries either a single transaction, hashed
+ * directly as blocks always have been, or a batch of transactions, hashed through the root of
+ * a Merkle tree over the batch so that mining costs the same however large the batch is.
+ *
+ * A block may also carry the time it was mined, which is hashed with the rest of it. Chains
+ * whose difficulty changes work it out from these times, so that any node can check it; blocks
+ * without a time have a time of 0 and hash as they always have.
  *
  * @author Alex Pollock
  * @author Kevin Tang
  * @author Samuel A. Rebelsky
  */
 public class Block {
-
-  /**
-   * The byte buffer used for ints.
-   */
-  static ByteBuffer intBuffer = ByteBuffer.allocate(Integer.BYTES);
-
-  /**
-   * The byte buffer used for longs.
-   */
-  static ByteBuffer longBuffer = ByteBuffer.allocate(Long.BYTES);
-
-
   // +--------+------------------------------------------------------
   // | Fields |
   // +--------+
@@ -34,10 +29,20 @@ public class Block {
   int num;
 
   /**
-   * The transaction on the block.
+   * The transaction on the block (or, for a batch, the first transaction in the batch).
    */
   Transaction transaction;
 
+  /**
+   * The batch of transactions on the block (or null, if the block has a single transaction).
+   */
+  Transaction[] batch;
+
+  /**
+   * The Merkle root of the batch (or null, if the block has a single transaction).
+   */
+  Hash merkleRoot;
+
   /**
    * The previous hash.
    */
@@ -49,14 +54,14 @@ public class Block {
   Hash currHash;
 
   /**
-   * The message digest used to generate the hash.
+   * The nonce.
    */
-  MessageDigest md;
+  long nonce;
 
   /**
-   * The nonce.
+   * When the block was mined, in milliseconds since the epoch (or 0, if the block has no time).
    */
-  long nonce;
+  long time;
 
   // +--------------+------------------------------------------------
   // | Constructors |
@@ -72,22 +77,32 @@ public class Block {
    * @param check The validator used to check the block.
    */
   public Block(int number, Transaction transact, Hash preveiousHash, HashValidator check) {
+    this(number, 0, transact, preveiousHash, check);
+  } // Block(int, Transaction, Hash, HashValidator)
+
+  /**
+   * Create a new block with a time from the specified block number, transaction, and previous
+   * hash, mining to choose a nonce that meets the requirements of the validator.
+   *
+   * @param number The number of the block.
+   * @param minedAt When the block is mined, in milliseconds since the epoch (or 0, for none).
+   * @param transact The transaction for the block.
+   * @param previousHash The hash of the previous block.
+   * @param check The validator used to check the block.
+   */
+  public Block(int number, long minedAt, Transaction transact, Hash previousHash,
+      HashValidator check) {
     this.num = number;
+    this.time = minedAt;
     this.transaction = transact;
-    this.prevHash = preveiousHash;
+    this.prevHash = previousHash;
     Random rand = new Random();
+    NonceHasher hasher = hasher();
     do {
       this.nonce = rand.nextLong();
-      try {
-        this.computeHash();
-      } catch (NoSuchAlgorithmException e) {
-      } // try/catch
-    } while (!check.isValid(currHash));
-    try {
-      computeHash();
-    } catch (NoSuchAlgorithmException e) {
-    } // try/catch
-  } // Block(int, Transaction, Hash, HashValidator)
+    } while (!check.isValid(hasher.candidate(this.nonce)));
+    this.currHash = new Hash(hasher.digest);
+  } // Block(int, long, Transaction, Hash, HashValidator)
 
   /**
    * Create a new block, computing the hash for the block.
@@ -98,59 +113,223 @@ public class Block {
    * @param inputNonce The nonce of the block.
    */
   public Block(int number, Transaction transact, Hash previousHash, long inputNonce) {
+    this(number, 0, transact, previousHash, inputNonce);
+  } // Block(int, Transaction, Hash, long)
+
+  /**
+   * Create a new block with a time, computing the hash for the block.
+   *
+   * @param number The number of the block.
+   * @param minedAt When the block was mined, in milliseconds since the epoch (or 0, for none).
+   * @param transact The transaction for the block.
+   * @param previousHash The hash of the previous block.
+   * @param inputNonce The nonce of the block.
+   */
+  public Block(int number, long minedAt, Transaction transact, Hash previousHash,
+      long inputNonce) {
     this.num = number;
+    this.time = minedAt;
     this.transaction = transact;
     this.prevHash = previousHash;
     this.nonce = inputNonce;
-    try {
-      this.computeHash();
-    } catch (NoSuchAlgorithmException e) {
-    } // try/catch
-  } // Block(int, Transaction, Hash, long)
+    this.computeHash();
+  } // Block(int, long, Transaction, Hash, long)
+
+  /**
+   * Rebuild a block whose hash is already known, such as one read back from storage. The hash
+   * is trusted; checking the chain recomputes it.
+   *
+   * @param number The number of the block.
+   * @param minedAt When the block was mined, in milliseconds since the epoch (or 0, for none).
+   * @param transact The transaction for the block.
+   * @param previousHash The hash of the previous block.
+   * @param inputNonce The nonce of the block.
+   * @param hash The hash of the block.
+   */
+  Block(int number, long minedAt, Transaction transact, Hash previousHash, long inputNonce,
+      Hash hash) {
+    this.num = number;
+    this.time = minedAt;
+    this.transaction = transact;
+    this.prevHash = previousHash;
+    this.nonce = inputNonce;
+    this.currHash = hash;
+  } // Block(int, long, Transaction, Hash, long, Hash)
+
+  /**
+   * Create a new block with a batch of transactions from the specified block number and
+   * previous hash, mining to choose a nonce that meets the requirements of the validator.
+   *
+   * @param number The number of the block.
+   * @param transactions The transactions for the block, in order.
+   * @param previousHash The hash of the previous block.
+   * @param check The validator used to check the block.
+   *
+   * @throws IllegalArgumentException if there are no transactions.
+   */
+  public Block(int number, List<Transaction> transactions, Hash previousHash,
+      HashValidator check) {
+    this(number, 0, transactions, previousHash, check);
+  } // Block(int, List<Transaction>, Hash, HashValidator)
+
+  /**
+   * Create a new block with a time and a batch of transactions from the specified block number
+   * and previous hash, mining to choose a nonce that meets the requirements of the validator.
+   *
+   * @param number The number of the block.
+   * @param minedAt When the block is mined, in milliseconds since the epoch (or 0, for none).
+   * @param transactions The transactions for the block, in order.
+   * @param previousHash The hash of the previous block.
+   * @param check The validator used to check the block.
+   *
+   * @throws IllegalArgumentException if there are no transactions.
+   */
+  public Block(int number, long minedAt, List<Transaction> transactions, Hash previousHash,
+      HashValidator check) {
+    this(number, minedAt, transactions.toArray(new Transaction[0]),
+        MerkleTree.root(transactions), previousHash, 0, null);
+    Random rand = new Random();
+    NonceHasher hasher = hasher();
+    do {
+      this.nonce = rand.nextLong();
+    } while (!check.isValid(hasher.candidate(this.nonce)));
+    this.currHash = new Hash(hasher.digest);
+  } // Block(int, long, List<Transaction>, Hash, HashValidator)
+
+  /**
+   * Create a new block with a batch of transactions, computing the hash for the block.
+   *
+   * @param number The number of the block.
+   * @param transactions The transactions for the block, in order.
+   * @param previousHash The hash of the previous block.
+   * @param inputNonce The nonce of the block.
+   *
+   * @throws IllegalArgumentException if there are no transactions.
+   */
+  public Block(int number, List<Transaction> transactions, Hash previousHash, long inputNonce) {
+    this(number, 0, transactions, previousHash, inputNonce);
+  } // Block(int, List<Transaction>, Hash, long)
+
+  /**
+   * Create a new block with a time and a batch of transactions, computing the hash for the
+   * block.
+   *
+   * @param number The number of the block.
+   * @param minedAt When the block was mined, in milliseconds since the epoch (or 0, for none).
+   * @param transactions The transactions for the block, in order.
+   * @param previousHash The hash of the previous block.
+   * @param inputNonce The nonce of the block.
+   *
+   * @throws IllegalArgumentException if there are no transactions.
+   */
+  public Block(int number, long minedAt, List<Transaction> transactions, Hash previousHash,
+      long inputNonce) {
+    this(number, minedAt, transactions.toArray(new Transaction[0]),
+        MerkleTree.root(transactions), previousHash, inputNonce, null);
+    this.computeHash();
+  } // Block(int, long, List<Transaction>, Hash, long)
+
+  /**
+   * Rebuild a block with a batch of transactions whose Merkle root and hash are already known,
+   * such as one read back from storage. Both are trusted; checking the chain recomputes them.
+   *
+   * @param number The number of the block.
+   * @param minedAt When the block was mined, in milliseconds since the epoch (or 0, for none).
+   * @param transactions The transactions for the block, which the block takes over.
+   * @param root The Merkle root of the transactions.
+   * @param previousHash The hash of the previous block.
+   * @param inputNonce The nonce of the block.
+   * @param hash The hash of the block.
+   */
+  Block(int number, long minedAt, Transaction[] transactions, Hash root, Hash previousHash,
+      long inputNonce, Hash hash) {
+    this.num = number;
+    this.time = minedAt;
+    this.batch = transactions;
+    this.transaction = transactions[0];
+    this.merkleRoot = root;
+    this.prevHash = previousHash;
+    this.nonce = inputNonce;
+    this.currHash = hash;
+  } // Block(int, long, Transaction[], Hash, Hash, long, Hash)
 
   // +---------+-----------------------------------------------------
   // | Helpers |
   // +---------+
 
   /**
-   * Convert an integer into its bytes.
+   * Build a hasher for this block's contents.
    *
-   * @param i The integer to convert.
+   * @return the hasher.
+   */
+  NonceHasher hasher() {
+    if (this.batch == null) {
+      return new NonceHasher(
+          NonceHasher.prefix(this.num, this.time, this.transaction, this.prevHash));
+    } // if
+    return new NonceHasher(NonceHasher.prefix(this.num, this.time, this.batch.length,
+        this.merkleRoot, this.prevHash));
+  } // hasher()
+
+  /**
+   * Hash the block's contents and nonce once, with this thread's encoder. The encoder's buffers
+   * are reused from call to call and belong to this thread, so blocks may be hashed on many
+   * threads at once.
    *
-   * @return The bytes of that integer.
+   * @return a hash that shares the encoder's digest buffer; it changes on the thread's next
+   *         hash.
    */
-  static byte[] intToBytes(int i) {
-    intBuffer.clear();
-    return intBuffer.putInt(i).array();
-  } // intToBytes(int)
+  Hash digest() {
+    NonceHasher.Encoder enc = NonceHasher.ENCODER.get();
+    ByteBuffer buf;
+    if (this.batch == null) {
+      buf = enc.start(
+          BlockCodec.preimageLength(this.num, this.time, this.transaction, this.prevHash));
+      BlockCodec.putPreimage(buf, this.num, this.time, this.transaction, this.prevHash);
+    } else {
+      buf = enc.start(BlockCodec.batchPreimageLength(this.time, this.merkleRoot, this.prevHash));
+      BlockCodec.putBatchPreimage(buf, this.num, this.time, this.batch.length, this.merkleRoot,
+          this.prevHash);
+    } // if/else
+    return enc.finish(this.nonce);
+  } // digest()
 
   /**
-   * Convert a long into its bytes.
+   * Compute the hash of the block given all the other info already stored in the block.
+   */
+  void computeHash() {
+    this.currHash = Hash.wrap(digest().getBytes());
+  } // computeHash()
+
+  /**
+   * Build the block with the same contents, time, and nonce as this one but a given previous hash,
+   * computing its hash (and, for a batch, its Merkle root) from scratch.
    *
-   * @param l The long to convert.
+   * @param previousHash The hash of the previous block.
    *
-   * @return The bytes in that long.
+   * @return the new block.
    */
-  static byte[] longToBytes(long l) {
-    longBuffer.clear();
-    return longBuffer.putLong(l).array();
-  } // longToBytes()
+  Block relink(Hash previousHash) {
+    if (this.batch == null) {
+      return new Block(this.num, this.time, this.transaction, previousHash, this.nonce);
+    } // if
+    return new Block(this.num, this.time, Arrays.asList(this.batch), previousHash, this.nonce);
+  } // relink(Hash)
 
   /**
-   * Compute the hash of the block given all the other info already stored in the block.
+   * Determine whether the block's hash (and, for a batch, its Merkle root) is correct for its
+   * own contents and previous hash. Unlike relink, this builds no new block, so callers that
+   * have already checked the previous hash can check many blocks cheaply, on many threads.
    *
-   * @throws NoSuchAlgorithmException
-   */
-  void computeHash() throws NoSuchAlgorithmException {
-    md = MessageDigest.getInstance("sha-256");
-    md.update(intToBytes(this.getNum()));
-    md.update(this.getTransaction().getSource().getBytes());
-    md.update(this.getTransaction().getTarget().getBytes());
-    md.update(intToBytes(this.getTransaction().getAmount()));
-    md.update(this.getPrevHash().getBytes());
-    md.update(longToBytes(this.getNonce()));
-    this.currHash = new Hash(md.digest());
-  } // computeHash()
+   * @return true if the hash and root are correct and false otherwise.
+   */
+  boolean hasCorrectHash() {
+    if (this.batch != null
+        && !MerkleTree.root(Arrays.asList(this.batch)).equals(this.merkleRoot)) {
+      return false;
+    } // if
+    return digest().equals(this.currHash);
+  } // hasCorrectHash()
 
   // +---------+-----------------------------------------------------
   // | Methods |
@@ -166,7 +345,8 @@ public class Block {
   } // getNum()
 
   /**
-   * Get the transaction stored in this block.
+   * Get the transaction stored in this block. A block with a batch returns the first
+   * transaction in the batch; use getTransactions() to see them all.
    *
    * @return the transaction.
    */
@@ -174,6 +354,36 @@ public class Block {
     return this.transaction;
   } // getTransaction()
 
+  /**
+   * Get every transaction stored in this block, in order.
+   *
+   * @return an unmodifiable list of the transactions.
+   */
+  public List<Transaction> getTransactions() {
+    if (this.batch == null) {
+      return Collections.singletonList(this.transaction);
+    } // if
+    return Collections.unmodifiableList(Arrays.asList(this.batch));
+  } // getTransactions()
+
+  /**
+   * Get the Merkle root of the batch of transactions in this block.
+   *
+   * @return the root, or null if the block has a single transaction.
+   */
+  public Hash getMerkleRoot() {
+    return this.merkleRoot;
+  } // getMerkleRoot()
+
+  /**
+   * Get the time at which this block was mined.
+   *
+   * @return the time, in milliseconds since the epoch, or 0 if the block has no time.
+   */
+  public long getTime() {
+    return this.time;
+  } // getTime()
+
   /**
    * Get the nonce of this block.
    *
@@ -207,7 +417,9 @@ public class Block {
    * @return a string representation of the block.
    */
   public String toString() {
-    return "Block " + num + "(Transaction: " + this.transaction.toString() + ", Nonce: "
-        + this.nonce + ", prevHash: " + this.prevHash + ", hash: " + this.currHash.toString() + ")";
+    String contents = (this.batch == null) ? "Transaction: " + this.transaction.toString()
+        : "Transactions: " + Arrays.toString(this.batch) + ", Merkle root: " + this.merkleRoot;
+    return "Block " + num + "(" + contents + ", Nonce: " + this.nonce + ", prevHash: "
+        + this.prevHash + ", hash: " + this.currHash.toString() + ")";
   } // toString()
 } // class Block
@@ -1,41 +1,156 @@
 package edu.grinnell.csc207.blockchains;
 
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.ConcurrentModificationException;
 import java.util.Iterator;
-import edu.grinnell.csc207.util.AssociativeArray;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntPredicate;
+import java.util.function.IntToLongFunction;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+import edu.grinnell.csc207.util.BalanceTable;
 import edu.grinnell.csc207.util.KeyNotFoundException;
 import edu.grinnell.csc207.util.NullKeyException;
 
 /**
- * A full blockchain.
+ * A full blockchain. Chains live in memory unless they are given a directory, in which case every
+ * block is also written to a log there and the chain is rebuilt from that log when it is next
+ * opened.
+ *
+ * Chains are safe to share between threads. Any number of threads may read the chain at once
+ * (finding balances, iterating, verifying, mining against the tip) while one thread at a time
+ * adds or removes blocks. Each method sees the chain either before or after any change, never
+ * during one, so the tip, the length, and the balances it reports always agree; read() runs
+ * several queries against the same state. Iterators read the chain as it was when they were
+ * made, and fail if blocks they have yet to reach are removed. Mining holds no lock, so blocks
+ * can be added while other threads mine. Blocks replaced through a BlockNode are not covered.
+ *
+ * Writers take turns, and check their blocks and write them to the log and snapshots before
+ * they lock readers out, only to publish the change in memory. Readers therefore never wait for
+ * the disk.
  *
  * @author Alex Pollock
  * @author Kevin Tang
  */
-public class BlockChain {
+public class BlockChain implements Closeable {
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * The number of blocks below which we verify on a single thread.
+   */
+  static final int PARALLEL_THRESHOLD = 1024;
+
+  /**
+   * The default number of blocks between snapshots of the balances of a persisted chain.
+   */
+  static final int SNAPSHOT_INTERVAL = 1024;
+
   // +--------+------------------------------------------------------
   // | Fields |
   // +--------+
   /**
-   * First Node.
+   * The blocks in the chain, by height.
    */
-  BlockNode first;
+  BlockStore store;
   /**
-   * Last Node.
+   * Hash validator.
    */
-  BlockNode last;
+  HashValidator simpleValidator = (hash) -> (hash.length() >= 1) && (hash.get(0) == 0);
   /**
-   * Length of chain.
+   * Table of every user's balance.
    */
-  int length;
+  BalanceTable balance;
   /**
-   * Hash validator.
+   * The miner used to find nonces for new blocks.
    */
-  HashValidator simpleValidator = (hash) -> (hash.length() >= 1) && (hash.get(0) == 0);
+  ParallelMiner miner;
+  /**
+   * How difficulty changes as blocks are added (or null, if it never changes).
+   */
+  DifficultyRetarget retarget;
+  /**
+   * The validator for the first window of blocks, from which the policy works out the rest.
+   */
+  HashValidator initialValidator;
+  /**
+   * Where we get the time to put in the blocks we mine.
+   */
+  LongSupplier clock = System::currentTimeMillis;
+  /**
+   * Where blocks are persisted (or null, if the chain lives only in memory).
+   */
+  BlockLog log;
+  /**
+   * The number of blocks between snapshots of the balances, if the chain is persisted.
+   */
+  int snapshotInterval = SNAPSHOT_INTERVAL;
   /**
-   * Associative array to store balance.
+   * The heights of blocks by hash (or null, until someone first looks a block up).
    */
-  AssociativeArray<String, Integer> balance;
+  HashIndex hashes;
+
+  /**
+   * The blocks that name each user (or null, until someone asks for a user's history).
+   */
+  HistoryIndex histories;
+
+  /**
+   * A Merkle tree over every block (or null, until someone asks for a root or a proof).
+   */
+  ChainAccumulator accumulator;
+  /**
+   * Guards the blocks, balances, and difficulty: readers share it and writers hold it alone.
+   */
+  ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+  /**
+   * Held by whichever thread is changing the chain, so that writers take turns. A writer needs
+   * the write lock only while it publishes its change; since no one else changes the chain, it
+   * may read the chain without a lock before then.
+   */
+  Object writerLock = new Object();
+
+  /**
+   * Guards the indexes that are built (or rebuilt) while the chain is being read.
+   */
+  Object indexLock = new Object();
+
+  /**
+   * Guards the record of how far the chain has been verified.
+   */
+  Object verifyLock = new Object();
+
+  /**
+   * Guards the snapshot file, which readers may write at the same time.
+   */
+  Object snapshotLock = new Object();
+
+  /**
+   * The number of blocks that have been removed, so that iterators notice removals.
+   */
+  int removals;
+
+  /**
+   * The height of the first block that has not been verified. Every block below it was correct
+   * when last checked.
+   */
+  int verifiedHeight = 1;
+  /**
+   * The hash of the block just below verifiedHeight when it was verified.
+   */
+  Hash verifiedHash;
 
 
   // +--------------+------------------------------------------------
@@ -48,81 +163,619 @@ public class BlockChain {
    * @param check The validator used to check elements.
    */
   public BlockChain(HashValidator check) {
-    this.length = 1;
-    this.simpleValidator = check;
-    this.first = new BlockNode(null, null,
-        new Block(0, new Transaction("", "", 0), new Hash(new byte[] {}), simpleValidator));
-    this.last = this.first;
-    this.balance = new AssociativeArray<String, Integer>();
+    this(check, new ParallelMiner());
   } // BlockChain(HashValidator)
 
+  /**
+   * Create a new blockchain using a validator to check elements and a fixed number of threads
+   * to mine new blocks.
+   *
+   * @param check The validator used to check elements.
+   * @param workers The number of threads used when mining.
+   */
+  public BlockChain(HashValidator check, int workers) {
+    this(check, new ParallelMiner(workers));
+  } // BlockChain(HashValidator, int)
+
+  /**
+   * Create a new blockchain whose difficulty adapts to how quickly blocks are added. The chain
+   * requires a number of leading zero bits and, every few blocks, adjusts that number according
+   * to the policy.
+   *
+   * @param policy How and when to adjust the difficulty.
+   * @param initialBits The number of leading zero bits to require at first.
+   */
+  public BlockChain(DifficultyRetarget policy, int initialBits) {
+    this(new LeadingZeroValidator(policy.clamp(initialBits)), new ParallelMiner(), policy, null,
+        false);
+  } // BlockChain(DifficultyRetarget, int)
+
+  /**
+   * Open the blockchain kept in a directory, creating a new one if the directory holds none.
+   *
+   * @param check The validator used to check elements.
+   * @param directory Where the chain is kept.
+   *
+   * @throws IOException if the chain cannot be read.
+   */
+  public BlockChain(HashValidator check, Path directory) throws IOException {
+    this(check, directory, false);
+  } // BlockChain(HashValidator, Path)
+
+  /**
+   * Open the blockchain kept in a directory, creating a new one if the directory holds none. A
+   * mapped chain keeps no blocks on the heap: they are read from memory-mapped views of the log
+   * whenever they are needed, so the chain may be far larger than the heap. Blocks in a mapped
+   * chain can not be replaced through its nodes.
+   *
+   * @param check The validator used to check elements.
+   * @param directory Where the chain is kept.
+   * @param mapped Whether to read blocks from the log rather than keep them on the heap.
+   *
+   * @throws IOException if the chain cannot be read.
+   */
+  public BlockChain(HashValidator check, Path directory, boolean mapped) throws IOException {
+    this(check, new ParallelMiner(), null, new BlockLog(directory), mapped);
+  } // BlockChain(HashValidator, Path, boolean)
+
+  /**
+   * Open the blockchain kept in a directory, creating a new one if the directory holds none,
+   * with a difficulty that adapts to how quickly blocks are added. Reopening a chain replays the
+   * policy over the stored blocks, so it must be the policy the chain was created with.
+   *
+   * @param policy How and when to adjust the difficulty.
+   * @param initialBits The number of leading zero bits to require at first.
+   * @param directory Where the chain is kept.
+   *
+   * @throws IOException if the chain cannot be read.
+   */
+  public BlockChain(DifficultyRetarget policy, int initialBits, Path directory)
+      throws IOException {
+    this(new LeadingZeroValidator(policy.clamp(initialBits)), new ParallelMiner(), policy,
+        new BlockLog(directory), false);
+  } // BlockChain(DifficultyRetarget, int, Path)
+
+  /**
+   * Create a new blockchain using a validator to check elements and a miner to mine new blocks.
+   *
+   * @param check The validator used to check elements.
+   * @param blockMiner The miner used to mine new blocks.
+   */
+  BlockChain(HashValidator check, ParallelMiner blockMiner) {
+    this(check, blockMiner, null, null, false);
+  } // BlockChain(HashValidator, ParallelMiner)
+
+  /**
+   * Create a blockchain, rebuilding it from a log if the log holds any blocks and otherwise
+   * mining a new initial block.
+   *
+   * @param check The validator used to check elements.
+   * @param blockMiner The miner used to mine new blocks.
+   * @param policy How to adjust the difficulty (or null, if it never changes).
+   * @param blockLog Where blocks are persisted (or null, if they are not).
+   * @param mapped Whether to read blocks from the log rather than keep them on the heap.
+   *
+   * @throws UncheckedIOException if the log cannot be read or does not form a chain.
+   */
+  BlockChain(HashValidator check, ParallelMiner blockMiner, DifficultyRetarget policy,
+      BlockLog blockLog, boolean mapped) {
+    this.simpleValidator = check;
+    this.initialValidator = check;
+    this.miner = blockMiner;
+    this.retarget = policy;
+    this.log = blockLog;
+    this.store = mapped ? new MappedBlockStore(blockLog) : new BlockStore();
+    this.balance = new BalanceTable();
+    if (blockLog != null && blockLog.size() > 0) {
+      load();
+    } else {
+      Block first = miner.mine(0, stamp(0), new Transaction("", "", 0), new Hash(new byte[] {}),
+          simpleValidator);
+      persist(first, first.getTime());
+      this.store.add(first, first.getTime(), simpleValidator);
+    } // if/else
+    this.verifiedHash = getHash();
+  } // BlockChain(HashValidator, ParallelMiner, DifficultyRetarget, BlockLog, boolean)
+
   // +---------+-----------------------------------------------------
   // | Helpers |
   // +---------+
   /**
+   * Rebuild the chain from its log. The blocks are trusted as they are read back, apart from
+   * checking that each one follows the last; checking the chain verifies them in full.
+   *
+   * If the directory holds a snapshot of the balances that matches a block in the log, we start
+   * from those balances and only replay the transactions after that block. A mapped chain then
+   * does not even read the earlier blocks.
+   *
+   * @throws UncheckedIOException if the log cannot be read or does not form a chain.
+   */
+  void load() {
+    int from = 1;
+    BalanceSnapshot snap = null;
+    try {
+      snap = BalanceSnapshot.read(this.log.dir);
+    } catch (IOException e) {
+      // Without a snapshot, we replay every transaction.
+    } // try/catch
+    if (snap != null && snap.getHeight() < this.log.size()
+        && this.log.hash(snap.getHeight()).equals(snap.getTip())) {
+      this.balance = snap.getBalances();
+      from = snap.getHeight() + 1;
+    } // if
+    int replayFrom = 0;
+    if (this.store instanceof MappedBlockStore) {
+      for (replayFrom = 0; replayFrom < from; replayFrom++) {
+        ((MappedBlockStore) this.store).adopt(this.simpleValidator);
+        if (replayFrom > 0) {
+          retargetIfDue();
+        } // if
+      } // for
+    } // if
+    int unbalanced = from;
+    try {
+      this.log.replay(replayFrom, (blk, time) -> {
+        int height = this.store.size();
+        if (height > 0) {
+          if (blk.getNum() != height || !blk.getPrevHash().equals(getHash())) {
+            throw new UncheckedIOException(
+                new IOException("block log does not form a chain at height " + height));
+          } // if
+        } // if
+        if (height >= unbalanced) {
+          try {
+            transaction(blk, 1);
+          } catch (Exception e) {
+          } // try/catch
+        } // if
+        this.store.add(blk, time, this.simpleValidator);
+        if (height > 0) {
+          retargetIfDue();
+        } // if
+      });
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    } // try/catch
+  } // load()
+
+  /**
+   * Choose the time to put in a block we are about to mine. Only chains whose difficulty
+   * changes need times, so other chains leave them out and their blocks hash as they always
+   * have. A block is never stamped earlier than the block it follows, whatever the clock says.
+   *
+   * @param after The time of the block it follows (or 0, for the initial block).
+   *
+   * @return the time, or 0 for none.
+   */
+  long stamp(long after) {
+    return (this.retarget == null) ? 0 : Math.max(after, this.clock.getAsLong());
+  } // stamp(long)
+
+  /**
+   * Snapshot the balances if the block just added completes a snapshot interval.
+   *
+   * @throws UncheckedIOException if the snapshot cannot be written.
+   */
+  void snapshotIfDue() {
+    if (this.log != null && (this.store.size() - 1) % this.snapshotInterval == 0) {
+      try {
+        snapshot();
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      } // try/catch
+    } // if
+  } // snapshotIfDue()
+
+  /**
+   * Write a block to the log, if there is one.
+   *
+   * @param blk The block.
+   * @param time When it was added, in milliseconds since the epoch.
+   *
+   * @throws UncheckedIOException if the block cannot be written.
+   */
+  void persist(Block blk, long time) {
+    if (this.log != null) {
+      try {
+        this.log.append(blk, time);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      } // try/catch
+    } // if
+  } // persist(Block, long)
+
+  /**
+   * Add a block that is already in the log to the balances, the store, and any indexes. The
+   * caller holds the write lock.
+   *
+   * @param blk The block.
+   * @param time When it was mined.
+   * @param check The validator it was added under.
+   */
+  void publish(Block blk, long time, HashValidator check) {
+    try {
+      transaction(blk, 1);
+    } catch (Exception e) {
+    } // try/catch
+    this.store.add(blk, time, check);
+    if (this.hashes != null) {
+      this.hashes.add(this.store.size() - 1);
+    } // if
+    if (this.histories != null) {
+      this.histories.add(this.store.size() - 1);
+    } // if
+    if (this.accumulator != null) {
+      this.accumulator.add(this.store.size() - 1);
+    } // if
+  } // publish(Block, long, HashValidator)
+
+  /**
+   * Update the balance index for a block that is being added to or removed from the chain. Every
+   * transaction in the block is applied (or undone) together.
+   *
    * @param blk input block.
    * @param mode mode = 1 if append a block (add new transaction), mode = 0 if remove a block
    * @throws NullKeyException NullKeyException
    * @throws KeyNotFoundException KeyNotFoundException
    */
   public void transaction(Block blk, int mode) throws NullKeyException, KeyNotFoundException {
-    String from = blk.transaction.getSource();
-    int amt = blk.transaction.getAmount();
-    if (amt < 0) {
-      amt = Integer.MAX_VALUE;
-    } // if
-    if (balance.hasKey(from) && mode == 1) {
-      this.balance.set(from, balance.get(from) - amt);
-      deposit(blk, mode);
-    } else if (balance.hasKey(from) && mode == 0) {
-      this.balance.set(from, balance.get(from) + amt);
-      deposit(blk, mode);
-    } else if (from.equals("")) {
+    this.lock.writeLock().lock();
+    try {
+      for (Transaction t : blk.getTransactions()) {
+        String from = t.getSource();
+        if (!from.equals("")) {
+          this.balance.add(from, (mode == 1) ? -(long) t.getAmount() : t.getAmount());
+        } // if
+      } // for
       deposit(blk, mode);
-    } else {
-      if (mode == 1) {
-        this.balance.set(from, 0 - amt);
-      } else {
-        this.balance.set(from, amt);
-      } // else
-    } // if/else
-    BlockNode newNode = new BlockNode(this.last, null, blk);
-    this.last.setNext(newNode);
+    } finally {
+      this.lock.writeLock().unlock();
+    } // try/finally
   } // transaction()
 
   /**
+   * Update the balance index for the targets of a block that is being added to or removed from
+   * the chain.
+   *
    * @param blk input block.
    * @param mode mode = 1 if append a block (add new transaction), mode = 0 if remove a block
    * @throws NullKeyException NullKeyException
    * @throws KeyNotFoundException KeyNotFoundException
    */
   public void deposit(Block blk, int mode) throws NullKeyException, KeyNotFoundException {
-    String to = blk.transaction.getTarget();
-    int amt = blk.transaction.getAmount();
-    if (balance.hasKey(to) && mode == 1) {
-      balance.set(to, balance.get(to) + amt);
-    } else if (balance.hasKey(to) && mode == 0) {
-      balance.set(to, balance.get(to) - amt);
-    } else {
-      balance.set(to, amt);
-    } // if/else
+    this.lock.writeLock().lock();
+    try {
+      for (Transaction t : blk.getTransactions()) {
+        this.balance.add(t.getTarget(), (mode == 1) ? t.getAmount() : -(long) t.getAmount());
+      } // for
+    } finally {
+      this.lock.writeLock().unlock();
+    } // try/finally
   } // deposit()
 
+  /**
+   * Check one block against its predecessor: (a) it transfers no negative amount, (b, c) its
+   * hash (and, for a batch, its Merkle root) is correct for its contents and the hash of the
+   * previous block, (d) its hash is valid for the difficulty at its height, (e) its number is
+   * its height, and (f) if the difficulty changes, it was not mined before its predecessor.
+   *
+   * @param height The height of the block, at least 1.
+   * @param check The validator for its height, as worked out from the policy.
+   *
+   * @return true if the block is correct and false otherwise.
+   */
+  boolean verifyBlock(int height, HashValidator check) {
+    Block blk = this.store.get(height);
+    if (blk.getNum() != height) {
+      return false;
+    } // if
+    if (this.retarget != null && blk.getTime() < this.store.getTime(height - 1)) {
+      return false;
+    } // if
+    for (Transaction t : blk.getTransactions()) {
+      if (t.getAmount() < 0) {
+        return false;
+      } // if
+    } // for
+    Hash prev = this.store.getHash(height - 1);
+    Hash curr = blk.getHash();
+    Block expected = blk.relink(prev);
+    return curr.equals(expected.getHash())
+        && Objects.equals(blk.getMerkleRoot(), expected.getMerkleRoot())
+        && check.isValid(curr);
+  } // verifyBlock(int, HashValidator)
+
+  /**
+   * Check a range of blocks. Each block is checked against the stored hash of its predecessor,
+   * so the checks are independent; long ranges are split into segments that are checked in
+   * parallel on the common fork/join pool, which means validators must be safe to call from
+   * several threads at once.
+   *
+   * The difficulty of each window of blocks is worked out first, from the policy and the times
+   * in the blocks, so the difficulty recorded with a block is never taken on trust. That only
+   * reads the times of the blocks that end windows.
+   *
+   * @param from The height of the first block to check, at least 1.
+   * @param to The height just past the last block to check.
+   *
+   * @return true if every block in the range is correct and false otherwise.
+   */
+  boolean verifyRange(int from, int to) {
+    if (from >= to) {
+      return true;
+    } // if
+    int interval = (this.retarget == null) ? Integer.MAX_VALUE : this.retarget.getInterval();
+    int first = (from - 1) / interval;
+    HashValidator[] checks = new HashValidator[(to - 2) / interval - first + 1];
+    checks[0] = validatorFor(from);
+    for (int w = 1; w < checks.length; w++) {
+      checks[w] = retargetAfter(checks[w - 1], (first + w) * interval, this.store::getTime);
+    } // for
+    IntPredicate correct =
+        (height) -> verifyBlock(height, checks[(height - 1) / interval - first]);
+    if (to - from < PARALLEL_THRESHOLD) {
+      for (int height = from; height < to; height++) {
+        if (!correct.test(height)) {
+          return false;
+        } // if
+      } // for
+      return true;
+    } // if
+    return IntStream.range(from, to).parallel().allMatch(correct);
+  } // verifyRange(int, int)
+
+  /**
+   * Get the history index (which also records past balances), building it if no one has asked
+   * for it yet. Readers must hold indexLock while they use it.
+   *
+   * @return the index.
+   */
+  HistoryIndex histories() {
+    if (this.histories == null) {
+      this.histories = new HistoryIndex(this.store);
+    } // if
+    return this.histories;
+  } // histories()
+
+  /**
+   * Get the accumulator over every block, building it if no one has asked for it yet. Readers
+   * must hold indexLock while they use it.
+   *
+   * @return the accumulator.
+   */
+  ChainAccumulator accumulator() {
+    if (this.accumulator == null) {
+      this.accumulator = new ChainAccumulator(this.store);
+    } // if
+    return this.accumulator;
+  } // accumulator()
+
+  /**
+   * Adjust the difficulty if the block just added completes a retargeting window. The new
+   * difficulty depends on how long the blocks in that window took to mine, going by their times.
+   */
+  void retargetIfDue() {
+    this.simpleValidator =
+        retargetAfter(this.simpleValidator, this.store.size() - 1, this.store::getTime);
+  } // retargetIfDue()
+
+  /**
+   * Find the difficulty that applies after a block is added.
+   *
+   * @param check The validator that applied to the block.
+   * @param height The height of the block.
+   * @param times When each block was mined, by height.
+   *
+   * @return the validator for the next block: a new one if the block completes a retargeting
+   *         window, and check otherwise.
+   */
+  HashValidator retargetAfter(HashValidator check, int height, IntToLongFunction times) {
+    if (this.retarget == null || height == 0 || height % this.retarget.getInterval() != 0) {
+      return check;
+    } // if
+    long elapsed = times.applyAsLong(height)
+        - times.applyAsLong(height - this.retarget.getInterval());
+    int bits = ((LeadingZeroValidator) check).getBits();
+    return new LeadingZeroValidator(this.retarget.retarget(bits, elapsed));
+  } // retargetAfter(HashValidator, int, IntToLongFunction)
+
+  /**
+   * Work out the difficulty at a height from the policy and the times of the blocks below it,
+   * without trusting the difficulty recorded with any block.
+   *
+   * @param height The height, at least 1 and at most the number of blocks.
+   *
+   * @return the validator that the block at that height must satisfy.
+   */
+  HashValidator validatorFor(int height) {
+    HashValidator check = this.initialValidator;
+    if (this.retarget != null) {
+      int interval = this.retarget.getInterval();
+      for (int w = 1; w <= (height - 1) / interval; w++) {
+        check = retargetAfter(check, w * interval, this.store::getTime);
+      } // for
+    } // if
+    return check;
+  } // validatorFor(int)
+
   // +---------+-----------------------------------------------------
   // | Methods |
   // +---------+
 
   /**
-   * Returns the first block in the chain.
+   * Run several queries against one state of the chain: no block is added or removed, and no
+   * balance changes, while they run. Other readers may run at the same time.
+   *
+   * @param query The queries.
    *
-   * @return the first block in the chain
+   * @return whatever the queries return.
+   */
+  public <T> T read(Supplier<T> query) {
+    this.lock.readLock().lock();
+    try {
+      return query.get();
+    } finally {
+      this.lock.readLock().unlock();
+    } // try/finally
+  } // read(Supplier<T>)
+
+  /**
+   * Returns the first block in the chain. Nodes read the chain without locking it, so they are
+   * only for use while no other thread changes the chain.
+   *
+   * @return the first block in the chain, as a node whose neighbours are read from the chain
    */
   public BlockNode getFirst() {
-    return this.first;
+    return new BlockNode(this.store, 0);
   } // getFirst()
 
   /**
-   * Mine for a new valid block for the end of the chain, returning that block.
+   * Get the block at a height in the chain.
+   *
+   * @param height The height of the block, between 0 (the initial block) and getSize() - 1.
+   *
+   * @return the block at that height.
+   *
+   * @throws IndexOutOfBoundsException if there is no block at that height.
+   */
+  public Block getBlock(int height) {
+    return read(() -> this.store.get(height));
+  } // getBlock(int)
+
+  /**
+   * Find the block with a given hash. The index behind this is built on the first lookup and
+   * kept up to date as blocks are added and removed, so lookups take constant time.
+   *
+   * @param hash The hash of the block.
+   *
+   * @return the block with that hash, or null if there is none in the chain.
+   */
+  public Block findByHash(Hash hash) {
+    return read(() -> {
+      int height;
+      synchronized (this.indexLock) {
+        if (this.hashes == null) {
+          this.hashes = new HashIndex(this.store);
+        } // if
+        height = this.hashes.find(hash);
+      } // synchronized
+      return (height < 0) ? null : this.store.get(height);
+    });
+  } // findByHash(Hash)
+
+  /**
+   * Count the blocks with a transaction that names a user as source or target.
+   *
+   * @param user The user.
+   *
+   * @return the number of blocks.
+   */
+  public int historySize(String user) {
+    if (user == null) {
+      return 0;
+    } // if
+    return read(() -> {
+      synchronized (this.indexLock) {
+        return histories().count(user);
+      } // synchronized
+    });
+  } // historySize(String)
+
+  /**
+   * Get one page of a user's history: the blocks with a transaction that names the user as
+   * source or target, newest first. The index behind this is built on the first lookup and kept
+   * up to date as blocks are added and removed, so only the blocks on the page are read.
+   *
+   * @param user The user.
+   * @param page The page, starting from 0 for the newest blocks.
+   * @param pageSize The most blocks on a page.
+   *
+   * @return the blocks on that page, which is empty if the user has fewer blocks.
+   *
+   * @throws IllegalArgumentException if the page is negative or the page size is not positive.
+   */
+  public List<Block> history(String user, int page, int pageSize) {
+    if (page < 0 || pageSize <= 0) {
+      throw new IllegalArgumentException("invalid page " + page + " of size " + pageSize);
+    } // if
+    List<Block> result = new ArrayList<Block>();
+    if (user == null) {
+      return result;
+    } // if
+    int skip = (int) Math.min((long) page * pageSize, Integer.MAX_VALUE);
+    return read(() -> {
+      int[] heights;
+      synchronized (this.indexLock) {
+        heights = histories().heights(user, skip, pageSize);
+      } // synchronized
+      for (int height : heights) {
+        result.add(this.store.get(height));
+      } // for
+      return result;
+    });
+  } // history(String, int, int)
+
+  /**
+   * Get the root of a Merkle tree over the hashes of every block in the chain. A client that
+   * trusts this root can check proofs from prove() against it without holding the chain.
+   *
+   * @return the root.
+   */
+  public Hash getChainRoot() {
+    return read(() -> {
+      synchronized (this.indexLock) {
+        return accumulator().root();
+      } // synchronized
+    });
+  } // getChainRoot()
+
+  /**
+   * Prove that a transaction is in the chain, as of the chain's current root.
+   *
+   * @param height The height of the block that holds the transaction.
+   * @param index The index of the transaction in the block (0 for a block with a single
+   *        transaction).
+   *
+   * @return the proof.
+   *
+   * @throws IndexOutOfBoundsException if there is no such block or transaction.
+   */
+  public MerkleProof prove(int height, int index) {
+    return read(() -> {
+      Block blk = this.store.get(height);
+      List<Transaction> batch = blk.getTransactions();
+      Transaction t = batch.get(index);
+      Hash[] batchPath = new Hash[0];
+      if (blk.getMerkleRoot() != null) {
+        Hash[] leaves = new Hash[batch.size()];
+        for (int i = 0; i < leaves.length; i++) {
+          leaves[i] = MerkleTree.leaf(batch.get(i));
+        } // for
+        batchPath = MerkleTree.path(leaves, index);
+      } // if
+      int batchSize = (blk.getMerkleRoot() == null) ? 0 : batch.size();
+      Hash[] chainPath;
+      synchronized (this.indexLock) {
+        chainPath = accumulator().path(height);
+      } // synchronized
+      return new MerkleProof(t, height, batchSize, index, batchPath, blk.getPrevHash(),
+          blk.getNonce(), blk.getTime(), this.store.size(), chainPath);
+    });
+  } // prove(int, int)
+
+  /**
+   * Get the validator that the next block must satisfy.
+   *
+   * @return the current validator.
+   */
+  public HashValidator getValidator() {
+    return read(() -> this.simpleValidator);
+  } // getValidator()
+
+  /**
+   * Mine for a new valid block for the end of the chain, returning that block. The chain is only
+   * locked while we read its tip, so blocks may be added while we mine; if one is, append()
+   * rejects the block we return.
    *
    * @param t The transaction that goes in the block.
    *
@@ -131,122 +784,443 @@ public class BlockChain {
    * @throws NullKeyException
    */
   public Block mine(Transaction t) throws NullKeyException, KeyNotFoundException {
-    Block tmp = new Block(length, t, getHash(), simpleValidator);
-    return tmp;
+    int height;
+    Hash prev;
+    long after;
+    HashValidator check;
+    this.lock.readLock().lock();
+    try {
+      height = this.store.size();
+      prev = getHash();
+      after = this.store.getTime(height - 1);
+      check = this.simpleValidator;
+    } finally {
+      this.lock.readLock().unlock();
+    } // try/finally
+    return miner.mine(height, stamp(after), t, prev, check);
   } // mine(Transaction)
 
+  /**
+   * Mine for a new valid block with a batch of transactions for the end of the chain, returning
+   * that block. As with mine(Transaction), the chain is only locked while we read its tip.
+   *
+   * @param batch The transactions that go in the block, in order.
+   *
+   * @return a new block with correct number, hashes, Merkle root, and such.
+   *
+   * @throws IllegalArgumentException if the batch is empty.
+   */
+  public Block mine(List<Transaction> batch) {
+    int height;
+    Hash prev;
+    long after;
+    HashValidator check;
+    this.lock.readLock().lock();
+    try {
+      height = this.store.size();
+      prev = getHash();
+      after = this.store.getTime(height - 1);
+      check = this.simpleValidator;
+    } finally {
+      this.lock.readLock().unlock();
+    } // try/finally
+    return miner.mine(height, stamp(after), batch, prev, check);
+  } // mine(List<Transaction>)
+
   /**
    * Get the number of blocks curently in the chain.
    *
    * @return the number of blocks in the chain, including the initial block.
    */
   public int getSize() {
-    return this.length;
+    return read(() -> this.store.size());
   } // getSize()
 
   /**
-   * Add a block to the end of the chain.
+   * Add a block to the end of the chain. The block is checked in full before anything changes,
+   * and then every transaction in it is applied to the balances together, so a batch is never
+   * half applied.
    *
    * @param blk The block to add to the end of the chain.
    *
-   * @throws IllegalArgumentException if (a) the hash is not valid, (b) the hash is not appropriate
-   *         for the contents, or (c) the previous hash is incorrect.
+   * @throws IllegalArgumentException if (a) the hash is not valid, (b) the hash or Merkle root is
+   *         not appropriate for the contents, (c) the previous hash is incorrect, (d) the
+   *         block's number is not the height it would have, or (e) the difficulty changes and
+   *         the block was mined before the last block in the chain.
+   * @throws UncheckedIOException if the chain is persisted and the block cannot be written.
    */
   public void append(Block blk) throws IllegalArgumentException {
-    if (!(simpleValidator.isValid(blk.getHash()))) {
-      throw new IllegalArgumentException();
+    synchronized (this.writerLock) {
+      if (!(simpleValidator.isValid(blk.getHash()))) {
+        throw new IllegalArgumentException();
+      } // if
+      if (blk.getNum() != this.store.size()) {
+        throw new IllegalArgumentException(
+            "block " + blk.getNum() + " can not go at height " + this.store.size());
+      } // if
+      if (this.retarget != null && blk.getTime() < this.store.getTime(this.store.size() - 1)) {
+        throw new IllegalArgumentException(
+            "block " + blk.getNum() + " was mined before the block it follows");
+      } // if
+      Block sampleBlock = blk.relink(this.getHash());
+      if (!(blk.getHash().equals(sampleBlock.getHash()))
+          || !Objects.equals(blk.getMerkleRoot(), sampleBlock.getMerkleRoot())) {
+        throw new IllegalArgumentException();
+      } // if
+      persist(blk, blk.getTime());
+      this.lock.writeLock().lock();
+      try {
+        publish(blk, blk.getTime(), this.simpleValidator);
+        retargetIfDue();
+      } finally {
+        this.lock.writeLock().unlock();
+      } // try/finally
+      snapshotIfDue();
+    } // synchronized
+  } // append()
+
+  /**
+   * Add many blocks to the end of the chain at once, as when importing or catching up with
+   * another chain. The result is the same as appending the blocks one at a time, but the work
+   * is arranged so that hashing dominates:
+   *
+   * <ul>
+   * <li>each block's hash (and Merkle root) is first checked against its own contents, which is
+   * independent of the chain and of the other blocks, so long lists are checked in parallel and
+   * the chain is not locked meanwhile;</li>
+   * <li>one sweep then checks that each block is numbered and linked to follow the one before
+   * it, and meets the difficulty that the policy and the blocks' own times give its height;</li>
+   * <li>the balances are changed once per user, with the total over every block.</li>
+   * </ul>
+   *
+   * Nothing changes unless every block is correct, and if the blocks cannot all be written to
+   * the log, those that were are cut from it again.
+   *
+   * @param blks The blocks, in order, the first following the last block in the chain.
+   *
+   * @throws IllegalArgumentException if any block (a) has the wrong number, (b) does not follow
+   *         the block before it, (c) has a hash or Merkle root that is not appropriate for its
+   *         contents, (d) has a hash that is not valid for the difficulty at its height, or (e)
+   *         was mined before the block before it, if the difficulty changes.
+   * @throws UncheckedIOException if the chain is persisted and the blocks cannot be written.
+   */
+  public void appendAll(List<Block> blks) throws IllegalArgumentException {
+    int count = blks.size();
+    if (count == 0) {
+      return;
     } // if
-    Block sampleBlock = new Block(blk.getNum(), blk.getTransaction(),
-        this.last.getBlock().getHash(), blk.getNonce());
-    if (!(blk.getHash().equals(sampleBlock.getHash()))) {
-      throw new IllegalArgumentException();
+
+    // Check that each hash is correct for its block. This does not depend on the chain, so
+    // readers and writers carry on meanwhile.
+    boolean correct = (count < PARALLEL_THRESHOLD)
+        ? blks.stream().allMatch(Block::hasCorrectHash)
+        : blks.parallelStream().allMatch(Block::hasCorrectHash);
+    if (!correct) {
+      throw new IllegalArgumentException("a block's hash does not match its contents");
     } // if
-    BlockNode dummy = new BlockNode(this.last, null, blk);
-    try {
-      transaction(blk, 1);
-    } catch (Exception e) {
-    } // try/catch
-    this.last.setNext(dummy);
-    this.last = dummy;
-    this.length++;
-  } // append()
+    synchronized (this.writerLock) {
+      int first = this.store.size();
+
+      // Check the links, and the hashes against the difficulty as it changes along the way.
+      HashValidator[] checks = new HashValidator[count];
+      long[] times = new long[count];
+      IntToLongFunction timeAt =
+          (height) -> (height < first) ? this.store.getTime(height) : times[height - first];
+      HashValidator check = validatorFor(first);
+      Hash prev = getHash();
+      long after = this.store.getTime(first - 1);
+      for (int i = 0; i < count; i++) {
+        Block blk = blks.get(i);
+        if (blk.getNum() != first + i || !blk.getPrevHash().equals(prev)
+            || !check.isValid(blk.getHash())
+            || (this.retarget != null && blk.getTime() < after)) {
+          throw new IllegalArgumentException(
+              "block " + (first + i) + " does not follow the chain");
+        } // if
+        checks[i] = check;
+        times[i] = blk.getTime();
+        after = times[i];
+        check = retargetAfter(check, first + i, timeAt);
+        prev = blk.getHash();
+      } // for
+
+      // Write the blocks and force them to disk together, cutting them back out if we cannot
+      // write them all.
+      if (this.log != null) {
+        try {
+          for (int i = 0; i < count; i++) {
+            this.log.write(blks.get(i), times[i]);
+          } // for
+          this.log.sync();
+        } catch (IOException e) {
+          try {
+            this.log.truncate(first);
+          } catch (IOException truncation) {
+            e.addSuppressed(truncation);
+          } // try/catch
+          throw new UncheckedIOException(e);
+        } // try/catch
+      } // if
+
+      // Total the changes to each user's balance, in the order append would first touch them.
+      BalanceTable changes = new BalanceTable();
+      try {
+        for (Block blk : blks) {
+          for (Transaction t : blk.getTransactions()) {
+            if (!t.getSource().equals("")) {
+              changes.subtract(t.getSource(), t.getAmount());
+            } // if
+          } // for
+          for (Transaction t : blk.getTransactions()) {
+            changes.add(t.getTarget(), t.getAmount());
+          } // for
+        } // for
+      } catch (NullKeyException e) {
+        // Transactions always name their users.
+      } // try/catch
+
+      this.lock.writeLock().lock();
+      try {
+        try {
+          for (int i = 0; i < changes.size(); i++) {
+            this.balance.add(changes.keyAt(i), changes.valueAt(i));
+          } // for
+        } catch (NullKeyException e) {
+          // Transactions always name their users.
+        } // try/catch
+        for (int i = 0; i < count; i++) {
+          this.store.add(blks.get(i), times[i], checks[i]);
+          if (this.hashes != null) {
+            this.hashes.add(first + i);
+          } // if
+          if (this.histories != null) {
+            this.histories.add(first + i);
+          } // if
+          if (this.accumulator != null) {
+            this.accumulator.add(first + i);
+          } // if
+        } // for
+        this.simpleValidator = check;
+      } finally {
+        this.lock.writeLock().unlock();
+      } // try/finally
+
+      if (this.log != null && (first - 1) / this.snapshotInterval
+          != (first + count - 1) / this.snapshotInterval) {
+        try {
+          snapshot();
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        } // try/catch
+      } // if
+    } // synchronized
+  } // appendAll(List<Block>)
+
+  /**
+   * Add every block an iterator gives to the end of the chain at once, as appendAll(List) does.
+   * The blocks are gathered first, so that nothing changes unless all of them are correct.
+   *
+   * @param blks The blocks, in order, the first following the last block in the chain.
+   *
+   * @throws IllegalArgumentException if any block is not correct, as for appendAll(List).
+   * @throws UncheckedIOException if the chain is persisted and the blocks cannot be written.
+   */
+  public void appendAll(Iterator<Block> blks) throws IllegalArgumentException {
+    List<Block> list = new ArrayList<Block>();
+    while (blks.hasNext()) {
+      list.add(blks.next());
+    } // while
+    appendAll(list);
+  } // appendAll(Iterator<Block>)
 
   /**
-   * Attempt to remove the last block from the chain.
+   * Attempt to remove the last block from the chain. The block is taken out of memory before it
+   * is cut from the log, so that no reader looks for it there; if it cannot be cut, it is put
+   * back.
    *
    * @return false if the chain has only one block (in which case it's not removed) or true
    *         otherwise (in which case the last block is removed).
-   * @throws KeyNotFoundException
-   * @throws NullKeyException
+   * @throws UncheckedIOException if the chain is persisted and the block cannot be removed.
    */
   public boolean removeLast() {
-    if (this.length <= 1) {
-      return false;
-    } else {
+    synchronized (this.writerLock) {
+      if (this.store.size() <= 1) {
+        return false;
+      } // if
+      int height = this.store.size() - 1;
+      // Read the block first; a mapped store can not read it once it is cut from the log.
+      Block last = this.store.get(height);
+      long time = this.store.getTime(height);
+      HashValidator check = this.store.getValidator(height);
+      HashValidator next = this.simpleValidator;
+      this.lock.writeLock().lock();
       try {
-        transaction(this.last.getBlock(), 0);
-      } catch (Exception e) {
-      } // try/catch
-      this.last = this.last.getPrev();
-      this.last.setNext(null);
-      this.length--;
+        unpublishLast();
+      } finally {
+        this.lock.writeLock().unlock();
+      } // try/finally
+      if (this.log != null) {
+        try {
+          this.log.truncate(height);
+        } catch (IOException e) {
+          this.lock.writeLock().lock();
+          try {
+            publish(last, time, check);
+            this.simpleValidator = next;
+          } finally {
+            this.lock.writeLock().unlock();
+          } // try/finally
+          throw new UncheckedIOException(e);
+        } // try/catch
+      } // if
       return true;
-    } // if/else
+    } // synchronized
   } // removeLast()
 
+  /**
+   * Take the last block out of the balances, the store, and any indexes, and restore the
+   * validator it was added under. The caller holds the write lock.
+   */
+  void unpublishLast() {
+    int height = this.store.size() - 1;
+    Block last = this.store.get(height);
+    try {
+      transaction(last, 0);
+    } catch (Exception e) {
+    } // try/catch
+    if (this.hashes != null) {
+      this.hashes.remove(height, last.getHash());
+    } // if
+    if (this.histories != null) {
+      this.histories.remove(height, last);
+    } // if
+    if (this.accumulator != null) {
+      this.accumulator.removeLast();
+    } // if
+    // The removed block was mined under the validator that now applies to its replacement.
+    this.simpleValidator = this.store.getValidator(height);
+    this.store.removeLast();
+    this.removals++;
+    if (this.verifiedHeight > height) {
+      this.verifiedHeight = height;
+      this.verifiedHash = getHash();
+    } // if
+  } // unpublishLast()
+
   /**
    * Get the hash of the last block in the chain.
    *
    * @return the hash of the last block in the chain.
    */
   public Hash getHash() {
-    return this.last.getBlock().getHash();
+    return read(() -> this.store.getHash(this.store.size() - 1));
   } // getHash()
 
   /**
    * Determine if the blockchain is correct in that (a) the balances are legal/correct at every
    * step, (b) that every block has a correct previous hash field, (c) that every block has a hash
-   * that is correct for its contents, and (d) that every block has a valid hash.
+   * that is correct for its contents, and (d) that every block has a hash that is valid for the
+   * difficulty at its height, as the policy works it out from the times in the blocks. Long
+   * chains are checked on several threads.
+   *
+   * Blocks are only checked once: the chain remembers how far it has verified and the hash of
+   * the last verified block, so later calls only check blocks appended since then. Blocks can
+   * not be changed through the public interface, but if a block is replaced through a node, or
+   * the last verified block no longer has the hash we saw, we start again from the beginning.
+   *
+   * Verification reads the chain, so other threads may read it at the same time, but blocks
+   * are only added or removed once it is done.
    *
    * @return true if the blockchain is correct and false otherwise.
    * @throws NoSuchAlgorithmException
    */
   public boolean isCorrect() throws NoSuchAlgorithmException {
-    // check balance
-    for (int i = 0; i < balance.size(); i++) {
-      if (balance.getElement(i).getVal() < 0) {
-        return false;
-      } // if
-    } // for
-    if (this.length == 1) {
-      return true;
-    } // if
-    BlockNode currNode = this.first.getNext();
-    Block currBlock = currNode.getBlock();
-    // store prev before compute changes hash
-    Hash prev = currNode.getBlock().getHash();
-    Block sampleBlock = new Block(currBlock.getNum(), currBlock.getTransaction(),
-        currNode.getPrev().getBlock().getHash(), currBlock.getNonce());
-    // check case c, d
-    if (!prev.equals(sampleBlock.getHash()) || !simpleValidator.isValid(prev)) {
-      return false;
+    this.lock.readLock().lock();
+    try {
+      synchronized (this.verifyLock) {
+        // check balance
+        if (this.balance.negatives() > 0) {
+          return false;
+        } // if
+        // A replaced block must be checked again, as must the block after it.
+        int from = Math.min(this.verifiedHeight, Math.max(1, this.store.takeReplaced()));
+        if (from == this.verifiedHeight
+            && !this.store.getHash(from - 1).equals(this.verifiedHash)) {
+          from = 1;
+        } // if
+        if (!verifyRange(from, this.store.size())) {
+          this.verifiedHeight = from;
+          this.verifiedHash = this.store.getHash(from - 1);
+          return false;
+        } // if
+        this.verifiedHeight = this.store.size();
+        this.verifiedHash = getHash();
+        return true;
+      } // synchronized
+    } finally {
+      this.lock.readLock().unlock();
+    } // try/finally
+  } // isCorrect()
+
+  /**
+   * Forget which blocks have been verified and check the whole chain again.
+   *
+   * @return true if the blockchain is correct and false otherwise.
+   * @throws NoSuchAlgorithmException
+   */
+  public boolean verifyAll() throws NoSuchAlgorithmException {
+    this.lock.readLock().lock();
+    try {
+      synchronized (this.verifyLock) {
+        this.verifiedHeight = 1;
+        this.verifiedHash = this.store.getHash(0);
+        return isCorrect();
+      } // synchronized
+    } finally {
+      this.lock.readLock().unlock();
+    } // try/finally
+  } // verifyAll()
+
+  /**
+   * Record the current balances next to the log, so that reopening the chain only has to replay
+   * the blocks added after now. Persisted chains also do this every few blocks. Snapshots are
+   * taken one at a time, since they all go through the same file. The balances are copied under
+   * the read lock and written out after it is released, so writers do not wait for the disk.
+   *
+   * @throws IllegalStateException if the chain is not persisted.
+   * @throws IOException if the snapshot cannot be written.
+   */
+  public void snapshot() throws IOException {
+    if (this.log == null) {
+      throw new IllegalStateException("only persisted chains take snapshots");
     } // if
-    Hash curr;
-    while (currNode.getNext() != null) {
-      currNode = currNode.getNext();
-      curr = currNode.getBlock().getHash();
-      currBlock = currNode.getBlock();
-      sampleBlock = new Block(currBlock.getNum(), currBlock.getTransaction(),
-          currNode.getPrev().getBlock().getHash(), currBlock.getNonce());
-      // check case b, c, d
-      if (!prev.equals(currNode.getPrev().getBlock().getHash())
-          || !curr.equals(sampleBlock.getHash()) || !simpleValidator.isValid(curr)) {
-        return false;
+    synchronized (this.snapshotLock) {
+      BalanceSnapshot snap;
+      this.lock.readLock().lock();
+      try {
+        snap = new BalanceSnapshot(this.store.size() - 1, getHash(), this.balance.clone());
+      } finally {
+        this.lock.readLock().unlock();
+      } // try/finally
+      // The blocks a snapshot covers must reach the disk before the snapshot does.
+      this.log.sync();
+      snap.write(this.log.dir);
+    } // synchronized
+  } // snapshot()
+
+  /**
+   * Write any blocks not yet on disk and close the log. Does nothing for a chain that lives only
+   * in memory.
+   *
+   * @throws IOException if the blocks cannot be written.
+   */
+  public void close() throws IOException {
+    synchronized (this.writerLock) {
+      if (this.log != null) {
+        this.log.close();
       } // if
-      prev = curr;
-    } // while
-    return true;
-  } // isCorrect()
+    } // synchronized
+  } // close()
 
   /**
    * Reset the current balances.
@@ -255,11 +1229,18 @@ public class BlockChain {
    * @throws KeyNotFoundException
    */
   public void reset() throws NullKeyException, KeyNotFoundException {
-    Iterator<Block> blocks = this.blocks();
-    this.balance = new AssociativeArray<String, Integer>();
-    while (blocks.hasNext()) {
-      transaction(blocks.next(), 1);
-    } // while
+    synchronized (this.writerLock) {
+      this.lock.writeLock().lock();
+      try {
+        Iterator<Block> blocks = this.blocks();
+        this.balance = new BalanceTable();
+        while (blocks.hasNext()) {
+          transaction(blocks.next(), 1);
+        } // while
+      } finally {
+        this.lock.writeLock().unlock();
+      } // try/finally
+    } // synchronized
   } // reset()
 
 
@@ -278,94 +1259,186 @@ public class BlockChain {
   } // check()
 
   /**
-   * Return an iterator of all the people who participated in the system.
+   * Cross-check the balance index against a full replay of every transaction in the chain.
+   *
+   * @return true if every user's indexed balance matches the replayed balance and false
+   *         otherwise.
+   */
+  public boolean verifyBalances() {
+    this.lock.readLock().lock();
+    try {
+      BalanceTable replay = new BalanceTable();
+      try {
+        Iterator<Block> blocks = this.blocks();
+        while (blocks.hasNext()) {
+          for (Transaction t : blocks.next().getTransactions()) {
+            if (!t.getSource().equals("")) {
+              replay.subtract(t.getSource(), t.getAmount());
+            } // if
+            replay.add(t.getTarget(), t.getAmount());
+          } // for
+        } // while
+      } catch (NullKeyException e) {
+        return false;
+      } // try/catch
+      for (int i = 0; i < replay.size(); i++) {
+        if (this.balance.get(replay.keyAt(i)) != replay.valueAt(i)) {
+          return false;
+        } // if
+      } // for
+      for (int i = 0; i < this.balance.size(); i++) {
+        if (replay.get(this.balance.keyAt(i)) != this.balance.valueAt(i)) {
+          return false;
+        } // if
+      } // for
+      return true;
+    } finally {
+      this.lock.readLock().unlock();
+    } // try/finally
+  } // verifyBalances()
+
+  /**
+   * Return an iterator of all the people who participated in the system, as of when the
+   * iterator is made.
    *
    * @return an iterator of all the people in the system.
    */
   public Iterator<String> users() {
-    Iterator<String> it = new Iterator<String>() {
+    Iterator<String> it = read(() -> new Iterator<String>() {
 
       private int index = 0;
 
+      private BalanceTable table = balance;
+
+      private int end = table.size();
+
       public boolean hasNext() {
-        return index < balance.size();
+        return index < end;
       } // hasNext
 
       public String next() {
-        return balance.getElement(index++).getKey();
+        if (index >= end) {
+          throw new NoSuchElementException();
+        } // if
+        // A table never forgets users, so its first few stay the same as blocks come and go;
+        // reset() replaces the table rather than changing this one.
+        return read(() -> table.keyAt(index++));
       } // next
-    };
+    });
     return it;
   } // users
 
   /**
-   * Find one user's balance.
+   * Find one user's balance. Balances come from an index that append() and removeLast() keep up
+   * to date, so this does not walk the chain.
    *
    * @param user The user whose balance we want to find.
    *
    * @return that user's balance (or 0, if the user is not in the system).
    * @throws NullKeyException
    */
-  public int balance(String user) throws NullKeyException {
-    BlockNode currNode = this.first;
-    int total = 0;
-    while (currNode != null) {
-      Transaction thisTransaction = currNode.getBlock().getTransaction();
-      if (thisTransaction.getSource().equals(user)) {
-        total -= thisTransaction.getAmount();
+  public long balance(String user) throws NullKeyException {
+    this.lock.readLock().lock();
+    try {
+      return this.balance.get(user);
+    } finally {
+      this.lock.readLock().unlock();
+    } // try/finally
+  } // balance()
+
+  /**
+   * Find one user's balance as of a block: after that block's transaction and every one
+   * before it. Each user's balance is recorded at every block that names them, so this is a
+   * binary search over those blocks rather than a replay. The records are built on the first
+   * such query (or history lookup) and kept up to date as blocks are added and removed.
+   *
+   * @param user The user whose balance we want to find.
+   * @param height The height of the block, between 0 (the initial block) and getSize() - 1.
+   *
+   * @return that user's balance as of that block (or 0, if no block up to then names the user).
+   *
+   * @throws IndexOutOfBoundsException if there is no block at that height.
+   */
+  public long balance(String user, int height) {
+    return read(() -> {
+      if (height < 0 || height >= this.store.size()) {
+        throw new IndexOutOfBoundsException("no block at height " + height);
       } // if
-      if (thisTransaction.getTarget().equals(user)) {
-        total += thisTransaction.getAmount();
+      if (user == null) {
+        return 0L;
       } // if
-      currNode = currNode.getNext();
-    } // while
-    return total;
-  } // balance()
+      synchronized (this.indexLock) {
+        return histories().balance(user, height);
+      } // synchronized
+    });
+  } // balance(String, int)
 
   /**
-   * Get an interator for all the blocks in the chain.
+   * Get an interator for all the blocks in the chain, as of when the iterator is made. Blocks
+   * added later are not visited. Since each block's hash covers the blocks before it, the
+   * blocks still to visit are unchanged as long as the last one still has the same hash.
    *
    * @return an iterator for all the blocks in the chain.
+   *
+   * @throws ConcurrentModificationException from next() if blocks the iterator has yet to
+   *         visit have been removed.
    */
   public Iterator<Block> blocks() {
-    Iterator<Block> it = new Iterator<Block>() {
+    Iterator<Block> it = read(() -> new Iterator<Block>() {
       private int index = 0;
-      private BlockNode current = first;
 
+      private int end = store.size();
+
+      private Hash tip = store.getHash(end - 1);
+
+      private int seen = removals;
 
       public boolean hasNext() {
-        return index < length;
+        return index < end;
       } // hasNext
 
       public Block next() {
-        BlockNode val = current;
-        current = current.getNext();
-        index++;
-        return val.getBlock();
+        if (index >= end) {
+          throw new NoSuchElementException();
+        } // if
+        return read(() -> {
+          if (seen != removals) {
+            if (store.size() < end || !store.getHash(end - 1).equals(tip)) {
+              throw new ConcurrentModificationException("blocks were removed from the chain");
+            } // if
+            seen = removals;
+          } // if
+          return store.get(index++);
+        });
       } // Next
-    };
+    });
     return it;
   } // blocks
 
   /**
-   * Get an interator for all the transactions in the chain.
+   * Get an interator for all the transactions in the chain, including every transaction in each
+   * batch, as of when the iterator is made.
    *
-   * @return an iterator for all the blocks in the chain.
+   * @return an iterator for all the transactions in the chain.
+   *
+   * @throws ConcurrentModificationException from next() if blocks the iterator has yet to
+   *         visit have been removed.
    */
   public Iterator<Transaction> entries() {
+    Iterator<Block> blks = blocks();
     Iterator<Transaction> it = new Iterator<Transaction>() {
 
-      private int index = 0;
+      private Iterator<Transaction> batch = Collections.emptyIterator();
 
       public boolean hasNext() {
-        return index < length;
+        return batch.hasNext() || blks.hasNext();
       } // hasNext
 
       public Transaction next() {
-        BlockNode val = first;
-        first = first.getNext();
-        index++;
-        return val.getBlock().getTransaction();
+        if (!batch.hasNext()) {
+          batch = blks.next().getTransactions().iterator();
+        } // if
+        return batch.next();
       } // next()
     };
     return it;
@@ -0,0 +1,650 @@
+package edu.grinnell.csc207.blockchains;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * The binary formats of blocks and transactions. Everything is read from and written to
+ * ByteBuffers in place; callers ask for the encoded length first so they can size the buffer.
+ *
+ * Stored blocks (version 1) are
+ * [version][height][nonce][previous hash][hash][source][target][amount], where the height is an
+ * unsigned varint, the nonce is 8 big-endian bytes (nonces are random, so a varint would only
+ * make them longer), hashes and strings are a varint length followed by the bytes (strings in
+ * UTF-8), and the amount is a zigzag varint. A stored transaction is [version][source][target]
+ * [amount] in the same way. Blocks that carry a batch of transactions (version 2) are
+ * [version][height][nonce][previous hash][hash][Merkle root][count][transactions...], with the
+ * count as a varint and each transaction as [source][target][amount]. Blocks stamped with the
+ * time they were mined (versions 3 and 4) are laid out as versions 1 and 2, with the time as a
+ * zigzag varint just after the nonce.
+ *
+ * The bytes that are hashed to make a block's hash are also defined here, so that hashing and
+ * storage take their fields from the same place. That preimage keeps fixed-width fields,
+ * [height (4)][source][target][amount (4)][previous hash], followed by the nonce (8), because
+ * mining rewrites the nonce in place at a fixed offset and the hashes of existing chains must
+ * not change. A batch is hashed through its Merkle root, so its preimage has the same size
+ * whatever the size of the batch: [height (4)][0xFF][count (4)][Merkle root][previous hash],
+ * then the nonce. UTF-8 never uses the byte 0xFF, and an amount that a correct chain accepts
+ * never starts with it, so no single-transaction block has the same preimage as a batch.
+ *
+ * The time a block was mined is hashed too, so that every node can work out the difficulty
+ * from the blocks alone. A stamped block's preimage is [height (4)][0xFE][time (8)] followed by
+ * the rest of the preimage it would have without a time. 0xFE is no more possible than 0xFF
+ * after the height of an unstamped block, so stamping a block never gives it the preimage of
+ * another; blocks without a time (a time of 0) keep the preimage, and the hash, they always
+ * had.
+ *
+ * @author Alex Pollock
+ * @author Kevin Tang
+ */
+public class BlockCodec {
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * The version of the format we write.
+   */
+  public static final byte VERSION = 1;
+
+  /**
+   * The version of the format of blocks that carry a batch of transactions.
+   */
+  public static final byte BATCH_VERSION = 2;
+
+  /**
+   * The version of the format of blocks with a single transaction and a time.
+   */
+  public static final byte TIMED_VERSION = 3;
+
+  /**
+   * The version of the format of blocks with a batch of transactions and a time.
+   */
+  public static final byte TIMED_BATCH_VERSION = 4;
+
+  /**
+   * The byte that follows the height in the preimage of a batch.
+   */
+  static final byte BATCH_MARKER = (byte) 0xFF;
+
+  /**
+   * The byte that follows the height in the preimage of a block with a time.
+   */
+  static final byte TIME_MARKER = (byte) 0xFE;
+
+  /**
+   * The largest number of bytes in a varint.
+   */
+  static final int MAX_VARINT_BYTES = 10;
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Determine how many bytes a value takes as an unsigned varint.
+   *
+   * @param value The value.
+   *
+   * @return the number of bytes.
+   */
+  static int varintLength(long value) {
+    return Math.max(1, (Long.SIZE - Long.numberOfLeadingZeros(value) + 6) / 7);
+  } // varintLength(long)
+
+  /**
+   * Write a value as an unsigned varint: seven bits per byte, low bits first, with the top bit
+   * set on every byte but the last.
+   *
+   * @param buf Where to write.
+   * @param value The value.
+   */
+  static void putVarint(ByteBuffer buf, long value) {
+    while ((value & ~0x7FL) != 0) {
+      buf.put((byte) ((value & 0x7F) | 0x80));
+      value >>>= 7;
+    } // while
+    buf.put((byte) value);
+  } // putVarint(ByteBuffer, long)
+
+  /**
+   * Read an unsigned varint.
+   *
+   * @param buf Where to read.
+   *
+   * @return the value.
+   *
+   * @throws IllegalArgumentException if the varint is too long.
+   */
+  static long getVarint(ByteBuffer buf) {
+    long value = 0;
+    for (int shift = 0; shift < MAX_VARINT_BYTES * 7; shift += 7) {
+      byte b = buf.get();
+      value |= (long) (b & 0x7F) << shift;
+      if (b >= 0) {
+        return value;
+      } // if
+    } // for
+    throw new IllegalArgumentException("malformed varint");
+  } // getVarint(ByteBuffer)
+
+  /**
+   * Map a signed value to an unsigned one so that small magnitudes stay small.
+   *
+   * @param value The signed value.
+   *
+   * @return the zigzag encoding.
+   */
+  static long zigzag(long value) {
+    return (value << 1) ^ (value >> (Long.SIZE - 1));
+  } // zigzag(long)
+
+  /**
+   * Undo zigzag encoding.
+   *
+   * @param value The zigzag encoding.
+   *
+   * @return the signed value.
+   */
+  static long unzigzag(long value) {
+    return (value >>> 1) ^ -(value & 1);
+  } // unzigzag(long)
+
+  /**
+   * Determine how many bytes a string takes in UTF-8. Unpaired surrogates take one byte, as
+   * they are written as '?'.
+   *
+   * @param str The string.
+   *
+   * @return the number of bytes.
+   */
+  static int utf8Length(String str) {
+    int length = 0;
+    for (int i = 0; i < str.length(); i++) {
+      char c = str.charAt(i);
+      if (c < 0x80) {
+        length += 1;
+      } else if (c < 0x800) {
+        length += 2;
+      } else if (Character.isHighSurrogate(c) && i + 1 < str.length()
+          && Character.isLowSurrogate(str.charAt(i + 1))) {
+        length += 4;
+        i++;
+      } else if (Character.isSurrogate(c)) {
+        length += 1;
+      } else {
+        length += 3;
+      } // if/else
+    } // for
+    return length;
+  } // utf8Length(String)
+
+  /**
+   * Write a string in UTF-8, without a length.
+   *
+   * @param buf Where to write.
+   * @param str The string.
+   */
+  static void putUtf8(ByteBuffer buf, String str) {
+    for (int i = 0; i < str.length(); i++) {
+      char c = str.charAt(i);
+      if (c < 0x80) {
+        buf.put((byte) c);
+      } else if (c < 0x800) {
+        buf.put((byte) (0xC0 | (c >>> 6))).put((byte) (0x80 | (c & 0x3F)));
+      } else if (Character.isHighSurrogate(c) && i + 1 < str.length()
+          && Character.isLowSurrogate(str.charAt(i + 1))) {
+        int cp = Character.toCodePoint(c, str.charAt(++i));
+        buf.put((byte) (0xF0 | (cp >>> 18))).put((byte) (0x80 | ((cp >>> 12) & 0x3F)))
+            .put((byte) (0x80 | ((cp >>> 6) & 0x3F))).put((byte) (0x80 | (cp & 0x3F)));
+      } else if (Character.isSurrogate(c)) {
+        buf.put((byte) '?');
+      } else {
+        buf.put((byte) (0xE0 | (c >>> 12))).put((byte) (0x80 | ((c >>> 6) & 0x3F)))
+            .put((byte) (0x80 | (c & 0x3F)));
+      } // if/else
+    } // for
+  } // putUtf8(ByteBuffer, String)
+
+  /**
+   * Write a length-prefixed string.
+   *
+   * @param buf Where to write.
+   * @param str The string.
+   */
+  static void putString(ByteBuffer buf, String str) {
+    putVarint(buf, utf8Length(str));
+    putUtf8(buf, str);
+  } // putString(ByteBuffer, String)
+
+  /**
+   * Read a length-prefixed string.
+   *
+   * @param buf Where to read.
+   *
+   * @return the string.
+   */
+  static String getString(ByteBuffer buf) {
+    int length = (int) getVarint(buf);
+    if (buf.hasArray()) {
+      String str = new String(buf.array(), buf.arrayOffset() + buf.position(), length,
+          StandardCharsets.UTF_8);
+      buf.position(buf.position() + length);
+      return str;
+    } // if
+    byte[] bytes = new byte[length];
+    buf.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  } // getString(ByteBuffer)
+
+  /**
+   * Write a length-prefixed hash.
+   *
+   * @param buf Where to write.
+   * @param hash The hash.
+   */
+  static void putHash(ByteBuffer buf, Hash hash) {
+    putVarint(buf, hash.length());
+    for (int i = 0; i < hash.length(); i++) {
+      buf.put(hash.get(i));
+    } // for
+  } // putHash(ByteBuffer, Hash)
+
+  /**
+   * Read a length-prefixed hash.
+   *
+   * @param buf Where to read.
+   *
+   * @return the hash.
+   */
+  static Hash getHash(ByteBuffer buf) {
+    byte[] bytes = new byte[(int) getVarint(buf)];
+    buf.get(bytes);
+    return Hash.wrap(bytes);
+  } // getHash(ByteBuffer)
+
+  /**
+   * Skip a length-prefixed hash or string.
+   *
+   * @param buf Where to read.
+   */
+  static void skip(ByteBuffer buf) {
+    int length = (int) getVarint(buf);
+    buf.position(buf.position() + length);
+  } // skip(ByteBuffer)
+
+  /**
+   * Check the version at the start of an encoding.
+   *
+   * @param buf Where to read.
+   *
+   * @throws IllegalArgumentException if we do not know the version.
+   */
+  static void checkVersion(ByteBuffer buf) {
+    byte version = buf.get();
+    if (version != VERSION) {
+      throw new IllegalArgumentException("unknown format version " + version);
+    } // if
+  } // checkVersion(ByteBuffer)
+
+  /**
+   * Check the version at the start of an encoded block.
+   *
+   * @param buf Where to read.
+   *
+   * @return the version.
+   *
+   * @throws IllegalArgumentException if we do not know the version.
+   */
+  static byte checkBlockVersion(ByteBuffer buf) {
+    byte version = buf.get();
+    if (version < VERSION || version > TIMED_BATCH_VERSION) {
+      throw new IllegalArgumentException("unknown format version " + version);
+    } // if
+    return version;
+  } // checkBlockVersion(ByteBuffer)
+
+  /**
+   * Determine how many bytes the fields of a transaction take.
+   *
+   * @param t The transaction.
+   *
+   * @return the number of bytes, without a version.
+   */
+  static int fieldsLength(Transaction t) {
+    int source = utf8Length(t.getSource());
+    int target = utf8Length(t.getTarget());
+    return varintLength(source) + source + varintLength(target) + target
+        + varintLength(zigzag(t.getAmount()));
+  } // fieldsLength(Transaction)
+
+  /**
+   * Write the fields of a transaction.
+   *
+   * @param buf Where to write.
+   * @param t The transaction.
+   */
+  static void putFields(ByteBuffer buf, Transaction t) {
+    putString(buf, t.getSource());
+    putString(buf, t.getTarget());
+    putVarint(buf, zigzag(t.getAmount()));
+  } // putFields(ByteBuffer, Transaction)
+
+  /**
+   * Read the fields of a transaction.
+   *
+   * @param buf Where to read.
+   *
+   * @return the transaction.
+   */
+  static Transaction getFields(ByteBuffer buf) {
+    String source = getString(buf);
+    String target = getString(buf);
+    return new Transaction(source, target, (int) unzigzag(getVarint(buf)));
+  } // getFields(ByteBuffer)
+
+  // +--------------+------------------------------------------------
+  // | Transactions |
+  // +--------------+
+
+  /**
+   * Determine how many bytes a transaction takes.
+   *
+   * @param t The transaction.
+   *
+   * @return the number of bytes.
+   */
+  public static int encodedLength(Transaction t) {
+    return 1 + fieldsLength(t);
+  } // encodedLength(Transaction)
+
+  /**
+   * Write a transaction.
+   *
+   * @param t The transaction.
+   * @param buf Where to write, with at least encodedLength(t) bytes remaining.
+   */
+  public static void encode(Transaction t, ByteBuffer buf) {
+    buf.put(VERSION);
+    putFields(buf, t);
+  } // encode(Transaction, ByteBuffer)
+
+  /**
+   * Read a transaction.
+   *
+   * @param buf Where to read.
+   *
+   * @return the transaction.
+   *
+   * @throws IllegalArgumentException if the encoding is not one we know.
+   */
+  public static Transaction decodeTransaction(ByteBuffer buf) {
+    checkVersion(buf);
+    return getFields(buf);
+  } // decodeTransaction(ByteBuffer)
+
+  // +--------+------------------------------------------------------
+  // | Blocks |
+  // +--------+
+
+  /**
+   * Determine how many bytes a block takes.
+   *
+   * @param blk The block.
+   *
+   * @return the number of bytes.
+   */
+  public static int encodedLength(Block blk) {
+    int prev = blk.getPrevHash().length();
+    int hash = blk.getHash().length();
+    int length = 1 + varintLength(blk.getNum()) + Long.BYTES + varintLength(prev) + prev
+        + varintLength(hash) + hash;
+    if (blk.getTime() != 0) {
+      length += varintLength(zigzag(blk.getTime()));
+    } // if
+    if (blk.getMerkleRoot() == null) {
+      return length + fieldsLength(blk.getTransaction());
+    } // if
+    int root = blk.getMerkleRoot().length();
+    List<Transaction> batch = blk.getTransactions();
+    length += varintLength(root) + root + varintLength(batch.size());
+    for (Transaction t : batch) {
+      length += fieldsLength(t);
+    } // for
+    return length;
+  } // encodedLength(Block)
+
+  /**
+   * Write a block.
+   *
+   * @param blk The block.
+   * @param buf Where to write, with at least encodedLength(blk) bytes remaining.
+   */
+  public static void encode(Block blk, ByteBuffer buf) {
+    boolean batched = blk.getMerkleRoot() != null;
+    boolean timed = blk.getTime() != 0;
+    if (timed) {
+      buf.put(batched ? TIMED_BATCH_VERSION : TIMED_VERSION);
+    } else {
+      buf.put(batched ? BATCH_VERSION : VERSION);
+    } // if/else
+    putVarint(buf, blk.getNum());
+    buf.putLong(blk.getNonce());
+    if (timed) {
+      putVarint(buf, zigzag(blk.getTime()));
+    } // if
+    putHash(buf, blk.getPrevHash());
+    putHash(buf, blk.getHash());
+    if (!batched) {
+      putFields(buf, blk.getTransaction());
+      return;
+    } // if
+    putHash(buf, blk.getMerkleRoot());
+    List<Transaction> batch = blk.getTransactions();
+    putVarint(buf, batch.size());
+    for (Transaction t : batch) {
+      putFields(buf, t);
+    } // for
+  } // encode(Block, ByteBuffer)
+
+  /**
+   * Read a block. The stored hash is trusted; checking the chain recomputes it.
+   *
+   * @param buf Where to read.
+   *
+   * @return the block.
+   *
+   * @throws IllegalArgumentException if the encoding is not one we know.
+   */
+  public static Block decode(ByteBuffer buf) {
+    byte version = checkBlockVersion(buf);
+    int num = (int) getVarint(buf);
+    long nonce = buf.getLong();
+    long time = (version >= TIMED_VERSION) ? unzigzag(getVarint(buf)) : 0;
+    Hash prev = getHash(buf);
+    Hash hash = getHash(buf);
+    if (version == VERSION || version == TIMED_VERSION) {
+      return new Block(num, time, getFields(buf), prev, nonce, hash);
+    } // if
+    Hash root = getHash(buf);
+    Transaction[] batch = new Transaction[(int) getVarint(buf)];
+    for (int i = 0; i < batch.length; i++) {
+      batch[i] = getFields(buf);
+    } // for
+    return new Block(num, time, batch, root, prev, nonce, hash);
+  } // decode(ByteBuffer)
+
+  /**
+   * Read just the hash of an encoded block.
+   *
+   * @param buf Where to read.
+   *
+   * @return the hash.
+   *
+   * @throws IllegalArgumentException if the encoding is not one we know.
+   */
+  public static Hash decodeHash(ByteBuffer buf) {
+    byte version = checkBlockVersion(buf);
+    getVarint(buf);
+    buf.position(buf.position() + Long.BYTES);
+    if (version >= TIMED_VERSION) {
+      getVarint(buf);
+    } // if
+    skip(buf);
+    return getHash(buf);
+  } // decodeHash(ByteBuffer)
+
+  // +---------+-----------------------------------------------------
+  // | Hashing |
+  // +---------+
+
+  /**
+   * Determine how many bytes of a block are hashed before its nonce.
+   *
+   * @param number The number of the block.
+   * @param t The transaction for the block.
+   * @param previousHash The hash of the previous block.
+   *
+   * @return the number of bytes.
+   */
+  public static int preimageLength(int number, Transaction t, Hash previousHash) {
+    return preimageLength(number, 0, t, previousHash);
+  } // preimageLength(int, Transaction, Hash)
+
+  /**
+   * Determine how many bytes of a block with a time are hashed before its nonce.
+   *
+   * @param number The number of the block.
+   * @param time When the block was mined, or 0 if it has no time.
+   * @param t The transaction for the block.
+   * @param previousHash The hash of the previous block.
+   *
+   * @return the number of bytes.
+   */
+  public static int preimageLength(int number, long time, Transaction t, Hash previousHash) {
+    return Integer.BYTES * 2 + timeLength(time) + utf8Length(t.getSource())
+        + utf8Length(t.getTarget()) + previousHash.length();
+  } // preimageLength(int, long, Transaction, Hash)
+
+  /**
+   * Determine how many bytes the time takes in a preimage.
+   *
+   * @param time The time, or 0 if there is none.
+   *
+   * @return the number of bytes.
+   */
+  static int timeLength(long time) {
+    return (time == 0) ? 0 : 1 + Long.BYTES;
+  } // timeLength(long)
+
+  /**
+   * Write the time into a preimage, if there is one.
+   *
+   * @param buf Where to write.
+   * @param time The time, or 0 if there is none.
+   */
+  static void putTime(ByteBuffer buf, long time) {
+    if (time != 0) {
+      buf.put(TIME_MARKER).putLong(time);
+    } // if
+  } // putTime(ByteBuffer, long)
+
+  /**
+   * Write the bytes of a block that are hashed before its nonce.
+   *
+   * @param buf Where to write.
+   * @param number The number of the block.
+   * @param t The transaction for the block.
+   * @param previousHash The hash of the previous block.
+   */
+  public static void putPreimage(ByteBuffer buf, int number, Transaction t, Hash previousHash) {
+    putPreimage(buf, number, 0, t, previousHash);
+  } // putPreimage(ByteBuffer, int, Transaction, Hash)
+
+  /**
+   * Write the bytes of a block with a time that are hashed before its nonce.
+   *
+   * @param buf Where to write.
+   * @param number The number of the block.
+   * @param time When the block was mined, or 0 if it has no time.
+   * @param t The transaction for the block.
+   * @param previousHash The hash of the previous block.
+   */
+  public static void putPreimage(ByteBuffer buf, int number, long time, Transaction t,
+      Hash previousHash) {
+    buf.putInt(number);
+    putTime(buf, time);
+    putUtf8(buf, t.getSource());
+    putUtf8(buf, t.getTarget());
+    buf.putInt(t.getAmount());
+    for (int i = 0; i < previousHash.length(); i++) {
+      buf.put(previousHash.get(i));
+    } // for
+  } // putPreimage(ByteBuffer, int, long, Transaction, Hash)
+
+  /**
+   * Determine how many bytes of a block with a batch of transactions are hashed before its
+   * nonce.
+   *
+   * @param root The Merkle root of the batch.
+   * @param previousHash The hash of the previous block.
+   *
+   * @return the number of bytes.
+   */
+  public static int batchPreimageLength(Hash root, Hash previousHash) {
+    return batchPreimageLength(0, root, previousHash);
+  } // batchPreimageLength(Hash, Hash)
+
+  /**
+   * Determine how many bytes of a block with a time and a batch of transactions are hashed
+   * before its nonce.
+   *
+   * @param time When the block was mined, or 0 if it has no time.
+   * @param root The Merkle root of the batch.
+   * @param previousHash The hash of the previous block.
+   *
+   * @return the number of bytes.
+   */
+  public static int batchPreimageLength(long time, Hash root, Hash previousHash) {
+    return Integer.BYTES * 2 + 1 + timeLength(time) + root.length() + previousHash.length();
+  } // batchPreimageLength(long, Hash, Hash)
+
+  /**
+   * Write the bytes of a block with a batch of transactions that are hashed before its nonce.
+   *
+   * @param buf Where to write.
+   * @param number The number of the block.
+   * @param count The number of transactions in the batch.
+   * @param root The Merkle root of the batch.
+   * @param previousHash The hash of the previous block.
+   */
+  public static void putBatchPreimage(ByteBuffer buf, int number, int count, Hash root,
+      Hash previousHash) {
+    putBatchPreimage(buf, number, 0, count, root, previousHash);
+  } // putBatchPreimage(ByteBuffer, int, int, Hash, Hash)
+
+  /**
+   * Write the bytes of a block with a time and a batch of transactions that are hashed before
+   * its nonce.
+   *
+   * @param buf Where to write.
+   * @param number The number of the block.
+   * @param time When the block was mined, or 0 if it has no time.
+   * @param count The number of transactions in the batch.
+   * @param root The Merkle root of the batch.
+   * @param previousHash The hash of the previous block.
+   */
+  public static void putBatchPreimage(ByteBuffer buf, int number, long time, int count,
+      Hash root, Hash previousHash) {
+    buf.putInt(number);
+    putTime(buf, time);
+    buf.put(BATCH_MARKER).putInt(count);
+    for (int i = 0; i < root.length(); i++) {
+      buf.put(root.get(i));
+    } // for
+    for (int i = 0; i < previousHash.length(); i++) {
+      buf.put(previousHash.get(i));
+    } // for
+  } // putBatchPreimage(ByteBuffer, int, long, int, Hash, Hash)
+} // class BlockCodec
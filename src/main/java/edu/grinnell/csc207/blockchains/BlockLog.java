@@ -0,0 +1,775 @@
+package edu.grinnell.csc207.blockchains;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ObjLongConsumer;
+import java.util.zip.CRC32;
+
+/**
+ * A durable, append-only log of the blocks in a chain. The log lives in a directory of segment
+ * files named 00000000.log, 00000001.log, and so on; a new segment is started once the current
+ * one would grow past a fixed size. Each record holds one block and the time it was added, as
+ * [payload length (4 bytes)][CRC-32 of payload (4 bytes)][payload], where the payload is the time
+ * as a varint followed by the block in BlockCodec's format.
+ *
+ * An append does not return until its record has been forced to disk. Appends that arrive while
+ * a force is under way write their records straight away and then share the next force, so when
+ * several threads append at once the cost of each force is spread across all of them (group
+ * commit). A log may instead be opened write-behind, where appends return at once and records
+ * are forced in groups, once enough are waiting or a few milliseconds after the first of them;
+ * a crash may then lose the last few appends. Either way a crash never leaves a damaged record
+ * behind, because opening the log discards everything from the first record that is incomplete
+ * or fails its checksum.
+ * Only the last segment can hold such a record after a crash: a segment is synced before the
+ * next one is started, so a damaged record in an earlier segment means the disk itself has
+ * failed. Opening the log then refuses to go on, and changes nothing, rather than throw away
+ * every later segment. The checksums of records in earlier segments are not checked while
+ * opening the log, but when each record is first read.
+ *
+ * Opening the log still walks the header of every record, to find where each one starts, so it
+ * takes time in proportion to the number of records. Without a balance snapshot, the chain also
+ * decodes every block to rebuild its balances.
+ *
+ * Records are read back through read-only memory maps of the segments, so reading a block costs
+ * no more than decoding it and the operating system decides which parts of the log stay in
+ * memory. Only the position of each record is kept on the heap.
+ *
+ * @author Alex Pollock
+ * @author Kevin Tang
+ */
+public class BlockLog {
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * The number of bytes before each payload.
+   */
+  static final int HEADER_BYTES = 2 * Integer.BYTES;
+
+  /**
+   * The size (in bytes) past which we start a new segment.
+   */
+  static final long SEGMENT_BYTES = 1 << 24;
+
+  /**
+   * The number of unsynced records that forces a sync, when writing behind.
+   */
+  static final int SYNC_BATCH = 64;
+
+  /**
+   * The least the segment we are appending to must grow past its map before we map it again.
+   */
+  static final long REMAP_BYTES = 1 << 20;
+
+  /**
+   * How long (in milliseconds) records may wait before they are synced, when writing behind.
+   */
+  static final long SYNC_MILLIS = 20;
+
+  /**
+   * The suffix of segment file names.
+   */
+  static final String SUFFIX = ".log";
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The directory that holds the segments.
+   */
+  Path dir;
+
+  /**
+   * The size (in bytes) past which we start a new segment.
+   */
+  long segmentBytes;
+
+  /**
+   * Whether each append waits for its record to reach the disk.
+   */
+  boolean durable;
+
+  /**
+   * The number of unsynced records that forces a sync, when writing behind.
+   */
+  int syncBatch;
+
+  /**
+   * The number of records in the log.
+   */
+  int size;
+
+  /**
+   * The segment that holds each record.
+   */
+  int[] segments = new int[16];
+
+  /**
+   * Where each record starts in its segment.
+   */
+  long[] offsets = new long[16];
+
+  /**
+   * The segment we are appending to.
+   */
+  int segment;
+
+  /**
+   * The open channel to the segment we are appending to.
+   */
+  FileChannel channel;
+
+  /**
+   * The number of records written since the log was opened.
+   */
+  long written;
+
+  /**
+   * The number of those records known to be on disk.
+   */
+  long synced;
+
+  /**
+   * Whether some thread is forcing records to disk. Segments are not closed or cut back while
+   * it does.
+   */
+  boolean forcing;
+
+  /**
+   * The thread that syncs records that have waited too long, when writing behind (or null).
+   */
+  ScheduledExecutorService flusher;
+
+  /**
+   * Read-only maps of the segments, made when they are first read. The map of the segment we
+   * are appending to only covers what was in it when the map was made. Records past its end are
+   * read from the file instead, and the segment is mapped again once it has grown past the map
+   * by REMAP_BYTES or by the map's own size, whichever is more. That way each segment is mapped
+   * only a few times, however often new records are read.
+   */
+  MappedByteBuffer[] maps = new MappedByteBuffer[4];
+
+  /**
+   * The records whose checksums have been checked, by position. Only the records in the last
+   * segment are checked while opening the log; every other record is checked the first time it
+   * is read.
+   */
+  BitSet checked = new BitSet();
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Open the log in a directory, creating the directory if need be. Any damaged record at the
+   * end of the log, and everything after it, is discarded. Each append waits for its record to
+   * reach the disk.
+   *
+   * @param directory The directory that holds the segments.
+   *
+   * @throws IOException if the log cannot be read or repaired, or if it is damaged before its
+   *         last segment.
+   */
+  public BlockLog(Path directory) throws IOException {
+    this(directory, SEGMENT_BYTES);
+  } // BlockLog(Path)
+
+  /**
+   * Open the log in a directory with the given segment size. Each append waits for its record
+   * to reach the disk.
+   *
+   * @param directory The directory that holds the segments.
+   * @param maxSegmentBytes The size past which we start a new segment.
+   *
+   * @throws IOException if the log cannot be read or repaired.
+   */
+  BlockLog(Path directory, long maxSegmentBytes) throws IOException {
+    this(directory, maxSegmentBytes, true, 0, 0);
+  } // BlockLog(Path, long)
+
+  /**
+   * Open the log in a directory with the given segment size and sync policy.
+   *
+   * @param directory The directory that holds the segments.
+   * @param maxSegmentBytes The size past which we start a new segment.
+   * @param waitForDisk Whether each append waits for its record to reach the disk. If not, the
+   *        log writes behind, and a crash may lose the last few appends.
+   * @param batch The number of unsynced records that forces a sync, when writing behind.
+   * @param millis How long records may wait before they are synced, when writing behind.
+   *
+   * @throws IOException if the log cannot be read or repaired.
+   */
+  BlockLog(Path directory, long maxSegmentBytes, boolean waitForDisk, int batch, long millis)
+      throws IOException {
+    this.dir = directory;
+    this.segmentBytes = maxSegmentBytes;
+    this.durable = waitForDisk;
+    this.syncBatch = batch;
+    Files.createDirectories(directory);
+    this.segment = scan();
+    this.channel = openSegment(this.segment);
+    if (!waitForDisk) {
+      this.flusher = Executors.newSingleThreadScheduledExecutor((r) -> {
+        Thread t = new Thread(r, "block-log");
+        t.setDaemon(true);
+        return t;
+      });
+      this.flusher.scheduleWithFixedDelay(this::flush, millis, millis, TimeUnit.MILLISECONDS);
+    } // if
+  } // BlockLog(Path, long, boolean, int, long)
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Encode a block and the time it was added as a complete record.
+   *
+   * @param blk The block.
+   * @param time When it was added, in milliseconds since the epoch.
+   *
+   * @return the record, ready to write.
+   */
+  static ByteBuffer encode(Block blk, long time) {
+    int length = BlockCodec.varintLength(time) + BlockCodec.encodedLength(blk);
+    ByteBuffer buf = ByteBuffer.allocate(HEADER_BYTES + length);
+    buf.position(HEADER_BYTES);
+    BlockCodec.putVarint(buf, time);
+    BlockCodec.encode(blk, buf);
+    buf.putInt(0, length).putInt(Integer.BYTES, checksum(buf.array(), HEADER_BYTES, length));
+    return buf.flip();
+  } // encode(Block, long)
+
+  /**
+   * Compute the checksum of part of an array.
+   *
+   * @param bytes The array.
+   * @param offset The index of the first byte.
+   * @param length The number of bytes.
+   *
+   * @return the CRC-32 of those bytes.
+   */
+  static int checksum(byte[] bytes, int offset, int length) {
+    CRC32 crc = new CRC32();
+    crc.update(bytes, offset, length);
+    return (int) crc.getValue();
+  } // checksum(byte[], int, int)
+
+  /**
+   * Find the file that holds a segment.
+   *
+   * @param index The number of the segment.
+   *
+   * @return the path of the segment.
+   */
+  Path segmentPath(int index) {
+    return this.dir.resolve(String.format("%08d%s", index, SUFFIX));
+  } // segmentPath(int)
+
+  /**
+   * Open a segment for appending, creating it if need be.
+   *
+   * @param index The number of the segment.
+   *
+   * @return a channel positioned at the end of the segment.
+   *
+   * @throws IOException if the segment cannot be opened.
+   */
+  FileChannel openSegment(int index) throws IOException {
+    FileChannel result = FileChannel.open(segmentPath(index), StandardOpenOption.CREATE,
+        StandardOpenOption.READ, StandardOpenOption.WRITE);
+    result.position(result.size());
+    return result;
+  } // openSegment(int)
+
+  /**
+   * Read a whole segment.
+   *
+   * @param index The number of the segment.
+   *
+   * @return the contents of the segment.
+   *
+   * @throws IOException if the segment cannot be read.
+   */
+  byte[] readSegment(int index) throws IOException {
+    return Files.readAllBytes(segmentPath(index));
+  } // readSegment(int)
+
+  /**
+   * Map a whole segment for reading.
+   *
+   * @param index The number of the segment.
+   *
+   * @return the map.
+   *
+   * @throws IOException if the segment cannot be mapped.
+   */
+  MappedByteBuffer mapSegment(int index) throws IOException {
+    if (index == this.segment) {
+      return this.channel.map(FileChannel.MapMode.READ_ONLY, 0, this.channel.size());
+    } // if
+    try (FileChannel in = FileChannel.open(segmentPath(index), StandardOpenOption.READ)) {
+      return in.map(FileChannel.MapMode.READ_ONLY, 0, in.size());
+    } // try
+  } // mapSegment(int)
+
+  /**
+   * Read a record from the segment we are appending to, without mapping it.
+   *
+   * @param offset Where the record starts in the segment.
+   *
+   * @return a buffer holding the record, positioned at the start of the payload.
+   *
+   * @throws IOException if the record cannot be read.
+   */
+  ByteBuffer readRecord(long offset) throws IOException {
+    ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+    while (header.hasRemaining()) {
+      if (this.channel.read(header, offset + header.position()) < 0) {
+        throw new IOException("record at " + offset + " is cut short");
+      } // if
+    } // while
+    ByteBuffer buf = ByteBuffer.allocate(HEADER_BYTES + header.getInt(0));
+    while (buf.hasRemaining()) {
+      if (this.channel.read(buf, offset + buf.position()) < 0) {
+        throw new IOException("record at " + offset + " is cut short");
+      } // if
+    } // while
+    return buf.position(HEADER_BYTES);
+  } // readRecord(long)
+
+  /**
+   * Determine whether the payload of a record matches its checksum.
+   *
+   * @param buf A buffer holding the record, positioned at the start of the payload.
+   *
+   * @return true if the payload is intact and false otherwise.
+   */
+  static boolean intact(ByteBuffer buf) {
+    int start = buf.position() - HEADER_BYTES;
+    ByteBuffer payload = buf.duplicate();
+    payload.limit(buf.position() + buf.getInt(start));
+    CRC32 crc = new CRC32();
+    crc.update(payload);
+    return (int) crc.getValue() == buf.getInt(start + Integer.BYTES);
+  } // intact(ByteBuffer)
+
+  /**
+   * Find the payload of a record, checking its checksum if it has not been checked before. A
+   * map that covers the start of a record covers all of it, since records are written
+   * completely before they are counted.
+   *
+   * @param index The position of the record.
+   *
+   * @return a buffer positioned at the start of the payload.
+   *
+   * @throws IndexOutOfBoundsException if there is no such record.
+   * @throws UncheckedIOException if the segment cannot be mapped or the record fails its
+   *         checksum.
+   */
+  synchronized ByteBuffer view(int index) {
+    if (index < 0 || index >= this.size) {
+      throw new IndexOutOfBoundsException("no record " + index);
+    } // if
+    int seg = this.segments[index];
+    long offset = this.offsets[index];
+    if (seg >= this.maps.length) {
+      this.maps = Arrays.copyOf(this.maps, Math.max(seg + 1, this.maps.length * 2));
+    } // if
+    MappedByteBuffer map = this.maps[seg];
+    ByteBuffer buf;
+    try {
+      if (map != null && map.capacity() <= offset && seg == this.segment
+          && this.channel.size() - map.capacity() < Math.max(REMAP_BYTES, map.capacity())) {
+        buf = readRecord(offset);
+      } else {
+        if (map == null || map.capacity() <= offset) {
+          map = mapSegment(seg);
+          this.maps[seg] = map;
+        } // if
+        buf = map.duplicate();
+        buf.position((int) offset + HEADER_BYTES);
+      } // if/else
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    } // try/catch
+    if (!this.checked.get(index)) {
+      if (!intact(buf)) {
+        throw new UncheckedIOException(
+            new IOException("record " + index + " fails its checksum"));
+      } // if
+      this.checked.set(index);
+    } // if
+    return buf;
+  } // view(int)
+
+  /**
+   * Remember where a new record starts.
+   *
+   * @param index The segment that holds it.
+   * @param offset Where it starts in the segment.
+   */
+  void record(int index, long offset) {
+    if (this.size == this.offsets.length) {
+      this.segments = Arrays.copyOf(this.segments, this.size * 2);
+      this.offsets = Arrays.copyOf(this.offsets, this.size * 2);
+    } // if
+    this.segments[this.size] = index;
+    this.offsets[this.size] = offset;
+    this.size++;
+  } // record(int, long)
+
+  /**
+   * Find every intact record, discarding the first damaged record in the last segment and
+   * everything after it. Segments with a later segment after them were synced before it was
+   * started, so we only check that their records fit, and map them for reading as we go; the
+   * last segment is read in full and every record in it is checked against its checksum.
+   *
+   * @return the number of the last segment.
+   *
+   * @throws IOException if the segments cannot be read or repaired, or if a segment before the
+   *         last one is damaged, in which case no file is changed.
+   */
+  int scan() throws IOException {
+    int index = 0;
+    while (Files.exists(segmentPath(index))) {
+      boolean sealed = Files.exists(segmentPath(index + 1));
+      ByteBuffer data;
+      if (sealed) {
+        try (FileChannel in = FileChannel.open(segmentPath(index), StandardOpenOption.READ)) {
+          if (index >= this.maps.length) {
+            this.maps = Arrays.copyOf(this.maps, Math.max(index + 1, this.maps.length * 2));
+          } // if
+          this.maps[index] = in.map(FileChannel.MapMode.READ_ONLY, 0, in.size());
+          data = this.maps[index];
+        } // try
+      } else {
+        data = ByteBuffer.wrap(readSegment(index));
+      } // if/else
+      int pos = 0;
+      while (data.limit() - pos >= HEADER_BYTES) {
+        int length = data.getInt(pos);
+        if (length < 0 || length > data.limit() - pos - HEADER_BYTES) {
+          break;
+        } // if
+        if (!sealed && checksum(data.array(), pos + HEADER_BYTES, length)
+            != data.getInt(pos + Integer.BYTES)) {
+          break;
+        } // if
+        record(index, pos);
+        if (!sealed) {
+          this.checked.set(this.size - 1);
+        } // if
+        pos += HEADER_BYTES + length;
+      } // while
+      if (pos < data.limit()) {
+        if (sealed) {
+          throw new IOException("segment " + index + " is damaged at " + pos
+              + " but later segments follow it");
+        } // if
+        // A torn or corrupt record: nothing after it can be trusted.
+        if (index < this.maps.length) {
+          this.maps[index] = null;
+        } // if
+        try (FileChannel damaged = FileChannel.open(segmentPath(index),
+            StandardOpenOption.WRITE)) {
+          damaged.truncate(pos);
+          damaged.force(true);
+        } // try
+        deleteSegmentsAfter(index);
+        return index;
+      } // if
+      index++;
+    } // while
+    return Math.max(0, index - 1);
+  } // scan()
+
+  /**
+   * Delete every segment after a given one.
+   *
+   * @param index The number of the last segment to keep.
+   *
+   * @throws IOException if a segment cannot be deleted.
+   */
+  void deleteSegmentsAfter(int index) throws IOException {
+    for (int i = index + 1; Files.deleteIfExists(segmentPath(i)); i++) {
+      // Keep deleting until we run out of segments.
+    } // for
+  } // deleteSegmentsAfter(int)
+
+  /**
+   * Sync records that have been waiting, reporting nothing. Run by the flusher; any failure is
+   * reported by the next append or sync instead.
+   */
+  void flush() {
+    try {
+      sync();
+    } catch (IOException e) {
+      // The next append or sync will see the same problem.
+    } // try/catch
+  } // flush()
+
+  /**
+   * Wait until no thread is forcing records to disk, so that the segment we are appending to
+   * can be closed or cut back.
+   *
+   * @throws InterruptedIOException if the thread is interrupted while it waits.
+   */
+  synchronized void awaitForce() throws InterruptedIOException {
+    while (this.forcing) {
+      try {
+        wait();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("interrupted while waiting for the disk");
+      } // try/catch
+    } // while
+  } // awaitForce()
+
+  /**
+   * Wait until the first few records written since the log was opened are on disk. If no other
+   * thread is forcing records to disk, this one does, on behalf of every record written so far;
+   * otherwise it waits for that force to finish and tries again. Records may still be written
+   * while a force is under way, and they go to disk with the next one.
+   *
+   * @param count The number of records that must be on disk.
+   *
+   * @throws IOException if the records cannot be synced.
+   */
+  void await(long count) throws IOException {
+    while (true) {
+      FileChannel ch;
+      long target;
+      synchronized (this) {
+        awaitForce();
+        if (this.synced >= count) {
+          return;
+        } // if
+        this.forcing = true;
+        ch = this.channel;
+        target = this.written;
+      } // synchronized
+      boolean done = false;
+      try {
+        ch.force(false);
+        done = true;
+      } finally {
+        synchronized (this) {
+          if (done) {
+            this.synced = Math.max(this.synced, target);
+          } // if
+          this.forcing = false;
+          notifyAll();
+        } // synchronized
+      } // try/finally
+    } // while
+  } // await(long)
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  /**
+   * Get the number of records in the log.
+   *
+   * @return the number of records.
+   */
+  public synchronized int size() {
+    return this.size;
+  } // size()
+
+  /**
+   * Read the records from a given position onwards, in order.
+   *
+   * @param from The position of the first record to read.
+   * @param visitor Called with each block and the time it was added.
+   *
+   * @throws IOException if the segments cannot be read or a record fails its checksum.
+   */
+  public synchronized void replay(int from, ObjLongConsumer<Block> visitor) throws IOException {
+    try {
+      for (int i = from; i < this.size; i++) {
+        ByteBuffer buf = view(i);
+        long time = BlockCodec.getVarint(buf);
+        visitor.accept(BlockCodec.decode(buf), time);
+      } // for
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    } // try/catch
+  } // replay(int, ObjLongConsumer<Block>)
+
+  /**
+   * Read the block in a record.
+   *
+   * @param index The position of the record.
+   *
+   * @return a new block built from the record.
+   *
+   * @throws IndexOutOfBoundsException if there is no such record.
+   * @throws UncheckedIOException if the segment cannot be mapped or the record fails its
+   *         checksum.
+   */
+  public Block read(int index) {
+    ByteBuffer buf = view(index);
+    BlockCodec.getVarint(buf);
+    return BlockCodec.decode(buf);
+  } // read(int)
+
+  /**
+   * Read the time at which the block in a record was added.
+   *
+   * @param index The position of the record.
+   *
+   * @return the time, in milliseconds since the epoch.
+   *
+   * @throws IndexOutOfBoundsException if there is no such record.
+   * @throws UncheckedIOException if the segment cannot be mapped or the record fails its
+   *         checksum.
+   */
+  public long time(int index) {
+    return BlockCodec.getVarint(view(index));
+  } // time(int)
+
+  /**
+   * Read the hash of the block in a record, without building the block.
+   *
+   * @param index The position of the record.
+   *
+   * @return the hash.
+   *
+   * @throws IndexOutOfBoundsException if there is no such record.
+   * @throws UncheckedIOException if the segment cannot be mapped or the record fails its
+   *         checksum.
+   */
+  public Hash hash(int index) {
+    ByteBuffer buf = view(index);
+    BlockCodec.getVarint(buf);
+    return BlockCodec.decodeHash(buf);
+  } // hash(int)
+
+  /**
+   * Add a record to the end of the log. Unless the log writes behind, the record is on disk
+   * when this returns.
+   *
+   * @param blk The block.
+   * @param time When it was added, in milliseconds since the epoch.
+   *
+   * @throws IOException if the record cannot be written or synced.
+   */
+  public void append(Block blk, long time) throws IOException {
+    long count = write(blk, time);
+    if (this.durable || count - onDisk() >= this.syncBatch) {
+      await(count);
+    } // if
+  } // append(Block, long)
+
+  /**
+   * Add a record to the end of the log without waiting for it to reach the disk. A later sync
+   * waits for it, so a run of records can share one force.
+   *
+   * @param blk The block.
+   * @param time When it was added, in milliseconds since the epoch.
+   *
+   * @return the number of records written since the log was opened, for await.
+   *
+   * @throws IOException if the record cannot be written.
+   */
+  public synchronized long write(Block blk, long time) throws IOException {
+    ByteBuffer buf = encode(blk, time);
+    long offset = this.channel.position();
+    if (offset > 0 && offset + buf.remaining() > this.segmentBytes) {
+      awaitForce();
+      this.channel.force(false);
+      this.channel.close();
+      this.channel = openSegment(++this.segment);
+      this.synced = this.written;
+      offset = 0;
+    } // if
+    while (buf.hasRemaining()) {
+      this.channel.write(buf);
+    } // while
+    record(this.segment, offset);
+    return ++this.written;
+  } // write(Block, long)
+
+  /**
+   * Find how many records written since the log was opened are known to be on disk.
+   *
+   * @return the number of records.
+   */
+  synchronized long onDisk() {
+    return this.synced;
+  } // onDisk()
+
+  /**
+   * Discard records from the end of the log, keeping only the first few.
+   *
+   * @param count The number of records to keep.
+   *
+   * @throws IOException if the log cannot be truncated.
+   */
+  public synchronized void truncate(int count) throws IOException {
+    if (count >= this.size) {
+      return;
+    } // if
+    awaitForce();
+    int index = this.segments[count];
+    Arrays.fill(this.maps, Math.min(index, this.maps.length), this.maps.length, null);
+    if (index != this.segment) {
+      this.channel.close();
+      deleteSegmentsAfter(index);
+      this.segment = index;
+      this.channel = openSegment(index);
+    } // if
+    this.channel.truncate(this.offsets[count]);
+    this.channel.force(true);
+    this.synced = this.written;
+    this.checked.clear(count, this.size);
+    this.size = count;
+  } // truncate(int)
+
+  /**
+   * Force every record written so far to disk.
+   *
+   * @throws IOException if the records cannot be synced.
+   */
+  public void sync() throws IOException {
+    long count;
+    synchronized (this) {
+      count = this.written;
+    } // synchronized
+    await(count);
+  } // sync()
+
+  /**
+   * Sync and close the log.
+   *
+   * @throws IOException if the records cannot be synced.
+   */
+  public synchronized void close() throws IOException {
+    if (this.flusher != null) {
+      this.flusher.shutdownNow();
+    } // if
+    Arrays.fill(this.maps, null);
+    try {
+      sync();
+    } finally {
+      awaitForce();
+      this.channel.close();
+    } // try/finally
+  } // close()
+} // class BlockLog
@@ -1,7 +1,9 @@
 package edu.grinnell.csc207.blockchains;
 
 /**
- * Wrap the Block in a node.
+ * Wrap the Block in a node. Nodes either stand alone, linked by their own prev and next
+ * pointers, or are a view of one height in a BlockStore, in which case navigation reads the
+ * neighbouring heights from the store.
  *
  * @author Alex Pollock
  * @author Kevin Tang
@@ -25,6 +27,26 @@ public class BlockNode {
    */
   private Block info;
 
+  /**
+   * When the block was added to the chain, in milliseconds since the epoch.
+   */
+  private long time;
+
+  /**
+   * The validator that applied when the block was added to the chain.
+   */
+  private HashValidator validator;
+
+  /**
+   * The store this node is a view of (or null, for a standalone node).
+   */
+  private BlockStore store;
+
+  /**
+   * The height of the block in the store.
+   */
+  private int height;
+
   // +--------------+------------------------------------------------
   // | Constructors |
   // +--------------+
@@ -41,12 +63,37 @@ public class BlockNode {
     this.info = information;
   } // BlockNode()
 
+  /**
+   * Create a node that also records when its block was added and the validator that applied.
+   * @param prev the previous node
+   * @param next the next node
+   * @param information the block
+   * @param added when the block was added, in milliseconds since the epoch
+   * @param check the validator that applied to the block
+   */
+  public BlockNode(BlockNode prev, BlockNode next, Block information, long added,
+      HashValidator check) {
+    this(prev, next, information);
+    this.time = added;
+    this.validator = check;
+  } // BlockNode(BlockNode, BlockNode, Block, long, HashValidator)
+
+  /**
+   * Create a view of one height in a store.
+   * @param blocks the store
+   * @param blockHeight the height of the block
+   */
+  BlockNode(BlockStore blocks, int blockHeight) {
+    this.store = blocks;
+    this.height = blockHeight;
+  } // BlockNode(BlockStore, int)
+
   /**
    * Get the block.
    * @return the block
    */
   public Block getBlock() {
-    return this.info;
+    return (this.store == null) ? this.info : this.store.get(this.height);
   } // getBlock()
 
   /**
@@ -54,7 +101,11 @@ public class BlockNode {
    * @return the next node
    */
   public BlockNode getNext() {
-    return this.nextNode;
+    if (this.store == null) {
+      return this.nextNode;
+    } // if
+    return (this.height + 1 < this.store.size()) ? new BlockNode(this.store, this.height + 1)
+        : null;
   } // getNext()
 
   /**
@@ -62,30 +113,61 @@ public class BlockNode {
    * @return the previous node
    */
   public BlockNode getPrev() {
-    return this.prevNode;
+    if (this.store == null) {
+      return this.prevNode;
+    } // if
+    return (this.height > 0) ? new BlockNode(this.store, this.height - 1) : null;
   } // getPrev()
 
+  /**
+   * Get the time the block was mined.
+   * @return the time, in milliseconds since the epoch
+   */
+  public long getTime() {
+    return (this.store == null) ? this.time : this.store.getTime(this.height);
+  } // getTime()
+
+  /**
+   * Get the validator that applied when the block was added to the chain.
+   * @return the validator
+   */
+  public HashValidator getValidator() {
+    return (this.store == null) ? this.validator : this.store.getValidator(this.height);
+  } // getValidator()
+
   /**
    * Set the block.
    * @param newInfo the block
    */
   public void setBlock(Block newInfo) {
-    this.info = newInfo;
+    if (this.store == null) {
+      this.info = newInfo;
+    } else {
+      this.store.set(this.height, newInfo);
+    } // if/else
   } // setBlock(Block)
 
   /**
    * Set the next node.
    * @param next the next node
+   * @throws UnsupportedOperationException if this node is a view of a store
    */
   public void setNext(BlockNode next) {
+    if (this.store != null) {
+      throw new UnsupportedOperationException("cannot relink a view of a chain");
+    } // if
     this.nextNode = next;
   } // setNext()
 
   /**
    * Set the previous node.
    * @param prev the previous node
+   * @throws UnsupportedOperationException if this node is a view of a store
    */
   public void setPrev(BlockNode prev) {
+    if (this.store != null) {
+      throw new UnsupportedOperationException("cannot relink a view of a chain");
+    } // if
     this.prevNode = prev;
   } // setPrev()
 } // BlockNode
@@ -0,0 +1,227 @@
+package edu.grinnell.csc207.blockchains;
+
+import java.util.Arrays;
+
+/**
+ * Storage for the blocks of a chain, indexed by height. Blocks live in fixed-size chunks, so
+ * finding a block by height takes constant time, walking the chain in order touches memory
+ * sequentially, and growing the store never copies more than the small array of chunk
+ * references.
+ *
+ * Alongside each block we keep the time it was mined and the validator that applied to it. The
+ * store also remembers the lowest height whose block has been replaced, so that a chain that
+ * has already verified its blocks knows where it must start again.
+ *
+ * @author Alex Pollock
+ * @author Kevin Tang
+ */
+public class BlockStore {
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * The log (base 2) of the number of blocks per chunk.
+   */
+  static final int CHUNK_BITS = 10;
+
+  /**
+   * The number of blocks per chunk.
+   */
+  static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+
+  /**
+   * The initial number of chunk references.
+   */
+  static final int INITIAL_CHUNKS = 4;
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The blocks, chunk by chunk.
+   */
+  Block[][] blocks = new Block[INITIAL_CHUNKS][];
+
+  /**
+   * When each block was mined, in milliseconds since the epoch.
+   */
+  long[][] times = new long[INITIAL_CHUNKS][];
+
+  /**
+   * The validator that applied to each block.
+   */
+  HashValidator[][] validators = new HashValidator[INITIAL_CHUNKS][];
+
+  /**
+   * The number of blocks in the store.
+   */
+  int size;
+
+  /**
+   * The lowest height whose block has been replaced since takeReplaced() was last called, or
+   * Integer.MAX_VALUE if none has been.
+   */
+  int replaced = Integer.MAX_VALUE;
+
+  /**
+   * The number of times a block has been replaced.
+   */
+  int replacements;
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  /**
+   * Get the number of blocks in the store.
+   *
+   * @return the number of blocks.
+   */
+  public int size() {
+    return this.size;
+  } // size()
+
+  /**
+   * Get the block at a height.
+   *
+   * @param height The height, between 0 (inclusive) and size() (exclusive).
+   *
+   * @return the block.
+   *
+   * @throws IndexOutOfBoundsException if there is no block at that height.
+   */
+  public Block get(int height) {
+    return this.blocks[chunk(height)][height & (CHUNK_SIZE - 1)];
+  } // get(int)
+
+  /**
+   * Get the hash of the block at a height.
+   *
+   * @param height The height, between 0 (inclusive) and size() (exclusive).
+   *
+   * @return the hash.
+   *
+   * @throws IndexOutOfBoundsException if there is no block at that height.
+   */
+  public Hash getHash(int height) {
+    return get(height).getHash();
+  } // getHash(int)
+
+  /**
+   * Get the time at which the block at a height was mined.
+   *
+   * @param height The height, between 0 (inclusive) and size() (exclusive).
+   *
+   * @return the time, in milliseconds since the epoch.
+   *
+   * @throws IndexOutOfBoundsException if there is no block at that height.
+   */
+  public long getTime(int height) {
+    return this.times[chunk(height)][height & (CHUNK_SIZE - 1)];
+  } // getTime(int)
+
+  /**
+   * Get the validator that applied to the block at a height.
+   *
+   * @param height The height, between 0 (inclusive) and size() (exclusive).
+   *
+   * @return the validator.
+   *
+   * @throws IndexOutOfBoundsException if there is no block at that height.
+   */
+  public HashValidator getValidator(int height) {
+    return this.validators[chunk(height)][height & (CHUNK_SIZE - 1)];
+  } // getValidator(int)
+
+  /**
+   * Replace the block at a height, and with it the time the block was mined.
+   *
+   * @param height The height, between 0 (inclusive) and size() (exclusive).
+   * @param blk The new block.
+   *
+   * @throws IndexOutOfBoundsException if there is no block at that height.
+   */
+  public void set(int height, Block blk) {
+    this.blocks[chunk(height)][height & (CHUNK_SIZE - 1)] = blk;
+    this.times[chunk(height)][height & (CHUNK_SIZE - 1)] = blk.getTime();
+    this.replaced = Math.min(this.replaced, height);
+    this.replacements++;
+  } // set(int, Block)
+
+  /**
+   * Find the lowest height whose block has been replaced since the last call, and forget it.
+   *
+   * @return the height, or Integer.MAX_VALUE if no block has been replaced.
+   */
+  public int takeReplaced() {
+    int height = this.replaced;
+    this.replaced = Integer.MAX_VALUE;
+    return height;
+  } // takeReplaced()
+
+  /**
+   * Add a block after the last one.
+   *
+   * @param blk The block.
+   * @param time When the block was mined, in milliseconds since the epoch.
+   * @param check The validator that applied to the block.
+   */
+  public void add(Block blk, long time, HashValidator check) {
+    int c = this.size >>> CHUNK_BITS;
+    if (c == this.blocks.length) {
+      this.blocks = Arrays.copyOf(this.blocks, c * 2);
+      this.times = Arrays.copyOf(this.times, c * 2);
+      this.validators = Arrays.copyOf(this.validators, c * 2);
+    } // if
+    if (this.blocks[c] == null) {
+      this.blocks[c] = new Block[CHUNK_SIZE];
+      this.times[c] = new long[CHUNK_SIZE];
+      this.validators[c] = new HashValidator[CHUNK_SIZE];
+    } // if
+    int i = this.size & (CHUNK_SIZE - 1);
+    this.blocks[c][i] = blk;
+    this.times[c][i] = time;
+    this.validators[c][i] = check;
+    this.size++;
+  } // add(Block, long, HashValidator)
+
+  /**
+   * Remove the last block.
+   *
+   * @return the block removed (or null, if the store can no longer read it).
+   *
+   * @throws IndexOutOfBoundsException if the store is empty.
+   */
+  public Block removeLast() {
+    int height = this.size - 1;
+    int c = chunk(height);
+    int i = height & (CHUNK_SIZE - 1);
+    Block blk = this.blocks[c][i];
+    this.blocks[c][i] = null;
+    this.validators[c][i] = null;
+    this.size--;
+    return blk;
+  } // removeLast()
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Find the chunk that holds a height, checking that there is a block there.
+   *
+   * @param height The height.
+   *
+   * @return the index of the chunk.
+   *
+   * @throws IndexOutOfBoundsException if there is no block at that height.
+   */
+  int chunk(int height) {
+    if (height < 0 || height >= this.size) {
+      throw new IndexOutOfBoundsException("no block at height " + height);
+    } // if
+    return height >>> CHUNK_BITS;
+  } // chunk(int)
+} // class BlockStore
@@ -0,0 +1,219 @@
+package edu.grinnell.csc207.blockchains;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A Merkle tree over the hashes of every block in a chain, shaped as MerkleTree shapes its
+ * trees, with the block hashes themselves as the leaves. Its root commits to the whole chain,
+ * so a client that trusts the root can check that a block is in the chain from one hash per
+ * level of the tree rather than from every block.
+ *
+ * We keep only the nodes whose subtrees are complete: at level k (where level 0 is the block
+ * hashes, read from the store) that is the first size / 2^k nodes, and it never changes once
+ * made. Adding a block makes at most one new node per level, and removing the last block just
+ * forgets the ones that covered it. The nodes along the right edge of the tree that cover fewer
+ * blocks are recomputed, one per level, when a root or proof is needed.
+ *
+ * Blocks are added and removed only at the end of the chain, in step with the store. If blocks
+ * in the store are replaced, the accumulator is rebuilt on the next lookup.
+ *
+ * @author Alex Pollock
+ * @author Kevin Tang
+ */
+public class ChainAccumulator {
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The store whose blocks we accumulate.
+   */
+  BlockStore store;
+
+  /**
+   * The complete nodes at each level above the block hashes; levels[k] holds level k + 1.
+   * Only the first size / 2^(k + 1) entries of levels[k] are in use.
+   */
+  Hash[][] levels = new Hash[0][];
+
+  /**
+   * The number of blocks accumulated.
+   */
+  int size;
+
+  /**
+   * The number of replacements the store had made when we last built the accumulator.
+   */
+  int replacements;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Accumulate every block in a store.
+   *
+   * @param blocks The store.
+   */
+  public ChainAccumulator(BlockStore blocks) {
+    this.store = blocks;
+    rebuild();
+  } // ChainAccumulator(BlockStore)
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Accumulate every block in the store, forgetting what we had.
+   */
+  void rebuild() {
+    this.levels = new Hash[0][];
+    this.size = 0;
+    this.replacements = this.store.replacements;
+    while (this.size < this.store.size()) {
+      add(this.size);
+    } // while
+  } // rebuild()
+
+  /**
+   * Get a complete node.
+   *
+   * @param level The level, where 0 is the block hashes.
+   * @param index The index of the node in its level, below size / 2^level.
+   *
+   * @return the node.
+   */
+  Hash node(int level, int index) {
+    return (level == 0) ? this.store.getHash(index) : this.levels[level - 1][index];
+  } // node(int, int)
+
+  /**
+   * Find the node at the right end of each level that covers fewer blocks than a complete node
+   * at that level would.
+   *
+   * @return the nodes, indexed by level, with null for levels whose nodes are all complete. The
+   *         array has one entry per level, up to and including the root.
+   */
+  Hash[] partials() {
+    List<Hash> result = new ArrayList<Hash>();
+    Hash partial = null;
+    for (int level = 0; ; level++) {
+      int complete = this.size >> level;
+      int width = complete + ((partial == null) ? 0 : 1);
+      result.add(partial);
+      if (width <= 1) {
+        return result.toArray(new Hash[0]);
+      } // if
+      if (width % 2 == 1) {
+        // The last node moves up unchanged.
+        partial = (partial == null) ? node(level, complete - 1) : partial;
+      } else if (partial != null) {
+        partial = MerkleTree.node(node(level, complete - 1), partial);
+      } // if/else
+    } // for
+  } // partials()
+
+  /**
+   * Check whether the store has replaced blocks since we last built the accumulator, and
+   * rebuild it if so.
+   */
+  void refresh() {
+    if (this.replacements != this.store.replacements) {
+      rebuild();
+    } // if
+  } // refresh()
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  /**
+   * Accumulate the block at a height, which must be the next block in the store.
+   *
+   * @param height The height.
+   */
+  public void add(int height) {
+    this.size = height + 1;
+    for (int level = 1; (this.size >> level) != (height >> level); level++) {
+      if (level > this.levels.length) {
+        this.levels = Arrays.copyOf(this.levels, level);
+        this.levels[level - 1] = new Hash[4];
+      } // if
+      int index = (this.size >> level) - 1;
+      if (index == this.levels[level - 1].length) {
+        this.levels[level - 1] = Arrays.copyOf(this.levels[level - 1], index * 2);
+      } // if
+      this.levels[level - 1][index] = MerkleTree.node(node(level - 1, 2 * index),
+          node(level - 1, 2 * index + 1));
+    } // for
+  } // add(int)
+
+  /**
+   * Stop accumulating the last block.
+   */
+  public void removeLast() {
+    if (this.replacements != this.store.replacements) {
+      // The accumulator is stale, and will be rebuilt on the next lookup.
+      return;
+    } // if
+    this.size--;
+    for (int level = 1; level <= this.levels.length; level++) {
+      if ((this.size >> level) < this.levels[level - 1].length) {
+        this.levels[level - 1][this.size >> level] = null;
+      } // if
+    } // for
+  } // removeLast()
+
+  /**
+   * Get the root of the tree over every block.
+   *
+   * @return the root.
+   */
+  public Hash root() {
+    refresh();
+    Hash[] partials = partials();
+    int top = partials.length - 1;
+    return (partials[top] != null) ? partials[top] : node(top, 0);
+  } // root()
+
+  /**
+   * Get the siblings of a block on the way up to the root.
+   *
+   * @param height The height of the block.
+   *
+   * @return the siblings, from the bottom of the tree up, as MerkleTree.climb expects them.
+   *
+   * @throws IndexOutOfBoundsException if there is no block at that height.
+   */
+  public Hash[] path(int height) {
+    refresh();
+    if (height < 0 || height >= this.size) {
+      throw new IndexOutOfBoundsException("no block at height " + height);
+    } // if
+    Hash[] partials = partials();
+    List<Hash> siblings = new ArrayList<Hash>();
+    int index = height;
+    for (int level = 0; level < partials.length - 1; level++) {
+      int complete = this.size >> level;
+      int width = complete + ((partials[level] == null) ? 0 : 1);
+      int sibling = (index % 2 == 1) ? index - 1 : index + 1;
+      if (sibling < width) {
+        siblings.add((sibling < complete) ? node(level, sibling) : partials[level]);
+      } // if
+      index /= 2;
+    } // for
+    return siblings.toArray(new Hash[0]);
+  } // path(int)
+
+  /**
+   * Get the number of blocks accumulated.
+   *
+   * @return the number of blocks.
+   */
+  public int size() {
+    return this.size;
+  } // size()
+} // class ChainAccumulator
@@ -0,0 +1,120 @@
+package edu.grinnell.csc207.blockchains;
+
+/**
+ * Policies for adjusting mining difficulty. Every so many blocks, a chain compares how long those
+ * blocks took to mine with how long they should have taken and moves the number of leading zero
+ * bits it requires so that future blocks arrive closer to the target interval.
+ *
+ * @author Alex Pollock
+ * @author Kevin Tang
+ */
+public class DifficultyRetarget {
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * The largest change in bits in a single retarget, so one odd window cannot swing the
+   * difficulty too far.
+   */
+  static final int MAX_STEP = 2;
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The number of blocks between retargets.
+   */
+  int interval;
+
+  /**
+   * The desired time between blocks, in milliseconds.
+   */
+  long targetMillis;
+
+  /**
+   * The fewest leading zero bits we will ever require.
+   */
+  int minBits;
+
+  /**
+   * The most leading zero bits we will ever require.
+   */
+  int maxBits;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Create a new retargeting policy.
+   *
+   * @param blocks The number of blocks between retargets.
+   * @param millis The desired time between blocks, in milliseconds.
+   * @param fewestBits The fewest leading zero bits to require.
+   * @param mostBits The most leading zero bits to require.
+   *
+   * @throws IllegalArgumentException if blocks or millis is not positive or the bounds on the
+   *         bits are out of order.
+   */
+  public DifficultyRetarget(int blocks, long millis, int fewestBits, int mostBits) {
+    if (blocks < 1 || millis < 1 || fewestBits < 0 || fewestBits > mostBits) {
+      throw new IllegalArgumentException("invalid retarget policy");
+    } // if
+    this.interval = blocks;
+    this.targetMillis = millis;
+    this.minBits = fewestBits;
+    this.maxBits = mostBits;
+  } // DifficultyRetarget(int, long, int, int)
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  /**
+   * Get the number of blocks between retargets.
+   *
+   * @return the interval.
+   */
+  public int getInterval() {
+    return this.interval;
+  } // getInterval()
+
+  /**
+   * Get the desired time between blocks.
+   *
+   * @return the target, in milliseconds.
+   */
+  public long getTargetMillis() {
+    return this.targetMillis;
+  } // getTargetMillis()
+
+  /**
+   * Keep a number of bits within the bounds of this policy.
+   *
+   * @param bits The number of bits.
+   *
+   * @return the closest number of bits that is within bounds.
+   */
+  public int clamp(int bits) {
+    return Math.max(this.minBits, Math.min(this.maxBits, bits));
+  } // clamp(int)
+
+  /**
+   * Determine the difficulty for the next window of blocks. Each bit doubles the expected work,
+   * so we add one bit for every halving of the time the last window should have taken.
+   *
+   * @param bits The number of bits required during the last window.
+   * @param elapsedMillis How long the last window of blocks took.
+   *
+   * @return the number of bits to require during the next window.
+   */
+  public int retarget(int bits, long elapsedMillis) {
+    double expected = (double) this.interval * this.targetMillis;
+    double ratio = expected / Math.max(1, elapsedMillis);
+    long step = Math.round(Math.log(ratio) / Math.log(2));
+    step = Math.max(-MAX_STEP, Math.min(MAX_STEP, step));
+    return clamp(bits + (int) step);
+  } // retarget(int, long)
+} // class DifficultyRetarget
@@ -1,5 +1,9 @@
 package edu.grinnell.csc207.blockchains;
 
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 
 /**
@@ -10,6 +14,21 @@ import java.util.Arrays;
  * @author Samuel A. Rebelsky
  */
 public class Hash {
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * Reads eight bytes at a time as a big-endian long.
+   */
+  static final VarHandle LONGS =
+      MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+
+  /**
+   * The hex digits, in order.
+   */
+  static final byte[] HEX_DIGITS = "0123456789ABCDEF".getBytes(StandardCharsets.US_ASCII);
+
   // +--------+------------------------------------------------------
   // | Fields |
   // +--------+
@@ -17,6 +36,18 @@ public class Hash {
    * The collection of bytes.
    */
   private byte[] bytes;
+
+  /**
+   * The hash code, or 0 if it has not been computed yet.
+   */
+  private int code;
+
+  /**
+   * Whether the bytes are shared with someone who may change them, in which case the hash code
+   * can not be cached.
+   */
+  private boolean shared;
+
   // +--------------+------------------------------------------------
   // | Constructors |
   // +--------------+
@@ -30,6 +61,42 @@ public class Hash {
     this.bytes = data.clone();
   } // Hash(byte[])
 
+  /**
+   * Create a hash that shares its bytes with the caller rather than copying them.
+   */
+  private Hash() {
+  } // Hash()
+
+  /**
+   * Create a hash that shares the given array. Changes to the array show through the hash, so
+   * this is only for scratch hashes (such as mining candidates) that never leave their owner.
+   *
+   * @param data The array to share.
+   *
+   * @return a hash backed by data.
+   */
+  static Hash view(byte[] data) {
+    Hash hash = new Hash();
+    hash.bytes = data;
+    hash.shared = true;
+    return hash;
+  } // view(byte[])
+
+  /**
+   * Create a hash that takes over the given array without copying it. The caller must not
+   * change the array afterwards, so this is only for arrays that nothing else holds (such as one
+   * just filled by a decoder).
+   *
+   * @param data The array to take over.
+   *
+   * @return a hash backed by data.
+   */
+  static Hash wrap(byte[] data) {
+    Hash hash = new Hash();
+    hash.bytes = data;
+    return hash;
+  } // wrap(byte[])
+
   // +---------+-----------------------------------------------------
   // | Methods |
   // +---------+
@@ -54,6 +121,29 @@ public class Hash {
     return this.bytes[i];
   } // get()
 
+  /**
+   * Get the ith group of eight bytes as a big-endian long. If the hash ends partway through the
+   * group, the missing low-order bytes are treated as zero.
+   *
+   * @param i The index of the group, between 0 (inclusive) and (length() + 7) / 8 (exclusive).
+   *
+   * @return the bytes of that group as a long.
+   */
+  long getLong(int i) {
+    int offset = i * Long.BYTES;
+    if (offset + Long.BYTES <= this.bytes.length) {
+      return (long) LONGS.get(this.bytes, offset);
+    } // if
+    long word = 0;
+    for (int j = 0; j < Long.BYTES; j++) {
+      word <<= Byte.SIZE;
+      if (offset + j < this.bytes.length) {
+        word |= Byte.toUnsignedLong(this.bytes[offset + j]);
+      } // if
+    } // for
+    return word;
+  } // getLong(int)
+
   /**
    * Get a copy of the bytes in the hash. We make a copy so that the client cannot change them.
    *
@@ -69,11 +159,12 @@ public class Hash {
    * @return the hash as a hex string.
    */
   public String toString() {
-    StringBuilder toReturn = new StringBuilder();
-    for (int i = 0; i < bytes.length; i++) {
-      toReturn.append(String.format("%02X", Byte.toUnsignedInt(bytes[i])));
+    byte[] hex = new byte[this.bytes.length * 2];
+    for (int i = 0; i < this.bytes.length; i++) {
+      hex[2 * i] = HEX_DIGITS[(this.bytes[i] >> 4) & 0xF];
+      hex[2 * i + 1] = HEX_DIGITS[this.bytes[i] & 0xF];
     } // for
-    return toReturn.toString();
+    return new String(hex, StandardCharsets.US_ASCII);
   } // toString()
 
   /**
@@ -95,24 +186,34 @@ public class Hash {
    * @return true if the two hashes are structurally equivalent and false otherwise.
    */
   public boolean equals(Hash other) {
-    if (other.length() == this.length()) {
-      for (int i = 0; i < this.length(); i++) {
-        if (other.get(i) != this.get(i)) {
-          return false;
-        } // if
-      } // for
-    } else {
+    if (this == other) {
+      return true;
+    } else if (this.code != 0 && other.code != 0 && this.code != other.code) {
+      // Both hash codes are known and they differ, so the bytes must too.
       return false;
     } // if/else
-    return true;
-  } // eqv(Hash)
+    return Arrays.equals(this.bytes, other.bytes);
+  } // equals(Hash)
 
   /**
-   * Get the hash code of this object.
+   * Get the hash code of this object, computed from the bytes themselves eight at a time.
+   * Digests are already evenly spread, so folding their words together is enough. The code is
+   * computed once and cached, except for views, whose bytes may change.
    *
    * @return the hash code.
    */
   public int hashCode() {
-    return this.toString().hashCode();
+    int result = this.code;
+    if (result == 0) {
+      long acc = this.bytes.length;
+      for (int i = 0; i * Long.BYTES < this.bytes.length; i++) {
+        acc = acc * 31 + getLong(i);
+      } // for
+      result = (int) (acc ^ (acc >>> 32));
+      if (!this.shared) {
+        this.code = result;
+      } // if
+    } // if
+    return result;
   } // hashCode()
 } // class Hash
@@ -0,0 +1,205 @@
+package edu.grinnell.csc207.blockchains;
+
+import edu.grinnell.csc207.util.OpenAddressing;
+
+/**
+ * An index from block hashes to heights. The index keeps no hashes of its own: it is an
+ * open-addressing table whose slots hold a height (plus one, so that 0 means empty) and the
+ * hash code of the block at that height, and lookups compare against the hash in the store.
+ * Heights are added and removed only at the end of the chain, in step with the store.
+ *
+ * If blocks in the store are replaced, the index is rebuilt on the next lookup.
+ *
+ * @author Alex Pollock
+ * @author Kevin Tang
+ */
+public class HashIndex {
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * The initial number of slots.
+   */
+  static final int INITIAL_SLOTS = 64;
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The store whose blocks we index.
+   */
+  BlockStore store;
+
+  /**
+   * The table. Each slot holds one more than the height that hashed there, or 0 if the slot is
+   * empty. The length is a power of two, at least twice the size.
+   */
+  int[] slots;
+
+  /**
+   * The hash code of the block in each slot.
+   */
+  int[] codes;
+
+  /**
+   * The number of heights in the index.
+   */
+  int size;
+
+  /**
+   * The number of replacements the store had made when we last built the index.
+   */
+  int replacements;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Index every block in a store.
+   *
+   * @param blocks The store.
+   */
+  public HashIndex(BlockStore blocks) {
+    this.store = blocks;
+    rebuild();
+  } // HashIndex(BlockStore)
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Index every block in the store, forgetting what we had.
+   */
+  void rebuild() {
+    int capacity = INITIAL_SLOTS;
+    while (capacity < this.store.size() * 2) {
+      capacity *= 2;
+    } // while
+    this.slots = new int[capacity];
+    this.codes = new int[capacity];
+    this.size = 0;
+    for (int height = 0; height < this.store.size(); height++) {
+      insert(height, this.store.getHash(height).hashCode());
+    } // for
+    this.replacements = this.store.replacements;
+  } // rebuild()
+
+  /**
+   * Find the slot where a hash code belongs first.
+   *
+   * @param code The hash code.
+   *
+   * @return the index of the slot.
+   */
+  int home(int code) {
+    return OpenAddressing.home(code, this.slots.length);
+  } // home(int)
+
+  /**
+   * Put a height in the first free slot for its hash code.
+   *
+   * @param height The height.
+   * @param code The hash code of the block at that height.
+   */
+  void insert(int height, int code) {
+    if ((this.size + 1) * 2 > this.slots.length) {
+      int[] oldSlots = this.slots;
+      int[] oldCodes = this.codes;
+      this.slots = new int[oldSlots.length * 2];
+      this.codes = new int[oldSlots.length * 2];
+      this.size = 0;
+      for (int i = 0; i < oldSlots.length; i++) {
+        if (oldSlots[i] != 0) {
+          insert(oldSlots[i] - 1, oldCodes[i]);
+        } // if
+      } // for
+    } // if
+    int slot = home(code);
+    while (this.slots[slot] != 0) {
+      slot = OpenAddressing.next(slot, this.slots.length);
+    } // while
+    this.slots[slot] = height + 1;
+    this.codes[slot] = code;
+    this.size++;
+  } // insert(int, int)
+
+  /**
+   * Empty a slot, shifting later heights in the same run back so that every height can still
+   * be reached by probing from its home slot.
+   *
+   * @param slot The slot to empty.
+   */
+  void clearSlot(int slot) {
+    OpenAddressing.clear(this.slots, slot, (full) -> this.codes[full],
+        (from, to) -> this.codes[to] = this.codes[from]);
+  } // clearSlot(int)
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  /**
+   * Index the block at a height, which must be the last block in the store.
+   *
+   * @param height The height.
+   */
+  public void add(int height) {
+    insert(height, this.store.getHash(height).hashCode());
+  } // add(int)
+
+  /**
+   * Stop indexing the block at a height.
+   *
+   * @param height The height.
+   * @param hash The hash of the block at that height.
+   */
+  public void remove(int height, Hash hash) {
+    if (this.replacements != this.store.replacements) {
+      // The index is stale, and will be rebuilt on the next lookup.
+      return;
+    } // if
+    int length = this.slots.length;
+    for (int slot = home(hash.hashCode()); this.slots[slot] != 0;
+        slot = OpenAddressing.next(slot, length)) {
+      if (this.slots[slot] == height + 1) {
+        clearSlot(slot);
+        this.size--;
+        return;
+      } // if
+    } // for
+  } // remove(int, Hash)
+
+  /**
+   * Find the height of the block with a hash.
+   *
+   * @param hash The hash.
+   *
+   * @return the height of the block, or -1 if no block has that hash.
+   */
+  public int find(Hash hash) {
+    if (this.replacements != this.store.replacements) {
+      rebuild();
+    } // if
+    int code = hash.hashCode();
+    int length = this.slots.length;
+    for (int slot = home(code); this.slots[slot] != 0; slot = OpenAddressing.next(slot, length)) {
+      if (this.codes[slot] == code && this.store.getHash(this.slots[slot] - 1).equals(hash)) {
+        return this.slots[slot] - 1;
+      } // if
+    } // for
+    return -1;
+  } // find(Hash)
+
+  /**
+   * Get the number of heights in the index.
+   *
+   * @return the number of heights.
+   */
+  public int size() {
+    return this.size;
+  } // size()
+} // class HashIndex
@@ -0,0 +1,278 @@
+package edu.grinnell.csc207.blockchains;
+
+import java.util.Arrays;
+import edu.grinnell.csc207.util.AssociativeArray;
+import edu.grinnell.csc207.util.KeyNotFoundException;
+import edu.grinnell.csc207.util.NullKeyException;
+
+/**
+ * An index from each user to the heights of the blocks with a transaction that names them as
+ * source or target, in increasing order, along with the user's balance just after each of those
+ * blocks. A block that names the same user more than once is listed once, with the combined
+ * change to their balance, and the empty name used for deposits is not indexed. Heights are
+ * added and removed only at the end of the chain, in step with the store.
+ *
+ * A user's balance only changes at the blocks listed for them, so the balance as of any height
+ * is the one recorded for the last listed block at or below it, which a binary search finds.
+ *
+ * If blocks in the store are replaced, the index is rebuilt on the next lookup.
+ *
+ * @author Alex Pollock
+ * @author Kevin Tang
+ */
+public class HistoryIndex {
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * The number of heights we first make room for in each user's list.
+   */
+  static final int INITIAL_HEIGHTS = 4;
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The store whose blocks we index.
+   */
+  BlockStore store;
+
+  /**
+   * The position of each user's lists in heights, balances, and counts.
+   */
+  AssociativeArray<String, Integer> users;
+
+  /**
+   * The heights for each user, in increasing order. Only the first counts[i] entries of
+   * heights[i] are in use.
+   */
+  int[][] heights;
+
+  /**
+   * The balance of each user just after each of the blocks in heights.
+   */
+  long[][] balances;
+
+  /**
+   * The number of heights for each user.
+   */
+  int[] counts;
+
+  /**
+   * The number of replacements the store had made when we last built the index.
+   */
+  int replacements;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Index every block in a store.
+   *
+   * @param blocks The store.
+   */
+  public HistoryIndex(BlockStore blocks) {
+    this.store = blocks;
+    rebuild();
+  } // HistoryIndex(BlockStore)
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Index every block in the store, forgetting what we had.
+   */
+  void rebuild() {
+    this.users = new AssociativeArray<String, Integer>();
+    this.heights = new int[16][];
+    this.balances = new long[16][];
+    this.counts = new int[16];
+    for (int height = 0; height < this.store.size(); height++) {
+      index(height, this.store.get(height));
+    } // for
+    this.replacements = this.store.replacements;
+  } // rebuild()
+
+  /**
+   * Find the position of a user's list.
+   *
+   * @param user The user.
+   *
+   * @return the position, or -1 if the user has no list.
+   */
+  int position(String user) {
+    try {
+      return this.users.hasKey(user) ? this.users.get(user) : -1;
+    } catch (KeyNotFoundException e) {
+      return -1;
+    } // try/catch
+  } // position(String)
+
+  /**
+   * Add a height to the end of a user's list, starting a list if the user has none. If the
+   * height is already last in the list, the change is added to the balance recorded there.
+   *
+   * @param user The user.
+   * @param height The height.
+   * @param change How much the block at that height changes the user's balance.
+   */
+  void append(String user, int height, long change) {
+    int pos = position(user);
+    if (pos >= 0 && this.counts[pos] > 0 && this.heights[pos][this.counts[pos] - 1] == height) {
+      this.balances[pos][this.counts[pos] - 1] += change;
+      return;
+    } // if
+    if (pos < 0) {
+      pos = this.users.size();
+      if (pos == this.counts.length) {
+        this.heights = Arrays.copyOf(this.heights, pos * 2);
+        this.balances = Arrays.copyOf(this.balances, pos * 2);
+        this.counts = Arrays.copyOf(this.counts, pos * 2);
+      } // if
+      this.heights[pos] = new int[INITIAL_HEIGHTS];
+      this.balances[pos] = new long[INITIAL_HEIGHTS];
+      try {
+        this.users.set(user, pos);
+      } catch (NullKeyException | KeyNotFoundException e) {
+        // Transactions always name their users.
+      } // try/catch
+    } else if (this.counts[pos] == this.heights[pos].length) {
+      this.heights[pos] = Arrays.copyOf(this.heights[pos], this.counts[pos] * 2);
+      this.balances[pos] = Arrays.copyOf(this.balances[pos], this.counts[pos] * 2);
+    } // if/else
+    int count = this.counts[pos]++;
+    this.heights[pos][count] = height;
+    this.balances[pos][count] = ((count == 0) ? 0 : this.balances[pos][count - 1]) + change;
+  } // append(String, int, long)
+
+  /**
+   * Add a height to the lists of the users that the transactions in a block name.
+   *
+   * @param height The height of the block.
+   * @param blk The block.
+   */
+  void index(int height, Block blk) {
+    for (Transaction t : blk.getTransactions()) {
+      if (!t.getSource().equals("")) {
+        append(t.getSource(), height, -(long) t.getAmount());
+      } // if
+      if (!t.getTarget().equals("")) {
+        append(t.getTarget(), height, t.getAmount());
+      } // if
+    } // for
+  } // index(int, Block)
+
+  /**
+   * Remove a height from the end of a user's list, if it is there.
+   *
+   * @param user The user.
+   * @param height The height.
+   */
+  void drop(String user, int height) {
+    int pos = position(user);
+    if (pos >= 0 && this.counts[pos] > 0 && this.heights[pos][this.counts[pos] - 1] == height) {
+      this.counts[pos]--;
+    } // if
+  } // drop(String, int)
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  /**
+   * Index the block at a height, which must be the last block in the store.
+   *
+   * @param height The height.
+   */
+  public void add(int height) {
+    index(height, this.store.get(height));
+  } // add(int)
+
+  /**
+   * Stop indexing the block at a height, which must be the last height indexed.
+   *
+   * @param height The height.
+   * @param blk The block at that height.
+   */
+  public void remove(int height, Block blk) {
+    if (this.replacements != this.store.replacements) {
+      // The index is stale, and will be rebuilt on the next lookup.
+      return;
+    } // if
+    for (Transaction t : blk.getTransactions()) {
+      drop(t.getSource(), height);
+      drop(t.getTarget(), height);
+    } // for
+  } // remove(int, Block)
+
+  /**
+   * Count the blocks that name a user.
+   *
+   * @param user The user.
+   *
+   * @return the number of blocks.
+   */
+  public int count(String user) {
+    if (this.replacements != this.store.replacements) {
+      rebuild();
+    } // if
+    int pos = position(user);
+    return (pos < 0) ? 0 : this.counts[pos];
+  } // count(String)
+
+  /**
+   * Get one page of the heights of the blocks that name a user, newest first.
+   *
+   * @param user The user.
+   * @param skip How many of the newest heights to skip.
+   * @param limit The most heights to return.
+   *
+   * @return up to limit heights, in decreasing order.
+   */
+  public int[] heights(String user, int skip, int limit) {
+    int count = count(user);
+    if (skip >= count || limit <= 0) {
+      return new int[0];
+    } // if
+    int[] list = this.heights[position(user)];
+    int[] result = new int[Math.min(limit, count - skip)];
+    for (int i = 0; i < result.length; i++) {
+      result[i] = list[count - 1 - skip - i];
+    } // for
+    return result;
+  } // heights(String, int, int)
+
+  /**
+   * Find a user's balance as of a height: after the block at that height and every block
+   * before it, and before any block after it.
+   *
+   * @param user The user.
+   * @param height The height.
+   *
+   * @return the balance (or 0, if no block up to that height names the user).
+   */
+  public long balance(String user, int height) {
+    int count = count(user);
+    if (count == 0) {
+      return 0;
+    } // if
+    int pos = position(user);
+    int[] list = this.heights[pos];
+    // Find the number of listed heights at or below the height.
+    int lo = 0;
+    int hi = count;
+    while (lo < hi) {
+      int mid = (lo + hi) >>> 1;
+      if (list[mid] <= height) {
+        lo = mid + 1;
+      } else {
+        hi = mid;
+      } // if/else
+    } // while
+    return (lo == 0) ? 0 : this.balances[pos][lo - 1];
+  } // balance(String, int)
+} // class HistoryIndex
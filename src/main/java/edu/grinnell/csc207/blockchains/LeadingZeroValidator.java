@@ -0,0 +1,91 @@
+package edu.grinnell.csc207.blockchains;
+
+/**
+ * Validators that require a hash to start with a number of zero bits. Each extra bit doubles the
+ * expected mining work, so difficulty can be tuned in much finer steps than whole bytes.
+ *
+ * @author Alex Pollock
+ * @author Kevin Tang
+ */
+public class LeadingZeroValidator implements HashValidator {
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The number of leading zero bits required.
+   */
+  int bits;
+
+  /**
+   * The number of leading 64-bit words that must be entirely zero.
+   */
+  int zeroWords;
+
+  /**
+   * The number of leading zero bits required in the word after those.
+   */
+  int extraBits;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Create a validator that requires a number of leading zero bits.
+   *
+   * @param zeroBits The number of leading zero bits required.
+   *
+   * @throws IllegalArgumentException if zeroBits is negative.
+   */
+  public LeadingZeroValidator(int zeroBits) {
+    if (zeroBits < 0) {
+      throw new IllegalArgumentException("cannot require " + zeroBits + " zero bits");
+    } // if
+    this.bits = zeroBits;
+    this.zeroWords = zeroBits / Long.SIZE;
+    this.extraBits = zeroBits % Long.SIZE;
+  } // LeadingZeroValidator(int)
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  /**
+   * Get the number of leading zero bits required.
+   *
+   * @return the number of bits.
+   */
+  public int getBits() {
+    return this.bits;
+  } // getBits()
+
+  /**
+   * Determine if a hash starts with enough zero bits.
+   *
+   * @param hash The hash we're checking.
+   *
+   * @return true if the hash has at least getBits() leading zero bits and false otherwise.
+   */
+  public boolean isValid(Hash hash) {
+    if ((long) hash.length() * Byte.SIZE < this.bits) {
+      return false;
+    } // if
+    for (int i = 0; i < this.zeroWords; i++) {
+      if (hash.getLong(i) != 0) {
+        return false;
+      } // if
+    } // for
+    return (this.extraBits == 0)
+        || (Long.numberOfLeadingZeros(hash.getLong(this.zeroWords)) >= this.extraBits);
+  } // isValid(Hash)
+
+  /**
+   * Convert to a string.
+   *
+   * @return a string of the form "LeadingZeroValidator(bits)".
+   */
+  public String toString() {
+    return "LeadingZeroValidator(" + this.bits + ")";
+  } // toString()
+} // class LeadingZeroValidator
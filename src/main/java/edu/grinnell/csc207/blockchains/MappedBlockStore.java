@@ -0,0 +1,212 @@
+package edu.grinnell.csc207.blockchains;
+
+import java.util.Arrays;
+
+/**
+ * A block store that keeps its blocks in a block log rather than on the heap. Blocks, hashes,
+ * and times are read from memory-mapped views of the log's segments, and a Block is only built
+ * when someone asks for one, so a chain can be far larger than the heap and the operating
+ * system's page cache decides which parts of it stay in memory.
+ *
+ * Opening such a chain is not free, though: the log walks every record header to find the
+ * records, and unless a balance snapshot covers them, the chain decodes every block to rebuild
+ * the balances.
+ *
+ * The chain writes each block to the log before adding it here, and cuts it from the log before
+ * removing it, so the store itself only counts blocks and remembers which validator applied to
+ * them. Validators change rarely, so they are kept as runs: the first height of each run and the
+ * validator that applies from there on.
+ *
+ * @author Alex Pollock
+ * @author Kevin Tang
+ */
+public class MappedBlockStore extends BlockStore {
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The log that holds the blocks.
+   */
+  BlockLog log;
+
+  /**
+   * The first height of each run of blocks with the same validator.
+   */
+  int[] runStarts = new int[4];
+
+  /**
+   * The validator for each run.
+   */
+  HashValidator[] runValidators = new HashValidator[4];
+
+  /**
+   * The number of runs.
+   */
+  int runs;
+
+  /**
+   * The hash of the last block (or null, if we have to read it from the log).
+   */
+  Hash tip;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Create an empty store over a log.
+   *
+   * @param blockLog The log that holds the blocks.
+   */
+  public MappedBlockStore(BlockLog blockLog) {
+    this.log = blockLog;
+  } // MappedBlockStore(BlockLog)
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  /**
+   * Get the block at a height, reading it from the log.
+   *
+   * @param height The height, between 0 (inclusive) and size() (exclusive).
+   *
+   * @return a new block with the contents of the one at that height.
+   *
+   * @throws IndexOutOfBoundsException if there is no block at that height.
+   */
+  @Override
+  public Block get(int height) {
+    chunk(height);
+    return this.log.read(height);
+  } // get(int)
+
+  /**
+   * Get the hash of the block at a height, without building the block.
+   *
+   * @param height The height, between 0 (inclusive) and size() (exclusive).
+   *
+   * @return the hash.
+   *
+   * @throws IndexOutOfBoundsException if there is no block at that height.
+   */
+  @Override
+  public Hash getHash(int height) {
+    chunk(height);
+    if (height == this.size - 1 && this.tip != null) {
+      return this.tip;
+    } // if
+    return this.log.hash(height);
+  } // getHash(int)
+
+  /**
+   * Get the time at which the block at a height was mined.
+   *
+   * @param height The height, between 0 (inclusive) and size() (exclusive).
+   *
+   * @return the time, in milliseconds since the epoch.
+   *
+   * @throws IndexOutOfBoundsException if there is no block at that height.
+   */
+  @Override
+  public long getTime(int height) {
+    chunk(height);
+    return this.log.time(height);
+  } // getTime(int)
+
+  /**
+   * Get the validator that applied to the block at a height.
+   *
+   * @param height The height, between 0 (inclusive) and size() (exclusive).
+   *
+   * @return the validator.
+   *
+   * @throws IndexOutOfBoundsException if there is no block at that height.
+   */
+  @Override
+  public HashValidator getValidator(int height) {
+    chunk(height);
+    int lo = 0;
+    int hi = this.runs - 1;
+    while (lo < hi) {
+      int mid = (lo + hi + 1) >>> 1;
+      if (this.runStarts[mid] <= height) {
+        lo = mid;
+      } else {
+        hi = mid - 1;
+      } // if/else
+    } // while
+    return this.runValidators[lo];
+  } // getValidator(int)
+
+  /**
+   * Blocks in the log can not be replaced.
+   *
+   * @param height The height.
+   * @param blk The new block.
+   *
+   * @throws UnsupportedOperationException always.
+   */
+  @Override
+  public void set(int height, Block blk) {
+    throw new UnsupportedOperationException("blocks in a mapped store can not be replaced");
+  } // set(int, Block)
+
+  /**
+   * Add a block after the last one. The block must already be in the log.
+   *
+   * @param blk The block.
+   * @param time When the block was mined (already recorded in the log).
+   * @param check The validator that applied to the block.
+   *
+   * @throws IllegalStateException if the log does not hold the block.
+   */
+  @Override
+  public void add(Block blk, long time, HashValidator check) {
+    adopt(check);
+    this.tip = blk.getHash();
+  } // add(Block, long, HashValidator)
+
+  /**
+   * Add the next block in the log without reading it.
+   *
+   * @param check The validator that applied to the block.
+   *
+   * @throws IllegalStateException if the log holds no more blocks.
+   */
+  public void adopt(HashValidator check) {
+    if (this.log.size() <= this.size) {
+      throw new IllegalStateException("block " + this.size + " is not in the log");
+    } // if
+    if (this.runs == 0 || this.runValidators[this.runs - 1] != check) {
+      if (this.runs == this.runStarts.length) {
+        this.runStarts = Arrays.copyOf(this.runStarts, this.runs * 2);
+        this.runValidators = Arrays.copyOf(this.runValidators, this.runs * 2);
+      } // if
+      this.runStarts[this.runs] = this.size;
+      this.runValidators[this.runs++] = check;
+    } // if
+    this.tip = null;
+    this.size++;
+  } // adopt(HashValidator)
+
+  /**
+   * Remove the last block. The chain has already cut it from the log, so it can not be
+   * returned.
+   *
+   * @return null.
+   *
+   * @throws IndexOutOfBoundsException if the store is empty.
+   */
+  @Override
+  public Block removeLast() {
+    chunk(this.size - 1);
+    this.size--;
+    if (this.runStarts[this.runs - 1] == this.size) {
+      this.runValidators[--this.runs] = null;
+    } // if
+    this.tip = null;
+    return null;
+  } // removeLast()
+} // class MappedBlockStore
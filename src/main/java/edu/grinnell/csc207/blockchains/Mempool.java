@@ -0,0 +1,281 @@
+package edu.grinnell.csc207.blockchains;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.ToLongFunction;
+import edu.grinnell.csc207.util.NullKeyException;
+
+/**
+ * Transactions waiting to be mined. Any number of threads may submit transactions while a miner
+ * takes batches of them; nothing here holds a lock across mining, and the structures underneath
+ * are lock-free (apart from brief per-account updates), so producers never wait for a block.
+ *
+ * Transactions are checked on entry. A transaction is rejected if it is malformed (no target, a
+ * negative amount), if the same transaction is already waiting or being mined, or if its source
+ * could not pay for it on top of everything the source already has waiting. Deposits, with an
+ * empty source, only need to be well formed. Money that waiting transactions will take from an
+ * account is held back until the block that carries them is on the chain (or they are put back),
+ * and incoming money only counts once it is on the chain, so no order of taking can overdraw.
+ *
+ * Batches are taken in order of priority (higher first) and then of arrival.
+ *
+ * @author Alex Pollock
+ * @author Kevin Tang
+ */
+public class Mempool {
+  // +-------+-------------------------------------------------------
+  // | Types |
+  // +-------+
+
+  /**
+   * A waiting transaction and its place in line.
+   */
+  static class Entry implements Comparable<Entry> {
+    /**
+     * The transaction.
+     */
+    Transaction transaction;
+
+    /**
+     * Its priority; higher priorities are taken first.
+     */
+    int priority;
+
+    /**
+     * The order in which it arrived.
+     */
+    long arrival;
+
+    /**
+     * Create an entry.
+     *
+     * @param t The transaction.
+     * @param prio Its priority.
+     * @param order The order in which it arrived.
+     */
+    Entry(Transaction t, int prio, long order) {
+      this.transaction = t;
+      this.priority = prio;
+      this.arrival = order;
+    } // Entry(Transaction, int, long)
+
+    /**
+     * Compare two entries, putting the one to take first first.
+     *
+     * @param other The other entry.
+     *
+     * @return a negative number if this entry comes first, and a positive one otherwise.
+     */
+    public int compareTo(Entry other) {
+      if (this.priority != other.priority) {
+        return Integer.compare(other.priority, this.priority);
+      } // if
+      return Long.compare(this.arrival, other.arrival);
+    } // compareTo(Entry)
+  } // class Entry
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * Where we find each account's balance on the chain.
+   */
+  ToLongFunction<String> balances;
+
+  /**
+   * The transactions waiting to be taken, in the order to take them.
+   */
+  ConcurrentSkipListSet<Entry> queue = new ConcurrentSkipListSet<Entry>();
+
+  /**
+   * Every transaction we hold, whether waiting or taken but not yet confirmed.
+   */
+  ConcurrentHashMap<Transaction, Entry> pending = new ConcurrentHashMap<Transaction, Entry>();
+
+  /**
+   * How much the transactions we hold will take from each source.
+   */
+  ConcurrentHashMap<String, Long> held = new ConcurrentHashMap<String, Long>();
+
+  /**
+   * The number of transactions that have arrived.
+   */
+  AtomicLong arrivals = new AtomicLong();
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Create an empty pool that checks sources against a function of balances.
+   *
+   * @param accounts Finds the balance of an account on the chain. It is called from the threads
+   *        that submit transactions, so it must be safe to call from several at once.
+   */
+  public Mempool(ToLongFunction<String> accounts) {
+    this.balances = accounts;
+  } // Mempool(ToLongFunction<String>)
+
+  /**
+   * Create an empty pool that checks sources against the balances on a chain.
+   *
+   * @param chain The chain.
+   */
+  public Mempool(BlockChain chain) {
+    this((user) -> {
+      try {
+        return chain.balance(user);
+      } catch (NullKeyException e) {
+        return 0;
+      } // try/catch
+    });
+  } // Mempool(BlockChain)
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Hold back the amount a transaction takes from its source, if the source can pay it. The
+   * balance is looked up before we touch the held amounts, since looking it up may wait for the
+   * chain, and the new amount is then swapped in only if no one else changed it meanwhile.
+   *
+   * @param t The transaction.
+   *
+   * @return true if the amount is held and false if the source cannot pay it.
+   */
+  boolean hold(Transaction t) {
+    String source = t.getSource();
+    if (source.equals("")) {
+      return true;
+    } // if
+    long balance = this.balances.applyAsLong(source);
+    while (true) {
+      Long amount = this.held.get(source);
+      long before = (amount == null) ? 0 : amount;
+      if (balance - before < t.getAmount()) {
+        return false;
+      } // if
+      Long after = before + t.getAmount();
+      if ((amount == null) ? this.held.putIfAbsent(source, after) == null
+          : this.held.replace(source, amount, after)) {
+        return true;
+      } // if
+    } // while
+  } // hold(Transaction)
+
+  /**
+   * Stop holding back the amount a transaction takes from its source.
+   *
+   * @param t The transaction.
+   */
+  void release(Transaction t) {
+    if (!t.getSource().equals("")) {
+      this.held.computeIfPresent(t.getSource(), (source, amount) ->
+          (amount == t.getAmount()) ? null : Long.valueOf(amount - t.getAmount()));
+    } // if
+  } // release(Transaction)
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  /**
+   * Submit a transaction with the lowest priority, so that it is taken in order of arrival.
+   *
+   * @param t The transaction.
+   *
+   * @return true if the transaction was accepted and false if it was rejected.
+   */
+  public boolean submit(Transaction t) {
+    return submit(t, 0);
+  } // submit(Transaction)
+
+  /**
+   * Submit a transaction.
+   *
+   * @param t The transaction.
+   * @param priority Its priority; higher priorities are taken first.
+   *
+   * @return true if the transaction was accepted and false if it was rejected because it is
+   *         malformed, already held, or more than its source can pay.
+   */
+  public boolean submit(Transaction t, int priority) {
+    if (t == null || t.getSource() == null || t.getTarget() == null
+        || t.getTarget().equals("") || t.getAmount() < 0) {
+      return false;
+    } // if
+    Entry entry = new Entry(t, priority, this.arrivals.getAndIncrement());
+    if (this.pending.putIfAbsent(t, entry) != null) {
+      return false;
+    } // if
+    if (!hold(t)) {
+      this.pending.remove(t, entry);
+      return false;
+    } // if
+    this.queue.add(entry);
+    return true;
+  } // submit(Transaction, int)
+
+  /**
+   * Take the next batch of transactions to mine. They stay held, so they can not be submitted
+   * again and their sources can not spend the same money twice, until they are confirmed or
+   * put back.
+   *
+   * @param max The most transactions to take.
+   *
+   * @return the transactions, in the order to take them; empty if none are waiting.
+   */
+  public List<Transaction> take(int max) {
+    List<Transaction> batch = new ArrayList<Transaction>();
+    while (batch.size() < max) {
+      Entry entry = this.queue.pollFirst();
+      if (entry == null) {
+        break;
+      } // if
+      batch.add(entry.transaction);
+    } // while
+    return batch;
+  } // take(int)
+
+  /**
+   * Forget transactions that are now on the chain.
+   *
+   * @param batch Transactions returned by take(), in a block that has been appended.
+   */
+  public void confirm(List<Transaction> batch) {
+    for (Transaction t : batch) {
+      if (this.pending.remove(t) != null) {
+        release(t);
+      } // if
+    } // for
+  } // confirm(List<Transaction>)
+
+  /**
+   * Put back transactions that were taken but did not make it onto the chain, in their
+   * original places in line.
+   *
+   * @param batch Transactions returned by take().
+   */
+  public void putBack(List<Transaction> batch) {
+    for (Transaction t : batch) {
+      Entry entry = this.pending.get(t);
+      if (entry != null) {
+        this.queue.add(entry);
+      } // if
+    } // for
+  } // putBack(List<Transaction>)
+
+  /**
+   * Count the transactions waiting to be taken.
+   *
+   * @return the number of transactions.
+   */
+  public int size() {
+    return this.queue.size();
+  } // size()
+} // class Mempool
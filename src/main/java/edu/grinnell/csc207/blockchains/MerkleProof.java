@@ -0,0 +1,218 @@
+package edu.grinnell.csc207.blockchains;
+
+/**
+ * A proof that a transaction is in a chain, small enough for a client that cannot hold the
+ * chain itself. The proof has three parts:
+ *
+ * <ol>
+ * <li>the siblings of the transaction in its block's Merkle tree, which lead to the block's
+ * Merkle root (blocks with a single transaction need none, as their hash covers the transaction
+ * directly);</li>
+ * <li>the rest of the block's header (its previous hash, time, and nonce), which lead from the
+ * root to the block's hash; and</li>
+ * <li>the siblings of the block in the chain's accumulator, which lead from the block's hash to
+ * the root of the whole chain.</li>
+ * </ol>
+ *
+ * A client that trusts a chain root (from a source it trusts, or one it has checked before) can
+ * then verify the proof with one hash per level of the two trees, without any other blocks.
+ *
+ * @author Alex Pollock
+ * @author Kevin Tang
+ */
+public class MerkleProof {
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The transaction.
+   */
+  Transaction transaction;
+
+  /**
+   * The height of the block that holds the transaction.
+   */
+  int height;
+
+  /**
+   * The number of transactions in the block's batch, or 0 if the block has a single
+   * transaction.
+   */
+  int batchSize;
+
+  /**
+   * The index of the transaction in the batch.
+   */
+  int index;
+
+  /**
+   * The siblings of the transaction in the batch's Merkle tree, from the bottom up.
+   */
+  Hash[] batchPath;
+
+  /**
+   * The hash of the block before the one that holds the transaction.
+   */
+  Hash prevHash;
+
+  /**
+   * The nonce of the block that holds the transaction.
+   */
+  long nonce;
+
+  /**
+   * When the block that holds the transaction was mined (or 0, if it has no time).
+   */
+  long time;
+
+  /**
+   * The number of blocks in the chain the proof was made from.
+   */
+  int chainSize;
+
+  /**
+   * The siblings of the block in the chain's accumulator, from the bottom up.
+   */
+  Hash[] chainPath;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Assemble a proof, such as one received from a full node.
+   *
+   * @param transact The transaction.
+   * @param blockHeight The height of the block that holds the transaction.
+   * @param size The number of transactions in the block's batch, or 0 if the block has a single
+   *        transaction.
+   * @param position The index of the transaction in the batch.
+   * @param batchSiblings The siblings of the transaction in the batch's Merkle tree.
+   * @param previousHash The hash of the block before the one that holds the transaction.
+   * @param blockNonce The nonce of the block that holds the transaction.
+   * @param blocks The number of blocks in the chain.
+   * @param chainSiblings The siblings of the block in the chain's accumulator.
+   */
+  public MerkleProof(Transaction transact, int blockHeight, int size, int position,
+      Hash[] batchSiblings, Hash previousHash, long blockNonce, int blocks,
+      Hash[] chainSiblings) {
+    this(transact, blockHeight, size, position, batchSiblings, previousHash, blockNonce, 0,
+        blocks, chainSiblings);
+  } // MerkleProof(Transaction, int, int, int, Hash[], Hash, long, int, Hash[])
+
+  /**
+   * Assemble a proof about a block with a time.
+   *
+   * @param transact The transaction.
+   * @param blockHeight The height of the block that holds the transaction.
+   * @param size The number of transactions in the block's batch, or 0 if the block has a single
+   *        transaction.
+   * @param position The index of the transaction in the batch.
+   * @param batchSiblings The siblings of the transaction in the batch's Merkle tree.
+   * @param previousHash The hash of the block before the one that holds the transaction.
+   * @param blockNonce The nonce of the block that holds the transaction.
+   * @param blockTime When the block that holds the transaction was mined (or 0, for none).
+   * @param blocks The number of blocks in the chain.
+   * @param chainSiblings The siblings of the block in the chain's accumulator.
+   */
+  public MerkleProof(Transaction transact, int blockHeight, int size, int position,
+      Hash[] batchSiblings, Hash previousHash, long blockNonce, long blockTime, int blocks,
+      Hash[] chainSiblings) {
+    this.time = blockTime;
+    this.transaction = transact;
+    this.height = blockHeight;
+    this.batchSize = size;
+    this.index = position;
+    this.batchPath = batchSiblings.clone();
+    this.prevHash = previousHash;
+    this.nonce = blockNonce;
+    this.chainSize = blocks;
+    this.chainPath = chainSiblings.clone();
+  } // MerkleProof(Transaction, int, int, int, Hash[], Hash, long, long, int, Hash[])
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  /**
+   * Get the transaction the proof is about.
+   *
+   * @return the transaction.
+   */
+  public Transaction getTransaction() {
+    return this.transaction;
+  } // getTransaction()
+
+  /**
+   * Get the height of the block that holds the transaction.
+   *
+   * @return the height.
+   */
+  public int getHeight() {
+    return this.height;
+  } // getHeight()
+
+  /**
+   * Get the number of blocks in the chain the proof was made from.
+   *
+   * @return the number of blocks.
+   */
+  public int getChainSize() {
+    return this.chainSize;
+  } // getChainSize()
+
+  /**
+   * Recompute the hash of the block that holds the transaction.
+   *
+   * @return the hash, or null if the proof's batch siblings do not fit its batch.
+   */
+  public Hash blockHash() {
+    byte[] prefix;
+    if (this.batchSize == 0) {
+      if (this.index != 0 || this.batchPath.length != 0) {
+        return null;
+      } // if
+      prefix = NonceHasher.prefix(this.height, this.time, this.transaction, this.prevHash);
+    } else {
+      Hash root = MerkleTree.climb(MerkleTree.leaf(this.transaction), this.index,
+          this.batchSize, this.batchPath);
+      if (root == null) {
+        return null;
+      } // if
+      prefix =
+          NonceHasher.prefix(this.height, this.time, this.batchSize, root, this.prevHash);
+    } // if/else
+    return new NonceHasher(prefix).hash(this.nonce);
+  } // blockHash()
+
+  /**
+   * Check the proof against a chain root.
+   *
+   * @param chainRoot The root of a chain of getChainSize() blocks, which the caller trusts.
+   *
+   * @return true if the transaction is in that chain and false otherwise.
+   */
+  public boolean verify(Hash chainRoot) {
+    return verify(chainRoot, (hash) -> true);
+  } // verify(Hash)
+
+  /**
+   * Check the proof against a chain root, and check that the block that holds the transaction
+   * was mined to a difficulty.
+   *
+   * @param chainRoot The root of a chain of getChainSize() blocks, which the caller trusts.
+   * @param check The validator the block's hash must satisfy.
+   *
+   * @return true if the transaction is in that chain, in a block whose hash the validator
+   *         accepts, and false otherwise.
+   */
+  public boolean verify(Hash chainRoot, HashValidator check) {
+    Hash hash = blockHash();
+    if (hash == null || !check.isValid(hash)) {
+      return false;
+    } // if
+    Hash root = MerkleTree.climb(hash, this.height, this.chainSize, this.chainPath);
+    return root != null && root.equals(chainRoot);
+  } // verify(Hash, HashValidator)
+} // class MerkleProof
@@ -0,0 +1,172 @@
+package edu.grinnell.csc207.blockchains;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Merkle trees over batches of transactions. Each transaction is hashed to a leaf, pairs of
+ * hashes are hashed together level by level, and the single hash left at the top (the root)
+ * commits to every transaction in the batch and to their order.
+ *
+ * Leaves are SHA-256(0x00 || transaction) and inner nodes are SHA-256(0x01 || left || right),
+ * where the transaction is in the format BlockCodec stores it in. The different first bytes
+ * mean an inner node can never pass for a leaf. When a level has an odd number of hashes, the
+ * last one moves up unchanged rather than being paired with a copy of itself, so no two
+ * batches share a root.
+ *
+ * A leaf is proved to be in a tree by the hashes of its siblings on the way up to the root.
+ * Given the leaf, its index, and the number of leaves, those siblings are enough to recompute
+ * the root, with one hash per level.
+ *
+ * @author Alex Pollock
+ * @author Kevin Tang
+ */
+public class MerkleTree {
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * The byte hashed before a transaction.
+   */
+  static final byte LEAF = 0;
+
+  /**
+   * The byte hashed before a pair of hashes.
+   */
+  static final byte NODE = 1;
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Get a new SHA-256 digest.
+   *
+   * @return the digest.
+   */
+  static MessageDigest sha256() {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      // Every Java platform is required to support SHA-256.
+      throw new IllegalStateException(e);
+    } // try/catch
+  } // sha256()
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  /**
+   * Hash a transaction to a leaf.
+   *
+   * @param t The transaction.
+   *
+   * @return the hash of the leaf.
+   */
+  public static Hash leaf(Transaction t) {
+    ByteBuffer buf = ByteBuffer.allocate(1 + BlockCodec.encodedLength(t));
+    buf.put(LEAF);
+    BlockCodec.encode(t, buf);
+    return Hash.wrap(sha256().digest(buf.array()));
+  } // leaf(Transaction)
+
+  /**
+   * Hash two hashes to their parent.
+   *
+   * @param left The left child.
+   * @param right The right child.
+   *
+   * @return the hash of the parent.
+   */
+  public static Hash node(Hash left, Hash right) {
+    MessageDigest md = sha256();
+    md.update(NODE);
+    md.update(left.getBytes());
+    md.update(right.getBytes());
+    return Hash.wrap(md.digest());
+  } // node(Hash, Hash)
+
+  /**
+   * Compute the root of the tree over a batch of transactions.
+   *
+   * @param batch The transactions, in order.
+   *
+   * @return the root.
+   *
+   * @throws IllegalArgumentException if the batch is empty.
+   */
+  public static Hash root(List<Transaction> batch) {
+    if (batch.isEmpty()) {
+      throw new IllegalArgumentException("a batch needs at least one transaction");
+    } // if
+    Hash[] level = new Hash[batch.size()];
+    for (int i = 0; i < level.length; i++) {
+      level[i] = leaf(batch.get(i));
+    } // for
+    for (int width = level.length; width > 1; width = (width + 1) / 2) {
+      for (int i = 0; i < width; i += 2) {
+        level[i / 2] = (i + 1 < width) ? node(level[i], level[i + 1]) : level[i];
+      } // for
+    } // for
+    return level[0];
+  } // root(List<Transaction>)
+
+  /**
+   * Find the siblings of a leaf on the way up to the root.
+   *
+   * @param leaves The hashes of all the leaves, in order.
+   * @param index The index of the leaf.
+   *
+   * @return the siblings, from the bottom of the tree up.
+   */
+  public static Hash[] path(Hash[] leaves, int index) {
+    List<Hash> siblings = new ArrayList<Hash>();
+    Hash[] level = leaves.clone();
+    for (int width = level.length; width > 1; width = (width + 1) / 2) {
+      if (index % 2 == 1) {
+        siblings.add(level[index - 1]);
+      } else if (index + 1 < width) {
+        siblings.add(level[index + 1]);
+      } // if/else
+      for (int i = 0; i < width; i += 2) {
+        level[i / 2] = (i + 1 < width) ? node(level[i], level[i + 1]) : level[i];
+      } // for
+      index /= 2;
+    } // for
+    return siblings.toArray(new Hash[0]);
+  } // path(Hash[], int)
+
+  /**
+   * Recompute the root of a tree from one leaf and its siblings.
+   *
+   * @param leaf The hash of the leaf.
+   * @param index The index of the leaf.
+   * @param size The number of leaves in the tree.
+   * @param siblings The siblings of the leaf, from the bottom of the tree up.
+   *
+   * @return the root, or null if the index is out of range or the number of siblings is wrong
+   *         for a tree of that size.
+   */
+  public static Hash climb(Hash leaf, int index, int size, Hash[] siblings) {
+    if (index < 0 || index >= size) {
+      return null;
+    } // if
+    Hash hash = leaf;
+    int used = 0;
+    for (int width = size; width > 1; width = (width + 1) / 2) {
+      if (index % 2 == 1 || index + 1 < width) {
+        if (used == siblings.length) {
+          return null;
+        } // if
+        hash = (index % 2 == 1) ? node(siblings[used++], hash) : node(hash, siblings[used++]);
+      } // if
+      index /= 2;
+    } // for
+    return (used == siblings.length) ? hash : null;
+  } // climb(Hash, int, int, Hash[])
+} // class MerkleTree
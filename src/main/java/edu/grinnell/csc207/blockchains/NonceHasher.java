@@ -0,0 +1,399 @@
+package edu.grinnell.csc207.blockchains;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Hashes the same block contents with many different nonces. Everything but the nonce is fixed
+ * while mining, so we run SHA-256 over the complete 64-byte chunks of that fixed prefix once,
+ * keep the resulting midstate, and only compress the final chunk (or two) that contain the nonce
+ * for each attempt.
+ *
+ * An attempt allocates nothing: the digest is written into a buffer owned by the hasher, and
+ * validators see it through a Hash that shares that buffer. Hashers keep this scratch state, so
+ * each thread needs its own.
+ *
+ * Hashing a block just once (to build or check it) gains nothing from a midstate, so that goes
+ * through an Encoder instead: each thread keeps one, and writes the whole message into its
+ * buffers and compresses it from the start, allocating nothing that outlives the call.
+ *
+ * @author Alex Pollock
+ * @author Kevin Tang
+ */
+class NonceHasher {
+  // +-------+-------------------------------------------------------
+  // | Types |
+  // +-------+
+
+  /**
+   * Reusable buffers for hashing one message at a time, without a midstate.
+   */
+  static class Encoder {
+    /**
+     * The message, followed by the SHA-256 padding.
+     */
+    ByteBuffer message = ByteBuffer.allocate(4 * CHUNK_BYTES);
+
+    /**
+     * The working hash state.
+     */
+    int[] state = new int[INITIAL.length];
+
+    /**
+     * The message schedule for the chunk being compressed.
+     */
+    int[] schedule = new int[ROUNDS.length];
+
+    /**
+     * The digest of the most recent message.
+     */
+    byte[] digest = new byte[DIGEST_BYTES];
+
+    /**
+     * A hash that shares the digest buffer, so it always holds the most recent digest.
+     */
+    Hash result = Hash.view(this.digest);
+
+    /**
+     * Start a message whose bytes before the nonce take a given length.
+     *
+     * @param prefixLength The number of bytes before the nonce.
+     *
+     * @return the buffer to write those bytes to.
+     */
+    ByteBuffer start(int prefixLength) {
+      int padded = (prefixLength + 2 * Long.BYTES + 1 + CHUNK_BYTES - 1) / CHUNK_BYTES
+          * CHUNK_BYTES;
+      if (this.message.capacity() < padded) {
+        this.message = ByteBuffer.allocate(Math.max(padded, this.message.capacity() * 2));
+      } // if
+      this.message.clear().limit(padded);
+      return this.message;
+    } // start(int)
+
+    /**
+     * Finish the message with a nonce and hash it.
+     *
+     * @param nonce The nonce.
+     *
+     * @return a hash that shares the digest buffer; it changes on the next message.
+     */
+    Hash finish(long nonce) {
+      ByteBuffer buf = this.message;
+      long bits = (buf.position() + Long.BYTES) * 8L;
+      buf.putLong(nonce).put((byte) 0x80);
+      while (buf.position() < buf.limit() - Long.BYTES) {
+        buf.put((byte) 0);
+      } // while
+      buf.putLong(bits);
+      System.arraycopy(INITIAL, 0, this.state, 0, this.state.length);
+      for (int offset = 0; offset < buf.limit(); offset += CHUNK_BYTES) {
+        compress(this.state, buf.array(), offset, this.schedule);
+      } // for
+      putDigest(this.state, this.digest);
+      return this.result;
+    } // finish(long)
+  } // class Encoder
+
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * The number of bytes SHA-256 compresses at a time.
+   */
+  static final int CHUNK_BYTES = 64;
+
+  /**
+   * The number of bytes in a SHA-256 digest.
+   */
+  static final int DIGEST_BYTES = 32;
+
+  /**
+   * The SHA-256 initial hash values.
+   */
+  static final int[] INITIAL = {
+    0x6a09e667, 0xbb67ae85, 0x3c6ef372, 0xa54ff53a,
+    0x510e527f, 0x9b05688c, 0x1f83d9ab, 0x5be0cd19
+  };
+
+  /**
+   * The SHA-256 round constants.
+   */
+  static final int[] ROUNDS = {
+    0x428a2f98, 0x71374491, 0xb5c0fbcf, 0xe9b5dba5, 0x3956c25b, 0x59f111f1, 0x923f82a4, 0xab1c5ed5,
+    0xd807aa98, 0x12835b01, 0x243185be, 0x550c7dc3, 0x72be5d74, 0x80deb1fe, 0x9bdc06a7, 0xc19bf174,
+    0xe49b69c1, 0xefbe4786, 0x0fc19dc6, 0x240ca1cc, 0x2de92c6f, 0x4a7484aa, 0x5cb0a9dc, 0x76f988da,
+    0x983e5152, 0xa831c66d, 0xb00327c8, 0xbf597fc7, 0xc6e00bf3, 0xd5a79147, 0x06ca6351, 0x14292967,
+    0x27b70a85, 0x2e1b2138, 0x4d2c6dfc, 0x53380d13, 0x650a7354, 0x766a0abb, 0x81c2c92e, 0x92722c85,
+    0xa2bfe8a1, 0xa81a664b, 0xc24b8b70, 0xc76c51a3, 0xd192e819, 0xd6990624, 0xf40e3585, 0x106aa070,
+    0x19a4c116, 0x1e376c08, 0x2748774c, 0x34b0bcb5, 0x391c0cb3, 0x4ed8aa4a, 0x5b9cca4f, 0x682e6ff3,
+    0x748f82ee, 0x78a5636f, 0x84c87814, 0x8cc70208, 0x90befffa, 0xa4506ceb, 0xbef9a3f7, 0xc67178f2
+  };
+
+  /**
+   * Each thread's encoder for hashing blocks just once.
+   */
+  static final ThreadLocal<Encoder> ENCODER = ThreadLocal.withInitial(Encoder::new);
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The hash state after compressing every complete chunk of the fixed prefix.
+   */
+  int[] midstate;
+
+  /**
+   * The rest of the prefix, followed by room for the nonce and the SHA-256 padding.
+   */
+  byte[] tail;
+
+  /**
+   * Where the nonce goes in the tail.
+   */
+  int nonceOffset;
+
+  /**
+   * The working hash state for the current attempt.
+   */
+  int[] state = new int[INITIAL.length];
+
+  /**
+   * The message schedule for the chunk being compressed.
+   */
+  int[] schedule = new int[ROUNDS.length];
+
+  /**
+   * The digest of the most recent attempt.
+   */
+  byte[] digest = new byte[DIGEST_BYTES];
+
+  /**
+   * A hash that shares the digest buffer, so it always holds the most recent attempt.
+   */
+  Hash candidate = Hash.view(this.digest);
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Create a hasher for blocks with the given number, transaction, and previous hash.
+   *
+   * @param number The number of the block.
+   * @param transact The transaction for the block.
+   * @param previousHash The hash of the previous block.
+   */
+  NonceHasher(int number, Transaction transact, Hash previousHash) {
+    this(prefix(number, transact, previousHash));
+  } // NonceHasher(int, Transaction, Hash)
+
+  /**
+   * Create a hasher for blocks whose bytes before the nonce are the given prefix.
+   *
+   * @param prefix The bytes hashed before the nonce.
+   */
+  NonceHasher(byte[] prefix) {
+    int full = prefix.length - prefix.length % CHUNK_BYTES;
+    this.midstate = INITIAL.clone();
+    for (int offset = 0; offset < full; offset += CHUNK_BYTES) {
+      compress(this.midstate, prefix, offset, this.schedule);
+    } // for
+
+    // The tail holds the leftover prefix, the nonce, the 0x80 terminator, and the bit length.
+    int rest = prefix.length - full;
+    int used = rest + Long.BYTES + 1 + Long.BYTES;
+    this.tail = new byte[(used + CHUNK_BYTES - 1) / CHUNK_BYTES * CHUNK_BYTES];
+    System.arraycopy(prefix, full, this.tail, 0, rest);
+    this.nonceOffset = rest;
+    this.tail[rest + Long.BYTES] = (byte) 0x80;
+    putLong(this.tail, this.tail.length - Long.BYTES, (prefix.length + Long.BYTES) * 8L);
+  } // NonceHasher(byte[])
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Encode the parts of a block that come before the nonce, in the order they are hashed. The
+   * layout belongs to BlockCodec.
+   *
+   * @param number The number of the block.
+   * @param transact The transaction for the block.
+   * @param previousHash The hash of the previous block.
+   *
+   * @return the encoded bytes.
+   */
+  static byte[] prefix(int number, Transaction transact, Hash previousHash) {
+    return prefix(number, 0, transact, previousHash);
+  } // prefix(int, Transaction, Hash)
+
+  /**
+   * Encode the parts of a block with a time that come before the nonce.
+   *
+   * @param number The number of the block.
+   * @param time When the block was mined, or 0 if it has no time.
+   * @param transact The transaction for the block.
+   * @param previousHash The hash of the previous block.
+   *
+   * @return the encoded bytes.
+   */
+  static byte[] prefix(int number, long time, Transaction transact, Hash previousHash) {
+    ByteBuffer buf =
+        ByteBuffer.allocate(BlockCodec.preimageLength(number, time, transact, previousHash));
+    BlockCodec.putPreimage(buf, number, time, transact, previousHash);
+    return buf.array();
+  } // prefix(int, long, Transaction, Hash)
+
+  /**
+   * Encode the parts of a block with a batch of transactions that come before the nonce. The
+   * layout belongs to BlockCodec.
+   *
+   * @param number The number of the block.
+   * @param count The number of transactions in the batch.
+   * @param root The Merkle root of the batch.
+   * @param previousHash The hash of the previous block.
+   *
+   * @return the encoded bytes.
+   */
+  static byte[] prefix(int number, int count, Hash root, Hash previousHash) {
+    return prefix(number, 0, count, root, previousHash);
+  } // prefix(int, int, Hash, Hash)
+
+  /**
+   * Encode the parts of a block with a time and a batch of transactions that come before the
+   * nonce.
+   *
+   * @param number The number of the block.
+   * @param time When the block was mined, or 0 if it has no time.
+   * @param count The number of transactions in the batch.
+   * @param root The Merkle root of the batch.
+   * @param previousHash The hash of the previous block.
+   *
+   * @return the encoded bytes.
+   */
+  static byte[] prefix(int number, long time, int count, Hash root, Hash previousHash) {
+    ByteBuffer buf =
+        ByteBuffer.allocate(BlockCodec.batchPreimageLength(time, root, previousHash));
+    BlockCodec.putBatchPreimage(buf, number, time, count, root, previousHash);
+    return buf.array();
+  } // prefix(int, long, int, Hash, Hash)
+
+  /**
+   * Store a long in big-endian order.
+   *
+   * @param bytes Where to store the long.
+   * @param offset The index of the first byte to store.
+   * @param l The long to store.
+   */
+  static void putLong(byte[] bytes, int offset, long l) {
+    for (int i = Long.BYTES - 1; i >= 0; i--) {
+      bytes[offset + i] = (byte) l;
+      l >>>= Byte.SIZE;
+    } // for
+  } // putLong(byte[], int, long)
+
+  /**
+   * Write a hash state out as a digest, in big-endian order.
+   *
+   * @param state The hash state.
+   * @param digest Where to write the digest.
+   */
+  static void putDigest(int[] state, byte[] digest) {
+    for (int i = 0; i < state.length; i++) {
+      int word = state[i];
+      digest[i * 4] = (byte) (word >>> 24);
+      digest[i * 4 + 1] = (byte) (word >>> 16);
+      digest[i * 4 + 2] = (byte) (word >>> 8);
+      digest[i * 4 + 3] = (byte) word;
+    } // for
+  } // putDigest(int[], byte[])
+
+  /**
+   * Run the SHA-256 compression function over one 64-byte chunk.
+   *
+   * @param h The hash state, updated in place.
+   * @param chunk The bytes to compress.
+   * @param offset The index of the first byte of the chunk.
+   * @param w Scratch space for the 64-word message schedule.
+   */
+  static void compress(int[] h, byte[] chunk, int offset, int[] w) {
+    for (int t = 0; t < 16; t++) {
+      int i = offset + t * Integer.BYTES;
+      w[t] = (chunk[i] << 24) | ((chunk[i + 1] & 0xff) << 16) | ((chunk[i + 2] & 0xff) << 8)
+          | (chunk[i + 3] & 0xff);
+    } // for
+    for (int t = 16; t < ROUNDS.length; t++) {
+      int s0 = Integer.rotateRight(w[t - 15], 7) ^ Integer.rotateRight(w[t - 15], 18)
+          ^ (w[t - 15] >>> 3);
+      int s1 = Integer.rotateRight(w[t - 2], 17) ^ Integer.rotateRight(w[t - 2], 19)
+          ^ (w[t - 2] >>> 10);
+      w[t] = w[t - 16] + s0 + w[t - 7] + s1;
+    } // for
+
+    int a = h[0];
+    int b = h[1];
+    int c = h[2];
+    int d = h[3];
+    int e = h[4];
+    int f = h[5];
+    int g = h[6];
+    int k = h[7];
+    for (int t = 0; t < ROUNDS.length; t++) {
+      int s1 = Integer.rotateRight(e, 6) ^ Integer.rotateRight(e, 11) ^ Integer.rotateRight(e, 25);
+      int t1 = k + s1 + ((e & f) ^ (~e & g)) + ROUNDS[t] + w[t];
+      int s0 = Integer.rotateRight(a, 2) ^ Integer.rotateRight(a, 13) ^ Integer.rotateRight(a, 22);
+      int t2 = s0 + ((a & b) ^ (a & c) ^ (b & c));
+      k = g;
+      g = f;
+      f = e;
+      e = d + t1;
+      d = c;
+      c = b;
+      b = a;
+      a = t1 + t2;
+    } // for
+    h[0] += a;
+    h[1] += b;
+    h[2] += c;
+    h[3] += d;
+    h[4] += e;
+    h[5] += f;
+    h[6] += g;
+    h[7] += k;
+  } // compress(int[], byte[], int, int[])
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  /**
+   * Compute the hash of the block with the given nonce into the shared digest buffer.
+   *
+   * @param nonce The nonce to try.
+   *
+   * @return a hash that shares the digest buffer; it changes on the next attempt.
+   */
+  Hash candidate(long nonce) {
+    putLong(this.tail, this.nonceOffset, nonce);
+    System.arraycopy(this.midstate, 0, this.state, 0, this.state.length);
+    for (int offset = 0; offset < this.tail.length; offset += CHUNK_BYTES) {
+      compress(this.state, this.tail, offset, this.schedule);
+    } // for
+    putDigest(this.state, this.digest);
+    return this.candidate;
+  } // candidate(long)
+
+  /**
+   * Compute the hash of the block with the given nonce.
+   *
+   * @param nonce The nonce to try.
+   *
+   * @return the hash of the block.
+   */
+  Hash hash(long nonce) {
+    candidate(nonce);
+    return new Hash(this.digest);
+  } // hash(long)
+} // class NonceHasher
@@ -0,0 +1,245 @@
+package edu.grinnell.csc207.blockchains;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Miners that search for a nonce on several threads at once. The 64-bit nonce space is split
+ * into one contiguous range per worker and every worker stops as soon as any one of them finds
+ * a nonce whose hash the validator accepts.
+ *
+ * @author Alex Pollock
+ * @author Kevin Tang
+ */
+public class ParallelMiner {
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * How long (in seconds) an idle worker thread waits for more work before it exits.
+   */
+  static final long KEEP_ALIVE_SECONDS = 1;
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The number of workers that share each search.
+   */
+  int workers;
+
+  /**
+   * The threads that run the workers.
+   */
+  ThreadPoolExecutor pool;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Create a new miner with one worker per available processor.
+   */
+  public ParallelMiner() {
+    this(Runtime.getRuntime().availableProcessors());
+  } // ParallelMiner()
+
+  /**
+   * Create a new miner with a fixed number of workers.
+   *
+   * @param numWorkers The number of threads to search with.
+   *
+   * @throws IllegalArgumentException if numWorkers is less than 1.
+   */
+  public ParallelMiner(int numWorkers) {
+    if (numWorkers < 1) {
+      throw new IllegalArgumentException("a miner needs at least one worker");
+    } // if
+    this.workers = numWorkers;
+    this.pool = new ThreadPoolExecutor(numWorkers, numWorkers, KEEP_ALIVE_SECONDS,
+        TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), (r) -> {
+          Thread t = new Thread(r, "miner");
+          t.setDaemon(true);
+          return t;
+        });
+    this.pool.allowCoreThreadTimeOut(true);
+  } // ParallelMiner(int)
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Build the task that searches the nonces from start (inclusive) to end (exclusive), wrapping
+   * around at the end of the long range.
+   *
+   * @param prefix The bytes of the block that are hashed before the nonce.
+   * @param check The validator used to check the block.
+   * @param start The first nonce to try.
+   * @param end The nonce at which to give up.
+   * @param found Set once any worker has found a nonce.
+   *
+   * @return a task that produces a valid nonce, or null if it was stopped or ran out of nonces.
+   */
+  static Callable<Long> worker(byte[] prefix, HashValidator check, long start, long end,
+      AtomicBoolean found) {
+    return () -> {
+      NonceHasher hasher = new NonceHasher(prefix);
+      long nonce = start;
+      do {
+        if (check.isValid(hasher.candidate(nonce))) {
+          found.set(true);
+          return nonce;
+        } // if
+        nonce++;
+      } while (nonce != end && !found.get());
+      return null;
+    };
+  } // worker(byte[], HashValidator, long, long, AtomicBoolean)
+
+  /**
+   * Search for a nonce on every worker.
+   *
+   * @param prefix The bytes of the block that are hashed before the nonce.
+   * @param check The validator used to check the block.
+   *
+   * @return the first valid nonce that any worker finds.
+   *
+   * @throws IllegalStateException if the search is interrupted or no nonce is valid.
+   */
+  long search(byte[] prefix, HashValidator check) {
+    AtomicBoolean found = new AtomicBoolean(false);
+    List<Future<Long>> results = new ArrayList<Future<Long>>(this.workers);
+    long stride = Long.divideUnsigned(-1L, this.workers);
+    for (int i = 0; i < this.workers; i++) {
+      long start = i * stride;
+      long end = (i == this.workers - 1) ? 0 : start + stride;
+      results.add(this.pool.submit(worker(prefix, check, start, end, found)));
+    } // for
+
+    Long nonce = null;
+    try {
+      for (Future<Long> result : results) {
+        Long candidate = result.get();
+        if (nonce == null) {
+          nonce = candidate;
+        } // if
+      } // for
+    } catch (InterruptedException e) {
+      found.set(true);
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("mining was interrupted", e);
+    } catch (ExecutionException e) {
+      found.set(true);
+      throw new IllegalStateException("mining failed", e.getCause());
+    } // try/catch
+    if (nonce == null) {
+      throw new IllegalStateException("no valid nonce");
+    } // if
+    return nonce;
+  } // search(byte[], HashValidator)
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  /**
+   * Get the number of workers that share each search.
+   *
+   * @return the number of workers.
+   */
+  public int getWorkers() {
+    return this.workers;
+  } // getWorkers()
+
+  /**
+   * Mine a new block from the specified block number, transaction, and previous hash, choosing a
+   * nonce that meets the requirements of the validator.
+   *
+   * @param number The number of the block.
+   * @param transact The transaction for the block.
+   * @param previousHash The hash of the previous block.
+   * @param check The validator used to check the block.
+   *
+   * @return the first valid block that any worker finds.
+   *
+   * @throws IllegalStateException if the search is interrupted or no nonce is valid.
+   */
+  public Block mine(int number, Transaction transact, Hash previousHash, HashValidator check) {
+    return mine(number, 0, transact, previousHash, check);
+  } // mine(int, Transaction, Hash, HashValidator)
+
+  /**
+   * Mine a new block with a time from the specified block number, transaction, and previous
+   * hash, choosing a nonce that meets the requirements of the validator.
+   *
+   * @param number The number of the block.
+   * @param time When the block is mined, in milliseconds since the epoch (or 0, for none).
+   * @param transact The transaction for the block.
+   * @param previousHash The hash of the previous block.
+   * @param check The validator used to check the block.
+   *
+   * @return the first valid block that any worker finds.
+   *
+   * @throws IllegalStateException if the search is interrupted or no nonce is valid.
+   */
+  public Block mine(int number, long time, Transaction transact, Hash previousHash,
+      HashValidator check) {
+    long nonce = search(NonceHasher.prefix(number, time, transact, previousHash), check);
+    return new Block(number, time, transact, previousHash, nonce);
+  } // mine(int, long, Transaction, Hash, HashValidator)
+
+  /**
+   * Mine a new block with a batch of transactions from the specified block number and previous
+   * hash, choosing a nonce that meets the requirements of the validator. The batch is hashed
+   * once, to its Merkle root, before the search starts.
+   *
+   * @param number The number of the block.
+   * @param transactions The transactions for the block, in order.
+   * @param previousHash The hash of the previous block.
+   * @param check The validator used to check the block.
+   *
+   * @return the first valid block that any worker finds.
+   *
+   * @throws IllegalArgumentException if there are no transactions.
+   * @throws IllegalStateException if the search is interrupted or no nonce is valid.
+   */
+  public Block mine(int number, List<Transaction> transactions, Hash previousHash,
+      HashValidator check) {
+    return mine(number, 0, transactions, previousHash, check);
+  } // mine(int, List<Transaction>, Hash, HashValidator)
+
+  /**
+   * Mine a new block with a time and a batch of transactions from the specified block number
+   * and previous hash, choosing a nonce that meets the requirements of the validator.
+   *
+   * @param number The number of the block.
+   * @param time When the block is mined, in milliseconds since the epoch (or 0, for none).
+   * @param transactions The transactions for the block, in order.
+   * @param previousHash The hash of the previous block.
+   * @param check The validator used to check the block.
+   *
+   * @return the first valid block that any worker finds.
+   *
+   * @throws IllegalArgumentException if there are no transactions.
+   * @throws IllegalStateException if the search is interrupted or no nonce is valid.
+   */
+  public Block mine(int number, long time, List<Transaction> transactions, Hash previousHash,
+      HashValidator check) {
+    Transaction[] batch = transactions.toArray(new Transaction[0]);
+    Hash root = MerkleTree.root(transactions);
+    byte[] prefix = NonceHasher.prefix(number, time, batch.length, root, previousHash);
+    long nonce = search(prefix, check);
+    return new Block(number, time, batch, root, previousHash, nonce,
+        new NonceHasher(prefix).hash(nonce));
+  } // mine(int, long, List<Transaction>, Hash, HashValidator)
+} // class ParallelMiner
@@ -3,6 +3,8 @@ package edu.grinnell.csc207.main;
 import edu.grinnell.csc207.blockchains.Block;
 import edu.grinnell.csc207.blockchains.BlockChain;
 import edu.grinnell.csc207.blockchains.HashValidator;
+import edu.grinnell.csc207.blockchains.LeadingZeroValidator;
+import edu.grinnell.csc207.blockchains.Mempool;
 import edu.grinnell.csc207.blockchains.Transaction;
 
 import edu.grinnell.csc207.util.IOUtils;
@@ -10,7 +12,9 @@ import edu.grinnell.csc207.util.IOUtils;
 import java.io.PrintWriter;
 import java.io.BufferedReader;
 import java.io.InputStreamReader;
+import java.nio.file.Paths;
 import java.util.Iterator;
+import java.util.List;
 
 /**
  * A simple UI for our BlockChain class.
@@ -29,6 +33,16 @@ public class BlockChainUI {
    */
   static final int VALIDATOR_BYTES = 0;
 
+  /**
+   * The number of blocks the history command prints per page.
+   */
+  static final int HISTORY_PAGE = 10;
+
+  /**
+   * The most pending transactions the pack command puts in one block.
+   */
+  static final int BATCH_SIZE = 100;
+
   // +---------+-----------------------------------------------------
   // | Helpers |
   // +---------+
@@ -43,10 +57,14 @@ public class BlockChainUI {
         Valid commands:
           mine: discovers the nonce for a given transaction
           append: appends a new block onto the end of the chain
+          submit: adds a transaction to the pending transactions
+          pack: mines and appends a block of pending transactions
           remove: removes the last block from the end of the chain
           check: checks that the block chain is valid
+          snapshot: saves the balances so the chain reopens quickly
           users: prints a list of users
           balance: finds a user's balance
+          history: prints a user's transactions, newest first
           transactions: prints out the chain of transactions
           blocks: prints out the chain of blocks (for debugging only)
           help: prints this list of commands
@@ -60,17 +78,17 @@ public class BlockChainUI {
   /**
    * Run the UI.
    *
-   * @param args Command-line arguments (currently ignored).
+   * @param args Command-line arguments: optionally, a directory in which to keep the chain.
    */
   public static void main(String[] args) throws Exception {
     PrintWriter pen = new PrintWriter(System.out, true);
     BufferedReader eyes = new BufferedReader(new InputStreamReader(System.in));
 
     // Set up our blockchain.
-    HashValidator validator = (hash) -> (hash.length() >= 3) && (hash.get(0) == 0)
-        && (hash.get(1) == 0) && (hash.get(2) == 0);
-    BlockChain chain = new BlockChain(validator);
-
+    HashValidator validator = new LeadingZeroValidator(3 * Byte.SIZE);
+    BlockChain chain = (args.length > 0) ? new BlockChain(validator, Paths.get(args[0]), true)
+        : new BlockChain(validator);
+    Mempool pending = new Mempool(chain);
 
     instructions(pen);
 
@@ -125,6 +143,23 @@ public class BlockChainUI {
           instructions(pen);
           break;
 
+        case "history":
+          String member = IOUtils.readLine(pen, eyes, "Please Enter a user: ");
+          int page = IOUtils.readInt(pen, eyes, "Page (0 for the newest): ");
+          if (page < 0) {
+            pen.printf("Pages start at 0.\n");
+            break;
+          } // if
+          pen.printf("%s appears in %d blocks\n", member, chain.historySize(member));
+          for (Block blk : chain.history(member, page, HISTORY_PAGE)) {
+            for (Transaction t : blk.getTransactions()) {
+              if (member.equals(t.getSource()) || member.equals(t.getTarget())) {
+                pen.printf("%d: %s\n", blk.getNum(), t.toString());
+              } // if
+            } // for
+          } // for
+          break;
+
         case "mine":
           source = IOUtils.readLine(pen, eyes, "Source (return for deposit): ");
           target = IOUtils.readLine(pen, eyes, "Target: ");
@@ -133,6 +168,23 @@ public class BlockChainUI {
           pen.println("Nonce: " + b.getNonce());
           break;
 
+        case "pack":
+          List<Transaction> batch = pending.take(BATCH_SIZE);
+          if (batch.isEmpty()) {
+            pen.printf("There are no pending transactions.\n");
+            break;
+          } // if
+          try {
+            chain.append(chain.mine(batch));
+            pending.confirm(batch);
+            pen.printf("Appended block %d with %d transactions.\n", chain.getSize() - 1,
+                batch.size());
+          } catch (Exception e) {
+            pending.putBack(batch);
+            pen.printf("Could not append the pending transactions: %s\n", e.getMessage());
+          } // try/catch
+          break;
+
         case "quit":
           done = true;
           break;
@@ -145,11 +197,34 @@ public class BlockChainUI {
           } // if/else
           break;
 
+        case "snapshot":
+          try {
+            chain.snapshot();
+            pen.printf("Saved the balances as of block %d.\n", chain.getSize() - 1);
+          } catch (IllegalStateException e) {
+            pen.printf("Could not save the balances: the chain is not kept in a directory.\n");
+          } // try/catch
+          break;
+
+        case "submit":
+          source = IOUtils.readLine(pen, eyes, "Source (return for deposit): ");
+          target = IOUtils.readLine(pen, eyes, "Target: ");
+          amount = IOUtils.readInt(pen, eyes, "Amount: ");
+          int priority = IOUtils.readInt(pen, eyes, "Priority (0 for none): ");
+          if (pending.submit(new Transaction(source, target, amount), priority)) {
+            pen.printf("%d transactions are pending.\n", pending.size());
+          } else {
+            pen.printf("Rejected: the transaction is invalid, already pending, or overdraws.\n");
+          } // if/else
+          break;
+
         case "transactions":
           if (blocks.hasNext()) {
             blocks.next();
             while (blocks.hasNext()) {
-              pen.printf(blocks.next().getTransaction().toString());
+              for (Transaction t : blocks.next().getTransactions()) {
+                pen.printf(t.toString());
+              } // for
             } // while
           } else {
             pen.printf("There are currently no transactions.\n");
@@ -168,6 +243,7 @@ public class BlockChainUI {
       } // switch
     } // while
 
+    chain.close();
     pen.printf("\nGoodbye\n");
     eyes.close();
     pen.close();
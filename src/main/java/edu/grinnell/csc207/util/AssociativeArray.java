@@ -6,6 +6,10 @@ import static java.lang.reflect.Array.newInstance;
  * A basic implementation of Associative Arrays with keys of type K and values of type V.
  * Associative Arrays store key/value pairs and permit you to look up values by key.
  *
+ * The pairs live in a dense array, in the order they were added, so getElement(i) still works
+ * by position. An open-addressing table with linear probing maps each key to its position in
+ * that array, so set, get, hasKey, and remove take amortized constant time.
+ *
  * @param <K> the key type
  * @param <V> the value type
  *
@@ -36,6 +40,12 @@ public class AssociativeArray<K, V> {
    */
   KVPair<K, V>[] pairs;
 
+  /**
+   * The hash table. Each slot holds one more than the index in `pairs` of the key that hashed
+   * there, or 0 if the slot is empty. The length is a power of two, at least twice the size.
+   */
+  int[] slots;
+
   // +--------------+------------------------------------------------
   // | Constructors |
   // +--------------+
@@ -47,6 +57,7 @@ public class AssociativeArray<K, V> {
   public AssociativeArray() {
     // Creating new arrays is sometimes a PITN.
     this.pairs = (KVPair<K, V>[]) newInstance((new KVPair<K, V>()).getClass(), DEFAULT_CAPACITY);
+    this.slots = new int[DEFAULT_CAPACITY * 2];
     this.size = 0;
   } // AssociativeArray()
 
@@ -103,14 +114,18 @@ public class AssociativeArray<K, V> {
     if (key == null) {
       throw new NullKeyException();
     } // if statement
+    int slot = this.probe(key);
+    if (this.slots[slot] != 0) {
+      this.pairs[this.slots[slot] - 1].val = value;
+      return;
+    } // if statement
     if (this.size == this.pairs.length) {
       this.expand();
     } // if statement
-    if (!this.hasKey(key)) {
-      this.pairs[this.size] = new KVPair<>(key, value);
-      size++;
-    } else {
-      this.pairs[this.find(key)].val = value;
+    this.pairs[this.size] = new KVPair<>(key, value);
+    this.slots[slot] = ++this.size;
+    if (this.size * 2 > this.slots.length) {
+      this.rehash();
     } // if statement
   } // set(K,V)
 
@@ -132,12 +147,7 @@ public class AssociativeArray<K, V> {
    * @return whether key exist
    */
   public boolean hasKey(K key) {
-    for (int i = 0; i < this.size; i++) {
-      if (this.pairs[i].key.equals(key)) {
-        return true;
-      } // if statement
-    } // for loop
-    return false;
+    return (key != null) && (this.slots[this.probe(key)] != 0);
   } // hasKey(K)
 
   /**
@@ -147,19 +157,22 @@ public class AssociativeArray<K, V> {
    * @param key A key
    */
   public void remove(K key) {
-    if (this.hasKey(key)) {
-      try {
-        int index = this.find(key);
-        this.pairs[index].key = null;
-        this.pairs[index].val = null;
-        --this.size;
-        if (index != this.size) {
-          this.pairs[index].key = this.pairs[this.size].key;
-          this.pairs[index].val = this.pairs[this.size].val;
-        } // if statement
-      } catch (KeyNotFoundException e) {
-      } // try catch
+    if (key == null) {
+      return;
+    } // if statement
+    int slot = this.probe(key);
+    if (this.slots[slot] == 0) {
+      return;
+    } // if statement
+    int index = this.slots[slot] - 1;
+    this.clearSlot(slot);
+    // Keep the pairs dense by moving the last pair into the gap.
+    --this.size;
+    if (index != this.size) {
+      this.pairs[index] = this.pairs[this.size];
+      this.slots[this.probe(this.pairs[index].key)] = index + 1;
     } // if statement
+    this.pairs[this.size] = null;
   } // remove(K)
 
   /**
@@ -183,7 +196,53 @@ public class AssociativeArray<K, V> {
   } // expand()
 
   /**
-   * Find the index of the first entry in `pairs` that contains key. If no such entry is found,
+   * Double the size of the hash table and put every key back in it.
+   */
+  void rehash() {
+    this.slots = new int[this.slots.length * 2];
+    for (int i = 0; i < this.size; i++) {
+      this.slots[this.probe(this.pairs[i].key)] = i + 1;
+    } // for loop
+  } // rehash()
+
+  /**
+   * Find the slot where a key hashes first.
+   *
+   * @param key The key to hash.
+   * @return the index of the slot.
+   */
+  int home(K key) {
+    return OpenAddressing.home(key.hashCode(), this.slots.length);
+  } // home(K)
+
+  /**
+   * Find the slot that holds a key or, if the key is not present, the empty slot where it
+   * belongs.
+   *
+   * @param key The key to look for (not null).
+   * @return the index of the slot.
+   */
+  int probe(K key) {
+    int slot = this.home(key);
+    while (this.slots[slot] != 0 && !this.pairs[this.slots[slot] - 1].key.equals(key)) {
+      slot = OpenAddressing.next(slot, this.slots.length);
+    } // while loop
+    return slot;
+  } // probe(K)
+
+  /**
+   * Empty a slot, shifting later keys in the same run back so that every key can still be
+   * reached by probing from its home slot.
+   *
+   * @param slot The slot to empty.
+   */
+  void clearSlot(int slot) {
+    OpenAddressing.clear(this.slots, slot,
+        (full) -> this.pairs[this.slots[full] - 1].key.hashCode());
+  } // clearSlot(int)
+
+  /**
+   * Find the index of the entry in `pairs` that contains key. If no such entry is found,
    * throws an exception.
    *
    * @param key The key of the entry.
@@ -191,11 +250,12 @@ public class AssociativeArray<K, V> {
    * @throws KeyNotFoundException If the key does not appear in the associative array.
    */
   int find(K key) throws KeyNotFoundException {
-    for (int i = 0; i < this.size; i++) {
-      if (this.pairs[i].key.equals(key)) {
-        return i;
+    if (key != null) {
+      int slot = this.probe(key);
+      if (this.slots[slot] != 0) {
+        return this.slots[slot] - 1;
       } // if statement
-    } // for loop
+    } // if statement
     throw new KeyNotFoundException();
   } // find(K)
 
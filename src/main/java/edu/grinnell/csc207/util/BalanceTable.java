@@ -0,0 +1,248 @@
+package edu.grinnell.csc207.util;
+
+import java.util.Arrays;
+
+/**
+ * A table of balances, mapping account names to long amounts. It works like an
+ * AssociativeArray&lt;String, Long&gt;, but keeps the amounts in a primitive array and updates them
+ * in place, so adding to a balance never boxes a value or allocates a pair.
+ *
+ * Accounts stay in the order they were first used, so they can be visited by position. Accounts
+ * are never removed; an account whose transactions are all undone simply has a balance of 0.
+ *
+ * @author Alex Pollock
+ * @author Kevin Tang
+ */
+public class BalanceTable {
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * The default capacity of the initial arrays.
+   */
+  static final int DEFAULT_CAPACITY = 16;
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The number of accounts.
+   */
+  int size;
+
+  /**
+   * The account names, in the order they were added.
+   */
+  String[] keys;
+
+  /**
+   * The balances, parallel to keys.
+   */
+  long[] vals;
+
+  /**
+   * The hash table. Each slot holds one more than the index of the key that hashed there, or 0
+   * if the slot is empty. The length is a power of two, at least twice the size.
+   */
+  int[] slots;
+
+  /**
+   * The number of accounts whose balance is negative.
+   */
+  int negatives;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Create a new, empty table.
+   */
+  public BalanceTable() {
+    this.keys = new String[DEFAULT_CAPACITY];
+    this.vals = new long[DEFAULT_CAPACITY];
+    this.slots = new int[DEFAULT_CAPACITY * 2];
+    this.size = 0;
+  } // BalanceTable()
+
+  // +------------------+--------------------------------------------
+  // | Standard Methods |
+  // +------------------+
+
+  /**
+   * Create a copy of this table.
+   *
+   * @return a new copy of the table
+   */
+  public BalanceTable clone() {
+    BalanceTable clone = new BalanceTable();
+    clone.size = this.size;
+    clone.keys = this.keys.clone();
+    clone.vals = this.vals.clone();
+    clone.slots = this.slots.clone();
+    clone.negatives = this.negatives;
+    return clone;
+  } // clone()
+
+  /**
+   * Convert the table to a string.
+   *
+   * @return a string of the form "{Key0:Value0, Key1:Value1, ... KeyN:ValueN}"
+   */
+  public String toString() {
+    StringBuilder str = new StringBuilder("{");
+    for (int i = 0; i < this.size; i++) {
+      if (i > 0) {
+        str.append(", ");
+      } // if
+      str.append(this.keys[i]).append(':').append(this.vals[i]);
+    } // for
+    return str.append('}').toString();
+  } // toString()
+
+  // +----------------+----------------------------------------------
+  // | Public Methods |
+  // +----------------+
+
+  /**
+   * Get the balance of an account.
+   *
+   * @param key The account.
+   * @return the balance, or 0 if the account has never been used.
+   */
+  public long get(String key) {
+    if (key == null) {
+      return 0;
+    } // if
+    int slot = this.probe(key);
+    return (this.slots[slot] == 0) ? 0 : this.vals[this.slots[slot] - 1];
+  } // get(String)
+
+  /**
+   * Determine if an account has been used.
+   *
+   * @param key The account.
+   * @return whether the account is in the table.
+   */
+  public boolean hasKey(String key) {
+    return (key != null) && (this.slots[this.probe(key)] != 0);
+  } // hasKey(String)
+
+  /**
+   * Add an amount to the balance of an account, adding the account if it is new.
+   *
+   * @param key The account.
+   * @param amount The amount to add (negative to subtract).
+   * @return the new balance.
+   * @throws NullKeyException If the client provides a null key.
+   */
+  public long add(String key, long amount) throws NullKeyException {
+    if (key == null) {
+      throw new NullKeyException();
+    } // if
+    int slot = this.probe(key);
+    int index;
+    if (this.slots[slot] == 0) {
+      if (this.size == this.keys.length) {
+        this.keys = Arrays.copyOf(this.keys, this.size * 2);
+        this.vals = Arrays.copyOf(this.vals, this.size * 2);
+      } // if
+      this.keys[this.size] = key;
+      this.slots[slot] = ++this.size;
+      if (this.size * 2 > this.slots.length) {
+        this.rehash();
+      } // if
+      index = this.size - 1;
+    } else {
+      index = this.slots[slot] - 1;
+    } // if/else
+    long before = this.vals[index];
+    long after = before + amount;
+    this.vals[index] = after;
+    if ((before < 0) != (after < 0)) {
+      this.negatives += (after < 0) ? 1 : -1;
+    } // if
+    return after;
+  } // add(String, long)
+
+  /**
+   * Subtract an amount from the balance of an account, adding the account if it is new.
+   *
+   * @param key The account.
+   * @param amount The amount to subtract.
+   * @return the new balance.
+   * @throws NullKeyException If the client provides a null key.
+   */
+  public long subtract(String key, long amount) throws NullKeyException {
+    return this.add(key, -amount);
+  } // subtract(String, long)
+
+  /**
+   * Determine how many accounts are in the table.
+   *
+   * @return the number of accounts.
+   */
+  public int size() {
+    return this.size;
+  } // size()
+
+  /**
+   * Determine how many accounts have a negative balance.
+   *
+   * @return the number of overdrawn accounts.
+   */
+  public int negatives() {
+    return this.negatives;
+  } // negatives()
+
+  /**
+   * Get the account at a position.
+   *
+   * @param index The position, between 0 (inclusive) and size() (exclusive).
+   * @return the account.
+   */
+  public String keyAt(int index) {
+    return this.keys[index];
+  } // keyAt(int)
+
+  /**
+   * Get the balance at a position.
+   *
+   * @param index The position, between 0 (inclusive) and size() (exclusive).
+   * @return the balance.
+   */
+  public long valueAt(int index) {
+    return this.vals[index];
+  } // valueAt(int)
+
+  // +-----------------+---------------------------------------------
+  // | Private Methods |
+  // +-----------------+
+
+  /**
+   * Double the size of the hash table and put every key back in it.
+   */
+  void rehash() {
+    this.slots = new int[this.slots.length * 2];
+    for (int i = 0; i < this.size; i++) {
+      this.slots[this.probe(this.keys[i])] = i + 1;
+    } // for
+  } // rehash()
+
+  /**
+   * Find the slot that holds a key or, if the key is not present, the empty slot where it
+   * belongs.
+   *
+   * @param key The key to look for (not null).
+   * @return the index of the slot.
+   */
+  int probe(String key) {
+    int slot = OpenAddressing.home(key.hashCode(), this.slots.length);
+    while (this.slots[slot] != 0 && !this.keys[this.slots[slot] - 1].equals(key)) {
+      slot = OpenAddressing.next(slot, this.slots.length);
+    } // while
+    return slot;
+  } // probe(String)
+} // class BalanceTable
@@ -0,0 +1,122 @@
+package edu.grinnell.csc207.util;
+
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Slot arithmetic shared by our open-addressing tables. Each table keeps an array of slots whose
+ * length is a power of two, in which 0 marks an empty slot and anything else stands for an
+ * entry. An entry goes in the first free slot at or after its home slot, wrapping around at the
+ * end (linear probing), and removing an entry shifts later entries in the same run back, so no
+ * tombstones are needed.
+ *
+ * @author Alex Pollock
+ * @author Kevin Tang
+ */
+public class OpenAddressing {
+  // +-------+-------------------------------------------------------
+  // | Types |
+  // +-------+
+
+  /**
+   * Something to do when an entry moves from one slot to another, for tables that keep more
+   * than the slots array per slot.
+   */
+  public interface Move {
+    /**
+     * Note that the entry in one slot has moved to another.
+     *
+     * @param from The slot it was in.
+     * @param to The slot it is in now.
+     */
+    void move(int from, int to);
+  } // interface Move
+
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * Multiplier used to spread hash codes across the table (the golden ratio, scaled to 32 bits).
+   */
+  static final int SPREAD = 0x9E3779B9;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * There are no open-addressing objects, only the methods.
+   */
+  private OpenAddressing() {
+  } // OpenAddressing()
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  /**
+   * Find the slot where a hash code belongs first.
+   *
+   * @param code The hash code.
+   * @param length The number of slots (a power of two).
+   * @return the index of the slot.
+   */
+  public static int home(int code, int length) {
+    int h = code * SPREAD;
+    return (h ^ (h >>> 16)) & (length - 1);
+  } // home(int, int)
+
+  /**
+   * Find the slot to probe after a slot.
+   *
+   * @param slot The slot.
+   * @param length The number of slots (a power of two).
+   * @return the index of the next slot.
+   */
+  public static int next(int slot, int length) {
+    return (slot + 1) & (length - 1);
+  } // next(int, int)
+
+  /**
+   * Empty a slot, shifting later entries in the same run back so that every entry can still be
+   * reached by probing from its home slot.
+   *
+   * @param slots The slots.
+   * @param slot The slot to empty.
+   * @param codeAt Finds the hash code of the entry in a full slot.
+   */
+  public static void clear(int[] slots, int slot, IntUnaryOperator codeAt) {
+    clear(slots, slot, codeAt, null);
+  } // clear(int[], int, IntUnaryOperator)
+
+  /**
+   * Empty a slot, shifting later entries in the same run back so that every entry can still be
+   * reached by probing from its home slot.
+   *
+   * @param slots The slots.
+   * @param slot The slot to empty.
+   * @param codeAt Finds the hash code of the entry in a full slot.
+   * @param moved Told of each entry that moves, after it moves in slots (or null).
+   */
+  public static void clear(int[] slots, int slot, IntUnaryOperator codeAt, Move moved) {
+    int gap = slot;
+    int next = slot;
+    while (true) {
+      slots[gap] = 0;
+      int home;
+      do {
+        next = next(next, slots.length);
+        if (slots[next] == 0) {
+          return;
+        } // if
+        home = home(codeAt.applyAsInt(next), slots.length);
+        // An entry may fill the gap unless its home lies cyclically in (gap, next].
+      } while ((gap <= next) ? (gap < home && home <= next) : (gap < home || home <= next));
+      slots[gap] = slots[next];
+      if (moved != null) {
+        moved.move(next, gap);
+      } // if
+      gap = next;
+    } // while
+  } // clear(int[], int, IntUnaryOperator, Move)
+} // class OpenAddressing
@@ -0,0 +1,119 @@
+package edu.grinnell.csc207.blockchains;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of adding many pre-mined blocks to a chain, one at a time and all at once. Run
+ * with
+ *
+ * <pre>
+ * mvn test-compile exec:exec -Dexec.executable=java -Dexec.classpathScope=test \
+ *     -Dexec.args="-cp %classpath org.openjdk.jmh.Main AppendBenchmark"
+ * </pre>
+ *
+ * @author Alex Pollock
+ * @author Kevin Tang
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class AppendBenchmark {
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * The number of blocks added.
+   */
+  static final int SIZE = 20000;
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The chain the blocks are added to.
+   */
+  BlockChain chain;
+
+  /**
+   * The blocks, which follow the chain's initial block.
+   */
+  List<Block> blocks;
+
+  // +-------+-------------------------------------------------------
+  // | Setup |
+  // +-------+
+
+  /**
+   * Make the chain and the blocks. Any hash is valid, so the blocks are quick to mine.
+   */
+  @Setup
+  public void setup() {
+    HashValidator check = (hash) -> true;
+    this.chain = new BlockChain(check, 1);
+    this.blocks = new ArrayList<Block>();
+    Hash prev = this.chain.getHash();
+    for (int i = 1; i <= SIZE; i++) {
+      Block blk = new Block(i, new Transaction((i % 2 == 0) ? "U" + (i % 100) : "",
+          "U" + (i % 97), 1), prev, check);
+      this.blocks.add(blk);
+      prev = blk.getHash();
+    } // for
+  } // setup()
+
+  /**
+   * Take the blocks back off the chain.
+   */
+  @Setup(Level.Invocation)
+  public void reset() {
+    while (this.chain.removeLast()) {
+      // Keep removing.
+    } // while
+  } // reset()
+
+  // +------------+--------------------------------------------------
+  // | Benchmarks |
+  // +------------+
+
+  /**
+   * Add the blocks one at a time.
+   *
+   * @return the chain.
+   */
+  @Benchmark
+  public BlockChain appendEach() {
+    for (Block blk : this.blocks) {
+      this.chain.append(blk);
+    } // for
+    return this.chain;
+  } // appendEach()
+
+  /**
+   * Add the blocks all at once.
+   *
+   * @return the chain.
+   */
+  @Benchmark
+  public BlockChain appendAll() {
+    this.chain.appendAll(this.blocks);
+    return this.chain;
+  } // appendAll()
+} // class AppendBenchmark
@@ -0,0 +1,157 @@
+package edu.grinnell.csc207.blockchains;
+
+import java.util.HashMap;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of Hash as a map key and as a string. Run with
+ *
+ * <pre>
+ * mvn test-compile exec:exec -Dexec.executable=java -Dexec.classpathScope=test \
+ *     -Dexec.args="-cp %classpath org.openjdk.jmh.Main HashBenchmark"
+ * </pre>
+ *
+ * @author Alex Pollock
+ * @author Kevin Tang
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class HashBenchmark {
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * The number of hashes in the map.
+   */
+  static final int SIZE = 10000;
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * SHA-256-sized hashes, the keys of the map.
+   */
+  Hash[] keys;
+
+  /**
+   * Separate hashes with the same bytes as the keys, so lookups have to compare bytes.
+   */
+  Hash[] copies;
+
+  /**
+   * Hashes that differ from the keys only in their last byte.
+   */
+  Hash[] near;
+
+  /**
+   * A map from each key to its index.
+   */
+  HashMap<Hash, Integer> map;
+
+  /**
+   * The index of the next hash to use.
+   */
+  int next;
+
+  // +-------+-------------------------------------------------------
+  // | Setup |
+  // +-------+
+
+  /**
+   * Make the hashes and fill the map.
+   */
+  @Setup
+  public void setup() {
+    Random random = new Random(207);
+    this.keys = new Hash[SIZE];
+    this.copies = new Hash[SIZE];
+    this.near = new Hash[SIZE];
+    this.map = new HashMap<Hash, Integer>();
+    for (int i = 0; i < SIZE; i++) {
+      byte[] bytes = new byte[32];
+      random.nextBytes(bytes);
+      this.keys[i] = new Hash(bytes);
+      this.copies[i] = new Hash(bytes);
+      bytes[31]++;
+      this.near[i] = new Hash(bytes);
+      this.map.put(this.keys[i], i);
+    } // for
+  } // setup()
+
+  // +------------+--------------------------------------------------
+  // | Benchmarks |
+  // +------------+
+
+  /**
+   * Get the hash code of a hash.
+   *
+   * @return the hash code.
+   */
+  @Benchmark
+  public int hashCodeOf() {
+    this.next = (this.next + 1) % SIZE;
+    return this.copies[this.next].hashCode();
+  } // hashCodeOf()
+
+  /**
+   * Compare two hashes with the same bytes.
+   *
+   * @return true.
+   */
+  @Benchmark
+  public boolean equalsSame() {
+    this.next = (this.next + 1) % SIZE;
+    return this.keys[this.next].equals(this.copies[this.next]);
+  } // equalsSame()
+
+  /**
+   * Compare two hashes that differ in their last byte.
+   *
+   * @return false.
+   */
+  @Benchmark
+  public boolean equalsNear() {
+    this.next = (this.next + 1) % SIZE;
+    return this.keys[this.next].equals(this.near[this.next]);
+  } // equalsNear()
+
+  /**
+   * Look up a hash in a map.
+   *
+   * @return the index of the hash.
+   */
+  @Benchmark
+  public Integer mapGet() {
+    this.next = (this.next + 1) % SIZE;
+    return this.map.get(this.copies[this.next]);
+  } // mapGet()
+
+  /**
+   * Render a hash as hex.
+   *
+   * @return the hex string.
+   */
+  @Benchmark
+  public String render() {
+    this.next = (this.next + 1) % SIZE;
+    return this.keys[this.next].toString();
+  } // render()
+} // class HashBenchmark
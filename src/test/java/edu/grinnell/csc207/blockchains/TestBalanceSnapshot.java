@@ -0,0 +1,46 @@
+package edu.grinnell.csc207.blockchains;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import edu.grinnell.csc207.util.BalanceTable;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Some simple tests of our BalanceSnapshot class.
+ *
+ * @author Alex Pollock
+ * @author Kevin Tang
+ */
+public class TestBalanceSnapshot {
+  /**
+   * A snapshot should read back as it was written, and a missing or
+   * damaged snapshot should read back as null.
+   */
+  @Test
+  public void roundTripTest(@TempDir Path dir) throws Exception {
+    assertNull(BalanceSnapshot.read(dir), "no snapshot yet");
+    BalanceTable table = new BalanceTable();
+    table.add("Ann", 70);
+    table.add("Björn", -5);
+    table.add("", 0);
+    new BalanceSnapshot(12, new Hash(new byte[] {1, 2, 3}), table).write(dir);
+    table.add("Cy", Long.MAX_VALUE);
+    new BalanceSnapshot(13, new Hash(new byte[] {4, 5}), table).write(dir);
+
+    BalanceSnapshot snap = BalanceSnapshot.read(dir);
+    assertEquals(13, snap.getHeight(), "height");
+    assertEquals(new Hash(new byte[] {4, 5}), snap.getTip(), "tip");
+    assertEquals(table.toString(), snap.getBalances().toString(), "balances");
+
+    Path file = dir.resolve(BalanceSnapshot.FILE);
+    byte[] data = Files.readAllBytes(file);
+    data[data.length / 2] ^= 0x10;
+    Files.write(file, data);
+    assertNull(BalanceSnapshot.read(dir), "damaged snapshot");
+  } // roundTripTest()
+} // class TestBalanceSnapshot
@@ -4,6 +4,13 @@ import java.nio.ByteBuffer;
 
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
@@ -243,6 +250,46 @@ public class TestBlock {
     assertEquals(ph, b.getPrevHash(), "correct previous hash in initial block");
   } // initialBlockTest()
 
+  /**
+   * Ensure that blocks built and verified on many threads at once still
+   * calculate correct hashes.
+   */
+  @Test
+  public void concurrentHashTest() throws Exception {
+    int threads = 8;
+    int perThread = 2000;
+    Transaction[] ts = new Transaction[threads];
+    byte[][][] expected = new byte[threads][perThread][];
+    for (int i = 0; i < threads; i++) {
+      ts[i] = new Transaction("Source" + i, "Target" + i, i * 1000);
+      for (int j = 0; j < perThread; j++) {
+        expected[i][j] = expectedHash(new Block(j, ts[i], new Hash(new byte[] {(byte) i}), j));
+      } // for
+    } // for
+
+    ExecutorService pool = Executors.newFixedThreadPool(threads);
+    CyclicBarrier start = new CyclicBarrier(threads);
+    List<Future<Integer>> mismatches = new ArrayList<Future<Integer>>();
+    for (int i = 0; i < threads; i++) {
+      int thread = i;
+      mismatches.add(pool.submit(() -> {
+        start.await();
+        int bad = 0;
+        for (int j = 0; j < perThread; j++) {
+          Block b = new Block(j, ts[thread], new Hash(new byte[] {(byte) thread}), j);
+          if (!Arrays.equals(expected[thread][j], b.getHash().getBytes())) {
+            bad++;
+          } // if
+        } // for
+        return bad;
+      }));
+    } // for
+    for (int i = 0; i < threads; i++) {
+      assertEquals(0, mismatches.get(i).get(), "incorrect hashes on thread " + i);
+    } // for
+    pool.shutdown();
+  } // concurrentHashTest()
+
   /**
    * Test that the toString method works.
    * Forthcoming.
@@ -259,4 +306,36 @@ public class TestBlock {
   public void toStringDepositTest() {
   } // toStringDepositTest()
 
+
+  /**
+   * A block with a batch should hash a header of the same size however many transactions it
+   * carries, committing to them through their Merkle root.
+   */
+  @Test
+  public void batchTest() {
+    Hash ph = new Hash(new byte[32]);
+    List<Transaction> batch = new ArrayList<Transaction>();
+    for (int i = 0; i < 100; i++) {
+      batch.add(new Transaction("", "User" + i, i));
+      Block b = new Block(7, batch, ph, 12345L);
+      Hash root = MerkleTree.root(batch);
+      assertEquals(root, b.getMerkleRoot(), "root of " + (i + 1));
+      assertEquals(batch, b.getTransactions(), "transactions of " + (i + 1));
+      assertEquals(batch.get(0), b.getTransaction(), "first transaction");
+      md.update(intToBytes(7));
+      md.update((byte) 0xFF);
+      md.update(intToBytes(i + 1));
+      md.update(root.getBytes());
+      md.update(ph.getBytes());
+      md.update(longToBytes(12345L));
+      assertArrayEquals(md.digest(), b.getHash().getBytes(), "hash of " + (i + 1));
+    } // for
+    Block mined = new Block(3, batch, ph, (h) -> h.get(0) == 0);
+    assertEquals(0, mined.getHash().get(0), "mined batch");
+    assertEquals(mined.getHash(), new Block(3, batch, ph, mined.getNonce()).getHash(),
+        "mined hash");
+    assertEquals(null, new Block(3, batch.get(0), ph, 1).getMerkleRoot(), "single transaction");
+    assertEquals(List.of(batch.get(0)), new Block(3, batch.get(0), ph, 1).getTransactions(),
+        "single transaction as a list");
+  } // batchTest()
 } // class TestBlock
@@ -1,18 +1,29 @@
 package edu.grinnell.csc207.blockchains;
 
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.ConcurrentModificationException;
 import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
 import edu.grinnell.csc207.util.*;
 
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
 
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
 
 /**
@@ -62,6 +73,32 @@ public class TestBlockChain {
       // Do nothing; we expect this.
     } // try/catch
   } // assertCheckFails(BlockChain, String)
+
+  /**
+   * Copy the files of a chain kept in a directory, so that another chain can start from the
+   * same blocks.
+   */
+  static void copyChain(Path from, Path to) throws IOException {
+    Files.createDirectories(to);
+    try (DirectoryStream<Path> files = Files.newDirectoryStream(from)) {
+      for (Path file : files) {
+        Files.copy(file, to.resolve(file.getFileName()));
+      } // for
+    } // try
+  } // copyChain(Path, Path)
+
+  /**
+   * Mine a chain whose difficulty changes: a window of blocks on target, a window of fast
+   * blocks, and another window on target at the harder difficulty that follows.
+   */
+  static void mineRetargets(BlockChain chain) throws Exception {
+    long[] now = {chain.getBlock(0).getTime()};
+    chain.clock = () -> now[0];
+    for (int i = 1; i <= 12; i++) {
+      now[0] += (i > 4 && i <= 8) ? 10 : 1000;
+      chain.append(chain.mine(new Transaction("", "A", i)));
+    } // for
+  } // mineRetargets(BlockChain)
   
   // +-------+-------------------------------------------------------
   // | Tests |
@@ -473,9 +510,824 @@ public class TestBlockChain {
     Iterator<Block> blocks = chain.blocks();
     blocks.next();
     blocks.next().transaction = new Transaction("", "F", 1000);
-    assertEquals(1010, chain.balance("F"), "F's balance in modified chain");
-    assertFalse(chain.isCorrect(), "modified chain is incorrect");
+    // Balances come from the index built as blocks were appended, so
+    // tampering shows up as a mismatch with a full replay.
+    assertEquals(110, chain.balance("F"), "F's indexed balance in modified chain");
+    assertFalse(chain.verifyBalances(), "index disagrees with modified chain");
+    // The chain has already verified these blocks, so only a full check
+    // notices that one was changed behind its back.
+    assertFalse(chain.verifyAll(), "modified chain is incorrect");
+    assertFalse(chain.isCorrect(), "modified chain is still incorrect");
     assertCheckFails(chain, "modified chain is incorrect");
   } // testModifiedChain()
 
+  /**
+   * Test that difficulty rises when blocks arrive too quickly and falls when
+   * they arrive too slowly, and that older blocks are still checked against
+   * the difficulty they were mined under.
+   */
+  @Test
+  public void testRetarget() throws Exception {
+    // The initial block is stamped with the real time, so we count from there.
+    BlockChain chain = new BlockChain(new DifficultyRetarget(2, 1000, 1, 10), 2);
+    long[] now = {chain.getBlock(0).getTime()};
+    chain.clock = () -> now[0];
+    assertEquals(2, ((LeadingZeroValidator) chain.getValidator()).getBits(),
+        "initial difficulty");
+
+    // Two blocks in far less than the target time.
+    now[0] += 10;
+    chain.append(chain.mine(new Transaction("", "A", 100)));
+    now[0] += 10;
+    chain.append(chain.mine(new Transaction("", "B", 100)));
+    assertEquals(4, ((LeadingZeroValidator) chain.getValidator()).getBits(),
+        "difficulty after a fast window");
+    Block hard = chain.mine(new Transaction("A", "B", 5));
+    assertTrue(new LeadingZeroValidator(4).isValid(hard.getHash()),
+        "mined at the new difficulty");
+
+    // Two blocks in far more than the target time.
+    now[0] += 100000;
+    chain.append(hard);
+    now[0] += 100000;
+    chain.append(chain.mine(new Transaction("B", "A", 5)));
+    assertEquals(2, ((LeadingZeroValidator) chain.getValidator()).getBits(),
+        "difficulty after a slow window");
+    assertTrue(chain.isCorrect(), "chain with several difficulties");
+
+    assertTrue(chain.removeLast(), "removing the block that triggered a retarget");
+    assertEquals(4, ((LeadingZeroValidator) chain.getValidator()).getBits(),
+        "difficulty restored by removal");
+    assertTrue(chain.removeLast(), "removing the first harder block");
+    assertEquals(4, ((LeadingZeroValidator) chain.getValidator()).getBits(),
+        "difficulty for the first harder block");
+    assertTrue(chain.removeLast(), "removing the block that first triggered a retarget");
+    assertEquals(2, ((LeadingZeroValidator) chain.getValidator()).getBits(),
+        "initial difficulty restored by removal");
+    assertTrue(chain.isCorrect(), "chain after removals");
+  } // testRetarget()
+
+  /**
+   * A block that only meets an easier, older difficulty cannot be appended.
+   */
+  @Test
+  public void testRetargetRejectsEasyBlock() throws Exception {
+    BlockChain chain = new BlockChain(new DifficultyRetarget(1, 1000, 0, 12), 0);
+    long[] now = {chain.getBlock(0).getTime()};
+    chain.clock = () -> now[0];
+    now[0] += 10;
+    chain.append(chain.mine(new Transaction("", "A", 100)));
+    assertEquals(2, ((LeadingZeroValidator) chain.getValidator()).getBits(),
+        "difficulty after a fast block");
+    Block easy;
+    do {
+      easy = new Block(chain.getSize(), now[0], new Transaction("", "B", 1), chain.getHash(),
+          new LeadingZeroValidator(0));
+    } while (chain.getValidator().isValid(easy.getHash()));
+    assertAppendFails(chain, easy, "block that does not meet the new difficulty");
+  } // testRetargetRejectsEasyBlock()
+
+  /**
+   * The difficulty of a chain should follow from the times in its blocks, so another chain
+   * with the same policy accepts its blocks whenever they arrive, and a block that only meets
+   * an easier difficulty recorded for it is still found out.
+   */
+  @Test
+  public void testRetargetFromBlockTimes(@TempDir Path dir) throws Exception {
+    DifficultyRetarget policy = new DifficultyRetarget(4, 1000, 0, 16);
+    BlockChain source = new BlockChain(policy, 0, dir.resolve("source"));
+    source.close();
+    copyChain(dir.resolve("source"), dir.resolve("copy"));
+    source = new BlockChain(policy, 0, dir.resolve("source"));
+    mineRetargets(source);
+    int bits = ((LeadingZeroValidator) source.getValidator()).getBits();
+    assertEquals(2, bits, "difficulty after a fast window");
+
+    BlockChain copy = new BlockChain(policy, 0, dir.resolve("copy"));
+    for (int i = 1; i < source.getSize(); i++) {
+      copy.append(source.getBlock(i));
+    } // for
+    assertEquals(source.getHash(), copy.getHash(), "hash after copying");
+    assertEquals(bits, ((LeadingZeroValidator) copy.getValidator()).getBits(),
+        "difficulty after copying");
+    assertTrue(copy.isCorrect(), "copied chain");
+    copy.close();
+
+    Block tip = source.getBlock(12);
+    Block easy;
+    long nonce = 0;
+    do {
+      easy = new Block(12, tip.getTime(), tip.getTransaction(), tip.getPrevHash(), nonce++);
+    } while (source.getValidator().isValid(easy.getHash()));
+    source.store.set(12, easy);
+    source.store.validators[0][12] = new LeadingZeroValidator(0);
+    assertFalse(source.isCorrect(), "block that only meets the recorded difficulty");
+    source.store.set(12, tip);
+    source.close();
+  } // testRetargetFromBlockTimes()
+
+  /**
+   * The balance index should agree with a full replay as blocks come and go.
+   */
+  @Test
+  public void testBalanceIndex() throws Exception {
+    BlockChain chain = new BlockChain((hash) -> true);
+    String[] users = {"A", "B", "C", "D"};
+    Random rand = new Random(207);
+    for (int i = 0; i < 200; i++) {
+      if (chain.getSize() > 1 && rand.nextInt(4) == 0) {
+        chain.removeLast();
+      } else {
+        String source = rand.nextBoolean() ? "" : users[rand.nextInt(users.length)];
+        chain.append(chain.mine(new Transaction(source, users[rand.nextInt(users.length)],
+            rand.nextInt(100))));
+      } // if/else
+      assertTrue(chain.verifyBalances(), "index matches replay after step " + i);
+    } // for
+    for (String user : users) {
+      int expected = 0;
+      Iterator<Block> blocks = chain.blocks();
+      while (blocks.hasNext()) {
+        Transaction t = blocks.next().getTransaction();
+        expected += (t.getTarget().equals(user) ? t.getAmount() : 0)
+            - (t.getSource().equals(user) ? t.getAmount() : 0);
+      } // while
+      assertEquals(expected, chain.balance(user), user + "'s balance");
+    } // for
+  } // testBalanceIndex()
+
+  /**
+   * Large deposits should not overflow a balance.
+   */
+  @Test
+  public void testLargeBalances() throws Exception {
+    BlockChain chain = new BlockChain((hash) -> true);
+    chain.append(chain.mine(new Transaction("", "A", Integer.MAX_VALUE)));
+    chain.append(chain.mine(new Transaction("", "A", Integer.MAX_VALUE)));
+    assertEquals(2L * Integer.MAX_VALUE, chain.balance("A"), "A's large balance");
+    assertTrue(chain.isCorrect(), "large balances are legal");
+  } // testLargeBalances()
+
+  /**
+   * Blocks can be found by height, and nodes still navigate the chain.
+   */
+  @Test
+  public void testGetBlock() throws Exception {
+    BlockChain chain = new BlockChain((hash) -> true);
+    Block block1 = chain.mine(new Transaction("", "A", 10));
+    chain.append(block1);
+    Block block2 = chain.mine(new Transaction("A", "B", 5));
+    chain.append(block2);
+    assertEquals(block1, chain.getBlock(1), "block at height 1");
+    assertEquals(block2, chain.getBlock(2), "block at height 2");
+    assertThrows(IndexOutOfBoundsException.class, () -> chain.getBlock(3));
+
+    BlockNode node = chain.getFirst();
+    assertEquals(0, node.getBlock().getNum(), "first node");
+    assertEquals(null, node.getPrev(), "nothing before the first node");
+    node = node.getNext().getNext();
+    assertEquals(block2, node.getBlock(), "third node");
+    assertEquals(block1, node.getPrev().getBlock(), "node before the third node");
+    assertEquals(null, node.getNext(), "nothing after the last node");
+  } // testGetBlock()
+
+  /**
+   * Long chains are verified in parallel, and tampering anywhere in them is
+   * still caught.
+   */
+  @Test
+  public void testParallelVerify() throws Exception {
+    BlockChain chain = new BlockChain((hash) -> true, 1);
+    chain.append(chain.mine(new Transaction("", "A", 1000000)));
+    for (int i = 0; i < BlockChain.PARALLEL_THRESHOLD * 3; i++) {
+      chain.append(chain.mine(new Transaction("A", "B" + (i % 10), 1)));
+    } // for
+    assertTrue(chain.isCorrect(), "long valid chain");
+    for (int height : new int[] {1, 1500, chain.getSize() - 1}) {
+      Block block = chain.getBlock(height);
+      ++block.nonce;
+      assertFalse(chain.verifyAll(), "long chain with block " + height + " modified");
+      --block.nonce;
+      assertTrue(chain.isCorrect(), "long chain with block " + height + " restored");
+    } // for
+  } // testParallelVerify()
+
+  /**
+   * Checks only verify blocks added since the last check, but still notice
+   * blocks that were removed, replaced, or changed at the tip.
+   */
+  @Test
+  public void testVerifiedWatermark() throws Exception {
+    BlockChain chain = new BlockChain((hash) -> true, 1);
+    for (int i = 0; i < 5; i++) {
+      chain.append(chain.mine(new Transaction("", "A", 10)));
+    } // for
+    assertTrue(chain.isCorrect(), "initial chain");
+    assertEquals(6, chain.verifiedHeight, "watermark after first check");
+
+    // Already-verified blocks are not checked again.
+    ++chain.getBlock(2).nonce;
+    chain.append(chain.mine(new Transaction("A", "B", 5)));
+    assertTrue(chain.isCorrect(), "only the new block is checked");
+    assertEquals(7, chain.verifiedHeight, "watermark after appending");
+    --chain.getBlock(2).nonce;
+
+    // Removing blocks lowers the watermark.
+    chain.removeLast();
+    chain.removeLast();
+    assertEquals(5, chain.verifiedHeight, "watermark after removing");
+    chain.append(chain.mine(new Transaction("A", "C", 5)));
+    assertTrue(chain.isCorrect(), "chain after removing and appending");
+
+    // Replacing a block through a node forces it and its successor to be checked.
+    BlockNode node = chain.getFirst().getNext().getNext();
+    Block old = node.getBlock();
+    node.setBlock(new Block(2, new Transaction("", "A", 99), old.getPrevHash(), old.getNonce()));
+    assertFalse(chain.isCorrect(), "chain with a replaced block");
+    node.setBlock(old);
+    assertTrue(chain.isCorrect(), "chain with the block restored");
+
+    // A changed hash at the watermark sends us back to the start.
+    Block tip = chain.getBlock(chain.getSize() - 1);
+    Hash hash = tip.currHash;
+    tip.currHash = new Hash(new byte[] {1});
+    assertFalse(chain.isCorrect(), "chain with a changed tip hash");
+    tip.currHash = hash;
+    assertTrue(chain.isCorrect(), "chain with the tip hash restored");
+  } // testVerifiedWatermark()
+
+  /**
+   * A chain kept in a directory should come back the same when it is
+   * reopened, including removals and changes in difficulty.
+   */
+  @Test
+  public void testPersistence(@TempDir Path dir) throws Exception {
+    DifficultyRetarget policy = new DifficultyRetarget(4, 4000, 0, 12);
+    BlockChain chain = new BlockChain(policy, 2, dir);
+    long[] now = {chain.getBlock(0).getTime()};
+    chain.clock = () -> now[0];
+    chain.append(chain.mine(new Transaction("", "A", 100)));
+    for (int i = 0; i < 10; i++) {
+      now[0] += 10;
+      chain.append(chain.mine(new Transaction("A", "B", 3)));
+    } // for
+    chain.removeLast();
+    chain.removeLast();
+    chain.append(chain.mine(new Transaction("B", "C", 1)));
+    int bits = ((LeadingZeroValidator) chain.getValidator()).getBits();
+    chain.close();
+
+    BlockChain reopened = new BlockChain(policy, 2, dir);
+    assertEquals(chain.getSize(), reopened.getSize(), "size after reopening");
+    for (int i = 0; i < chain.getSize(); i++) {
+      assertEquals(chain.getBlock(i).toString(), reopened.getBlock(i).toString(), "block " + i);
+    } // for
+    assertEquals(chain.getHash(), reopened.getHash(), "hash after reopening");
+    assertEquals(bits, ((LeadingZeroValidator) reopened.getValidator()).getBits(),
+        "difficulty after reopening");
+    assertEquals(76, reopened.balance("A"), "A's balance after reopening");
+    assertEquals(23, reopened.balance("B"), "B's balance after reopening");
+    assertEquals(1, reopened.balance("C"), "C's balance after reopening");
+    assertTrue(reopened.isCorrect(), "reopened chain is correct");
+    reopened.append(reopened.mine(new Transaction("C", "A", 1)));
+    reopened.close();
+  } // testPersistence()
+
+  /**
+   * A block whose number is not its height should be rejected before it reaches the log, and
+   * should fail verification if it gets into the chain some other way.
+   */
+  @Test
+  public void testWrongNumber(@TempDir Path dir) throws Exception {
+    HashValidator check = (hash) -> hash.get(0) == 0;
+    BlockChain chain = new BlockChain(check, dir);
+    Block misnumbered = new Block(7, new Transaction("", "A", 5), chain.getHash(), check);
+    assertThrows(IllegalArgumentException.class, () -> chain.append(misnumbered));
+    assertEquals(1, chain.getSize(), "size after the rejected block");
+    assertEquals(0, chain.balance("A"), "A after the rejected block");
+    chain.append(chain.mine(new Transaction("", "A", 5)));
+    chain.close();
+
+    BlockChain reopened = new BlockChain(check, dir);
+    assertEquals(2, reopened.getSize(), "size after reopening");
+    assertEquals(5, reopened.balance("A"), "A after reopening");
+    assertTrue(reopened.isCorrect(), "reopened chain");
+    reopened.close();
+
+    BlockChain memory = new BlockChain(check);
+    memory.store.add(new Block(7, new Transaction("", "A", 5), memory.getHash(), check), 0,
+        check);
+    assertFalse(memory.isCorrect(), "chain with a misnumbered block");
+  } // testWrongNumber()
+
+  /**
+   * A mapped chain should behave like one kept on the heap, and come back
+   * the same when it is reopened.
+   */
+  @Test
+  public void testMappedChain(@TempDir Path dir) throws Exception {
+    BlockChain chain = new BlockChain((hash) -> true, dir, true);
+    chain.append(chain.mine(new Transaction("", "A", 1000)));
+    for (int i = 0; i < 200; i++) {
+      chain.append(chain.mine(new Transaction("A", "B" + (i % 3), 2)));
+    } // for
+    assertTrue(chain.removeLast(), "removing from a mapped chain");
+    chain.append(chain.mine(new Transaction("B0", "C", 1)));
+    assertTrue(chain.isCorrect(), "mapped chain is correct");
+    assertEquals(602, chain.balance("A"), "A's balance");
+    assertEquals(201, chain.getBlock(201).getNum(), "block read from the log");
+    Hash tip = chain.getHash();
+    assertThrows(UnsupportedOperationException.class,
+        () -> chain.getFirst().setBlock(chain.getBlock(0)));
+    chain.close();
+
+    BlockChain reopened = new BlockChain((hash) -> true, dir, true);
+    assertEquals(202, reopened.getSize(), "size after reopening");
+    assertEquals(tip, reopened.getHash(), "hash after reopening");
+    assertEquals(133, reopened.balance("B0"), "B0's balance after reopening");
+    assertTrue(reopened.isCorrect(), "reopened mapped chain is correct");
+    reopened.close();
+  } // testMappedChain()
+
+  /**
+   * Reopening a chain should start from the latest snapshot of the balances
+   * that matches the log, and ignore one that does not.
+   */
+  @Test
+  public void testSnapshots(@TempDir Path dir) throws Exception {
+    for (boolean mapped : new boolean[] {false, true}) {
+      Path sub = dir.resolve(mapped ? "mapped" : "heap");
+      BlockChain chain = new BlockChain((hash) -> true, sub, mapped);
+      chain.snapshotInterval = 10;
+      chain.append(chain.mine(new Transaction("", "A", 100)));
+      for (int i = 0; i < 24; i++) {
+        chain.append(chain.mine(new Transaction("A", "B", 1)));
+      } // for
+      chain.close();
+      BalanceSnapshot snap = BalanceSnapshot.read(sub);
+      assertEquals(20, snap.getHeight(), "height of the periodic snapshot");
+
+      // Doctor the snapshot: the reopened chain should believe it.
+      snap.getBalances().add("A", 1000);
+      snap.write(sub);
+      BlockChain reopened = new BlockChain((hash) -> true, sub, mapped);
+      assertEquals(1076, reopened.balance("A"), "A's balance from the snapshot");
+      assertEquals(24, reopened.balance("B"), "B's balance from the snapshot");
+      assertFalse(reopened.verifyBalances(), "doctored snapshot disagrees with the log");
+
+      // Drop the block the snapshot was taken at and the snapshot is ignored.
+      for (int i = 0; i < 6; i++) {
+        reopened.removeLast();
+      } // for
+      reopened.append(reopened.mine(new Transaction("B", "C", 1)));
+      reopened.close();
+      reopened = new BlockChain((hash) -> true, sub, mapped);
+      assertEquals(82, reopened.balance("A"), "A's balance after a full replay");
+      assertTrue(reopened.verifyBalances(), "balances after a full replay");
+      assertTrue(reopened.isCorrect(), "chain after a full replay");
+
+      // A forced snapshot is used on the next start.
+      reopened.snapshot();
+      reopened.close();
+      assertEquals(20, BalanceSnapshot.read(sub).getHeight(), "height of the forced snapshot");
+      reopened = new BlockChain((hash) -> true, sub, mapped);
+      assertTrue(reopened.verifyBalances(), "balances from the forced snapshot");
+      reopened.close();
+    } // for
+    assertThrows(IllegalStateException.class, () -> new BlockChain((hash) -> true, 1).snapshot());
+  } // testSnapshots()
+
+  /**
+   * Blocks should be found by their hashes as the chain grows and shrinks.
+   */
+  @Test
+  public void testFindByHash() throws Exception {
+    BlockChain chain = new BlockChain((hash) -> true, 1);
+    assertEquals(0, chain.findByHash(chain.getHash()).getNum(), "initial block");
+    for (int i = 0; i < 50; i++) {
+      chain.append(chain.mine(new Transaction("", "A", i)));
+    } // for
+    for (int i = 0; i < chain.getSize(); i++) {
+      Hash hash = chain.getBlock(i).getHash();
+      assertEquals(i, chain.findByHash(new Hash(hash.getBytes())).getNum(), "block " + i);
+    } // for
+    Hash last = chain.getHash();
+    chain.removeLast();
+    assertEquals(null, chain.findByHash(last), "removed block");
+    chain.append(chain.mine(new Transaction("", "B", 1)));
+    assertEquals(50, chain.findByHash(chain.getHash()).getNum(), "replacement block");
+    assertEquals(null, chain.findByHash(new Hash(new byte[] {1})), "unknown hash");
+  } // testFindByHash()
+
+  /**
+   * A user's history should list the blocks that name them, newest first and a page at a time,
+   * as blocks are added and removed.
+   */
+  @Test
+  public void testHistory() throws Exception {
+    BlockChain chain = new BlockChain((hash) -> true, 1);
+    chain.append(chain.mine(new Transaction("", "A", 100)));
+    for (int i = 0; i < 20; i++) {
+      chain.append(chain.mine(new Transaction("A", (i % 2 == 0) ? "B" : "C", 1)));
+    } // for
+    assertEquals(21, chain.historySize("A"), "blocks naming A");
+    assertEquals(10, chain.historySize("B"), "blocks naming B");
+    assertEquals(0, chain.historySize("Z"), "unknown user");
+    List<Block> page = chain.history("B", 0, 4);
+    assertEquals(4, page.size(), "first page of B");
+    assertEquals(20, page.get(0).getNum(), "newest block naming B");
+    assertEquals(14, page.get(3).getNum(), "last block on the first page of B");
+    assertEquals(2, chain.history("B", 2, 4).size(), "last page of B");
+    assertEquals(2, chain.history("B", 2, 4).get(1).getNum(), "oldest block naming B");
+    assertEquals(0, chain.history("B", 3, 4).size(), "past the end of B");
+    assertEquals(1, chain.history("A", 20, 1).get(0).getNum(), "A's deposit");
+    assertThrows(IllegalArgumentException.class, () -> chain.history("A", -1, 4));
+    assertThrows(IllegalArgumentException.class, () -> chain.history("A", 0, 0));
+
+    chain.removeLast();
+    chain.append(chain.mine(new Transaction("C", "D", 1)));
+    assertEquals(20, chain.historySize("A"), "A after replacing the last block");
+    assertEquals(21, chain.history("D", 0, 4).get(0).getNum(), "D after replacing");
+    assertEquals(21, chain.history("C", 0, 4).get(0).getNum(), "C after replacing");
+  } // testHistory()
+
+  /**
+   * Balances as of past blocks should match the balances the chain had when those blocks were
+   * the last, before and after blocks are removed.
+   */
+  @Test
+  public void testBalanceAsOf() throws Exception {
+    BlockChain chain = new BlockChain((hash) -> true, 1);
+    String[] users = {"A", "B", "C", "D"};
+    Random random = new Random(20);
+    long[][] expected = new long[301][users.length];
+    for (int i = 1; i <= 300; i++) {
+      String source = (i % 7 == 0) ? "" : users[random.nextInt(users.length)];
+      String target = users[random.nextInt(users.length)];
+      chain.append(chain.mine(new Transaction(source, target, random.nextInt(50))));
+      for (int u = 0; u < users.length; u++) {
+        expected[i][u] = chain.balance(users[u]);
+      } // for
+    } // for
+    for (int h = 0; h <= 300; h++) {
+      for (int u = 0; u < users.length; u++) {
+        assertEquals(expected[h][u], chain.balance(users[u], h), users[u] + " as of " + h);
+      } // for
+    } // for
+    assertEquals(0, chain.balance("Z", 300), "unknown user");
+    assertThrows(IndexOutOfBoundsException.class, () -> chain.balance("A", 301));
+    assertThrows(IndexOutOfBoundsException.class, () -> chain.balance("A", -1));
+
+    for (int i = 0; i < 50; i++) {
+      chain.removeLast();
+    } // for
+    chain.append(chain.mine(new Transaction("", "Z", 5)));
+    for (int h = 0; h <= 250; h++) {
+      for (int u = 0; u < users.length; u++) {
+        assertEquals(expected[h][u], chain.balance(users[u], h), users[u] + " again as of " + h);
+      } // for
+    } // for
+    assertEquals(5, chain.balance("Z", 251), "Z after the new block");
+    assertEquals(0, chain.balance("Z", 250), "Z before the new block");
+  } // testBalanceAsOf()
+
+  /**
+   * Blocks with batches should apply and undo every transaction in the batch together, show up
+   * in histories and entries, verify, and survive being persisted.
+   */
+  @Test
+  public void testBatches(@TempDir Path dir) throws Exception {
+    BlockChain chain = new BlockChain((hash) -> hash.get(0) == 0, dir, true);
+    chain.append(chain.mine(new Transaction("", "A", 100)));
+    chain.append(chain.mine(List.of(new Transaction("A", "B", 10),
+        new Transaction("A", "C", 20), new Transaction("B", "C", 5),
+        new Transaction("", "D", 7))));
+    assertEquals(70, chain.balance("A"), "A after the batch");
+    assertEquals(5, chain.balance("B"), "B after the batch");
+    assertEquals(25, chain.balance("C"), "C after the batch");
+    assertEquals(7, chain.balance("D"), "D after the batch");
+    assertEquals(2, chain.historySize("A"), "A is listed once for the batch");
+    assertEquals(-30, chain.balance("A", 2) - chain.balance("A", 1), "A's change in the batch");
+    int entries = 0;
+    for (Iterator<Transaction> it = chain.entries(); it.hasNext(); it.next()) {
+      entries++;
+    } // for
+    assertEquals(6, entries, "every transaction is an entry");
+    assertTrue(chain.verifyAll(), "chain with a batch");
+    assertTrue(chain.verifyBalances(), "balances with a batch");
+
+    Block batch = chain.getBlock(2);
+    Block wrong = new Block(batch.getNum(), batch.getTime(),
+        batch.getTransactions().toArray(new Transaction[0]),
+        MerkleTree.root(List.of(new Transaction("", "E", 1))), batch.getPrevHash(),
+        batch.getNonce(), batch.getHash());
+    chain.removeLast();
+    assertEquals(100, chain.balance("A"), "A after removing the batch");
+    assertEquals(0, chain.balance("C"), "C after removing the batch");
+    assertEquals(0, chain.balance("D"), "D after removing the batch");
+    assertThrows(IllegalArgumentException.class, () -> chain.append(wrong));
+    assertThrows(IllegalArgumentException.class, () -> chain.mine(List.of()));
+    chain.append(batch);
+    chain.close();
+
+    BlockChain reopened = new BlockChain((hash) -> hash.get(0) == 0, dir, true);
+    assertEquals(3, reopened.getSize(), "size after reopening");
+    assertEquals(batch.getMerkleRoot(), reopened.getBlock(2).getMerkleRoot(), "root on disk");
+    assertEquals(25, reopened.balance("C"), "C after reopening");
+    assertTrue(reopened.verifyAll(), "reopened chain with a batch");
+    reopened.close();
+  } // testBatches()
+
+  /**
+   * Proofs should verify against the chain root for transactions in batches and in blocks with
+   * a single transaction, and fail against another root or once tampered with.
+   */
+  @Test
+  public void testProofs() throws Exception {
+    HashValidator check = (hash) -> hash.get(0) == 0;
+    BlockChain chain = new BlockChain(check, 1);
+    for (int i = 1; i < 40; i++) {
+      if (i % 3 == 0) {
+        chain.append(chain.mine(new Transaction("", "A", i)));
+      } else {
+        List<Transaction> batch = new ArrayList<Transaction>();
+        for (int j = 0; j < i; j++) {
+          batch.add(new Transaction("", "U" + j, i));
+        } // for
+        chain.append(chain.mine(batch));
+      } // if/else
+    } // for
+    Hash root = chain.getChainRoot();
+    for (int height = 0; height < chain.getSize(); height++) {
+      int count = chain.getBlock(height).getTransactions().size();
+      for (int index = 0; index < count; index += 3) {
+        MerkleProof proof = chain.prove(height, index);
+        assertTrue(proof.verify(root, check), "transaction " + index + " at " + height);
+        assertEquals(chain.getBlock(height).getHash(), proof.blockHash(), "block hash");
+      } // for
+    } // for
+
+    MerkleProof proof = chain.prove(20, 7);
+    MerkleProof forged = new MerkleProof(new Transaction("", "U7", 1000), 20, proof.batchSize,
+        7, proof.batchPath, proof.prevHash, proof.nonce, proof.chainSize, proof.chainPath);
+    assertFalse(forged.verify(root), "forged amount");
+    MerkleProof moved = new MerkleProof(proof.transaction, 20, proof.batchSize, 6,
+        proof.batchPath, proof.prevHash, proof.nonce, proof.chainSize, proof.chainPath);
+    assertFalse(moved.verify(root), "wrong index");
+    assertFalse(proof.verify(root, (hash) -> false), "difficulty not met");
+
+    chain.removeLast();
+    assertFalse(proof.verify(chain.getChainRoot()), "old proof against a new root");
+    assertTrue(chain.prove(20, 7).verify(chain.getChainRoot()), "new proof");
+    chain.append(chain.mine(new Transaction("", "B", 1)));
+    assertTrue(chain.prove(39, 0).verify(chain.getChainRoot()), "proof of the new block");
+    assertThrows(IndexOutOfBoundsException.class, () -> chain.prove(39, 1));
+  } // testProofs()
+
+  /**
+   * Appending blocks all at once should leave the chain as appending them one at a time would,
+   * and a list with any bad block should change nothing.
+   */
+  @Test
+  public void testAppendAll(@TempDir Path dir) throws Exception {
+    HashValidator check = (hash) -> hash.get(0) == 0;
+    BlockChain chain = new BlockChain(check, dir, true);
+    List<Block> blocks = new ArrayList<Block>();
+    Hash prev = chain.getHash();
+    for (int i = 1; i <= 1500; i++) {
+      Block blk = (i % 2 == 1)
+          ? new Block(i, new Transaction("", "U" + (i % 7), i), prev, check)
+          : new Block(i, List.of(new Transaction("U" + ((i - 1) % 7), "V", 1),
+              new Transaction("", "W", 2)), prev, check);
+      blocks.add(blk);
+      prev = blk.getHash();
+    } // for
+
+    Block good = blocks.get(899);
+    Block bad = new Block(good.getNum(), good.getTime(),
+        good.getTransactions().toArray(new Transaction[0]),
+        good.getMerkleRoot(), good.getPrevHash(), good.getNonce() + 1, good.getHash());
+    List<Block> tampered = new ArrayList<Block>(blocks);
+    tampered.set(899, bad);
+    assertThrows(IllegalArgumentException.class, () -> chain.appendAll(tampered));
+    assertThrows(IllegalArgumentException.class,
+        () -> chain.appendAll(blocks.subList(1, blocks.size())));
+    assertEquals(1, chain.getSize(), "size after failed appends");
+    assertEquals(0, users(chain).length, "users after failed appends");
+
+    chain.appendAll(blocks.subList(0, 1000));
+    chain.appendAll(blocks.subList(1000, blocks.size()).iterator());
+    assertEquals(1501, chain.getSize(), "size after appending all");
+    assertEquals(prev, chain.getHash(), "hash after appending all");
+    assertEquals(750, chain.balance("V"), "V");
+    assertEquals(1500, chain.balance("W"), "W");
+    assertEquals(1 + 15 + 29 + 43 - 4, chain.balance("U1", 44), "U1 as of 44");
+    assertEquals(750, chain.historySize("W"), "W is in every other block");
+    assertTrue(chain.verifyAll(), "chain after appending all");
+    assertTrue(chain.verifyBalances(), "balances after appending all");
+    long u3 = chain.balance("U3");
+    chain.close();
+
+    BlockChain reopened = new BlockChain(check, dir, true);
+    assertEquals(1501, reopened.getSize(), "size after reopening");
+    assertEquals(u3, reopened.balance("U3"), "U3 after reopening");
+    assertTrue(reopened.verifyBalances(), "balances after reopening");
+    reopened.close();
+  } // testAppendAll()
+
+  /**
+   * Importing a chain whose difficulty changes should work out the same difficulties from the
+   * times in its blocks, however quickly the import itself runs.
+   */
+  @Test
+  public void testAppendAllRetargets(@TempDir Path dir) throws Exception {
+    DifficultyRetarget policy = new DifficultyRetarget(4, 1000, 0, 16);
+    BlockChain source = new BlockChain(policy, 0, dir.resolve("source"));
+    source.close();
+    copyChain(dir.resolve("source"), dir.resolve("copy"));
+    source = new BlockChain(policy, 0, dir.resolve("source"));
+    mineRetargets(source);
+    List<Block> blocks = new ArrayList<Block>();
+    for (int i = 1; i < source.getSize(); i++) {
+      blocks.add(source.getBlock(i));
+    } // for
+
+    BlockChain copy = new BlockChain(policy, 0, dir.resolve("copy"));
+    copy.appendAll(blocks);
+    assertEquals(source.getHash(), copy.getHash(), "hash after importing");
+    assertEquals(((LeadingZeroValidator) source.getValidator()).getBits(),
+        ((LeadingZeroValidator) copy.getValidator()).getBits(), "difficulty after importing");
+    assertTrue(copy.isCorrect(), "imported chain");
+    copy.append(copy.mine(new Transaction("A", "B", 1)));
+    copy.close();
+
+    BlockChain reopened = new BlockChain(policy, 0, dir.resolve("copy"));
+    assertEquals(source.getSize() + 1, reopened.getSize(), "size after reopening");
+    assertTrue(reopened.isCorrect(), "reopened import");
+    reopened.close();
+    source.close();
+  } // testAppendAllRetargets()
+
+  /**
+   * Readers on other threads should always see the tip, length, and balances agree, and
+   * iterate a fixed chain, while a writer appends.
+   */
+  @Test
+  public void testConcurrentReads() throws Exception {
+    BlockChain chain = new BlockChain((hash) -> true, 1);
+    List<String> failures = Collections.synchronizedList(new ArrayList<String>());
+    Thread writer = new Thread(() -> {
+      for (int i = 0; i < 500; i++) {
+        // Each block leaves A and B one richer.
+        chain.append(chain.mine(List.of(new Transaction("", "A", 2),
+            new Transaction("A", "B", 1))));
+      } // for
+    });
+    Thread[] readers = new Thread[4];
+    for (int r = 0; r < readers.length; r++) {
+      readers[r] = new Thread(() -> {
+        while (writer.isAlive()) {
+          String state = chain.read(() -> {
+            try {
+              int size = chain.getSize();
+              long a = chain.balance("A");
+              long b = chain.balance("B");
+              boolean linked = size == 1 || chain.getBlock(size - 1).getPrevHash()
+                  .equals(chain.getBlock(size - 2).getHash());
+              return (a == size - 1 && b == size - 1 && linked) ? null
+                  : "size " + size + ", A " + a + ", B " + b;
+            } catch (NullKeyException e) {
+              return "null key";
+            } // try/catch
+          });
+          if (state != null) {
+            failures.add(state);
+          } // if
+          int count = 0;
+          Iterator<Block> blocks = chain.blocks();
+          Hash prev = null;
+          while (blocks.hasNext()) {
+            Block blk = blocks.next();
+            if (prev != null && !blk.getPrevHash().equals(prev)) {
+              failures.add("iterator broke at " + count);
+            } // if
+            prev = blk.getHash();
+            count++;
+          } // while
+          if (count > chain.getSize()) {
+            failures.add("iterator saw " + count + " blocks");
+          } // if
+        } // while
+      });
+    } // for
+    writer.start();
+    for (Thread reader : readers) {
+      reader.start();
+    } // for
+    writer.join();
+    for (Thread reader : readers) {
+      reader.join();
+    } // for
+    assertEquals(List.of(), failures, "inconsistent reads");
+    assertEquals(501, chain.getSize(), "size after the writer");
+    assertTrue(chain.isCorrect(), "chain after the writer");
+
+    Iterator<Block> stale = chain.blocks();
+    stale.next();
+    chain.removeLast();
+    assertThrows(ConcurrentModificationException.class, () -> stale.next());
+    Iterator<Block> still = chain.blocks();
+    chain.append(chain.mine(new Transaction("", "C", 1)));
+    int count = 0;
+    while (still.hasNext()) {
+      still.next();
+      count++;
+    } // while
+    assertEquals(500, count, "iterators ignore blocks added later");
+
+    Iterator<String> users = chain.users();
+    assertEquals("A", users.next(), "first user");
+    for (int i = 0; i < 500; i++) {
+      chain.removeLast();
+    } // for
+    chain.reset();
+    assertEquals(1, users(chain).length, "only the initial block's user after reset");
+    assertEquals("B", users.next(), "second user, from the old table");
+    assertEquals("C", users.next(), "third user, from the old table");
+    assertFalse(users.hasNext(), "no more users");
+  } // testConcurrentReads()
+
+  /**
+   * Snapshots taken on several threads at once should all succeed and leave a snapshot the
+   * chain reopens from.
+   */
+  @Test
+  public void testConcurrentSnapshots(@TempDir Path dir) throws Exception {
+    BlockChain chain = new BlockChain((hash) -> true, dir);
+    for (int i = 1; i <= 20; i++) {
+      chain.append(chain.mine(new Transaction("", "A", i)));
+    } // for
+    List<Exception> failures = Collections.synchronizedList(new ArrayList<Exception>());
+    Thread[] threads = new Thread[4];
+    for (int t = 0; t < threads.length; t++) {
+      threads[t] = new Thread(() -> {
+        for (int i = 0; i < 100; i++) {
+          try {
+            chain.snapshot();
+          } catch (Exception e) {
+            failures.add(e);
+          } // try/catch
+        } // for
+      });
+      threads[t].start();
+    } // for
+    for (Thread thread : threads) {
+      thread.join();
+    } // for
+    assertEquals(List.of(), failures, "failed snapshots");
+    chain.close();
+
+    BalanceSnapshot snap = BalanceSnapshot.read(dir);
+    assertEquals(20, snap.getHeight(), "height of the snapshot");
+    BlockChain reopened = new BlockChain((hash) -> true, dir);
+    assertEquals(210, reopened.balance("A"), "A after reopening");
+    reopened.close();
+  } // testConcurrentSnapshots()
+
+  /**
+   * Readers should not wait while a writer writes a block or a snapshot to disk; the writer
+   * only locks them out to publish the block once it is written.
+   */
+  @Test
+  public void testReadDuringWrite(@TempDir Path dir) throws Exception {
+    BlockChain chain = new BlockChain((hash) -> true, dir);
+    chain.snapshotInterval = 2;
+    chain.append(chain.mine(new Transaction("", "A", 5)));
+    chain.append(chain.mine(new Transaction("", "A", 5)));
+    // The first write stalls in the log and the second, which is due a snapshot, in the snapshot.
+    Object[] stalls = {chain.log, chain.snapshotLock};
+    for (int i = 0; i < stalls.length; i++) {
+      Block next = chain.mine(new Transaction("", "A", 5));
+      int size = chain.getSize();
+      Thread writer = new Thread(() -> chain.append(next));
+      synchronized (stalls[i]) {
+        writer.start();
+        while (writer.isAlive() && writer.getState() != Thread.State.BLOCKED) {
+          Thread.sleep(1);
+        } // while
+        boolean written = (i > 0);
+        assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+          assertEquals(written ? size + 1 : size, chain.getSize(), "size during the write");
+          assertEquals(written ? 5 * size : 5 * (size - 1), chain.balance("A"),
+              "balance during the write");
+          assertTrue(chain.isCorrect(), "chain during the write");
+        });
+      } // synchronized
+      writer.join();
+      assertEquals(size + 1, chain.getSize(), "size after the write");
+    } // for
+    chain.close();
+    assertEquals(4, BalanceSnapshot.read(dir).getHeight(), "snapshot written");
+  } // testReadDuringWrite()
+
 } // class TestBlockChain
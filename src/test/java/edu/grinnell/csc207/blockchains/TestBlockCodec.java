@@ -0,0 +1,162 @@
+package edu.grinnell.csc207.blockchains;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Some simple tests of our BlockCodec class.
+ *
+ * @author Alex Pollock
+ * @author Kevin Tang
+ */
+public class TestBlockCodec {
+  /**
+   * Varints should round-trip at the edges of every length.
+   */
+  @Test
+  public void varintTest() {
+    ByteBuffer buf = ByteBuffer.allocate(BlockCodec.MAX_VARINT_BYTES);
+    for (long v : new long[] {0, 1, 127, 128, 16383, 16384, Integer.MAX_VALUE, -1,
+        Long.MIN_VALUE, Long.MAX_VALUE}) {
+      buf.clear();
+      BlockCodec.putVarint(buf, v);
+      assertEquals(BlockCodec.varintLength(v), buf.position(), "length of " + v);
+      buf.flip();
+      assertEquals(v, BlockCodec.getVarint(buf), "varint " + v);
+      assertEquals(v, BlockCodec.unzigzag(BlockCodec.zigzag(v)), "zigzag " + v);
+    } // for
+    assertEquals(1, BlockCodec.varintLength(BlockCodec.zigzag(-1)), "small negative");
+    ByteBuffer bad = ByteBuffer.allocate(11);
+    while (bad.hasRemaining()) {
+      bad.put((byte) 0xFF);
+    } // while
+    assertThrows(IllegalArgumentException.class, () -> BlockCodec.getVarint(bad.flip()));
+  } // varintTest()
+
+  /**
+   * Blocks and transactions should round-trip through heap and direct
+   * buffers, taking exactly the bytes they claim to.
+   */
+  @Test
+  public void roundTripTest() {
+    String[] names = {"", "A", "Björn", "日本", "emoji 😀", "x".repeat(300)};
+    Hash prev = new Hash(new byte[] {1, 2, 3, -4});
+    for (String source : names) {
+      for (int amount : new int[] {0, 5, -5, Integer.MIN_VALUE, Integer.MAX_VALUE}) {
+        Transaction t = new Transaction(source, "Target", amount);
+        Block blk = new Block(amount & 0xFFFF, t, prev, ((long) amount) * 7919);
+        for (ByteBuffer buf : new ByteBuffer[] {ByteBuffer.allocate(1000),
+            ByteBuffer.allocateDirect(1000)}) {
+          BlockCodec.encode(blk, buf);
+          assertEquals(BlockCodec.encodedLength(blk), buf.position(), "length of " + blk);
+          BlockCodec.encode(t, buf);
+          buf.flip();
+          Block copy = BlockCodec.decode(buf);
+          assertEquals(blk.toString(), copy.toString(), "decoded block");
+          assertEquals(blk.getHash(), copy.getHash(), "decoded hash");
+          assertEquals(t.toString(), BlockCodec.decodeTransaction(buf).toString(), "transaction");
+          assertEquals(0, buf.remaining(), "nothing left over");
+          buf.rewind();
+          assertEquals(blk.getHash(), BlockCodec.decodeHash(buf), "hash alone");
+        } // for
+      } // for
+    } // for
+  } // roundTripTest()
+
+  /**
+   * Blocks with batches should round-trip too, keeping their Merkle root.
+   */
+  @Test
+  public void batchRoundTripTest() {
+    Hash prev = new Hash(new byte[] {9, 8, 7});
+    List<Transaction> batch = new ArrayList<Transaction>();
+    for (int i = 0; i < 20; i++) {
+      batch.add(new Transaction((i % 2 == 0) ? "" : "Björn", "User" + i, i * 1000));
+      Block blk = new Block(i, batch, prev, i * 31L);
+      ByteBuffer buf = ByteBuffer.allocate(BlockCodec.encodedLength(blk));
+      BlockCodec.encode(blk, buf);
+      assertEquals(0, buf.remaining(), "length of a batch of " + batch.size());
+      assertEquals(BlockCodec.BATCH_VERSION, buf.get(0), "version");
+      buf.flip();
+      Block copy = BlockCodec.decode(buf);
+      assertEquals(blk.toString(), copy.toString(), "decoded block");
+      assertEquals(blk.getMerkleRoot(), copy.getMerkleRoot(), "decoded root");
+      assertEquals(batch.size(), copy.getTransactions().size(), "decoded batch");
+      buf.rewind();
+      assertEquals(blk.getHash(), BlockCodec.decodeHash(buf), "hash alone");
+    } // for
+  } // batchRoundTripTest()
+
+  /**
+   * Blocks with times should round-trip, and the time should be part of the hash.
+   */
+  @Test
+  public void timedRoundTripTest() {
+    Hash prev = new Hash(new byte[] {5, 6});
+    Transaction t = new Transaction("A", "B", 3);
+    Block untimed = new Block(4, t, prev, 17L);
+    Block[] blocks = {new Block(4, 1700000000000L, t, prev, 17L),
+        new Block(4, -1, t, prev, 17L), new Block(4, 1700000000000L, List.of(t, t), prev, 17L)};
+    byte[] versions = {BlockCodec.TIMED_VERSION, BlockCodec.TIMED_VERSION,
+        BlockCodec.TIMED_BATCH_VERSION};
+    for (int i = 0; i < blocks.length; i++) {
+      Block blk = blocks[i];
+      assertNotEquals(untimed.getHash(), blk.getHash(), "time is hashed in " + blk);
+      ByteBuffer buf = ByteBuffer.allocate(BlockCodec.encodedLength(blk));
+      BlockCodec.encode(blk, buf);
+      assertEquals(0, buf.remaining(), "length of " + blk);
+      assertEquals(versions[i], buf.get(0), "version");
+      buf.flip();
+      Block copy = BlockCodec.decode(buf);
+      assertEquals(blk.getTime(), copy.getTime(), "decoded time");
+      assertEquals(blk.getHash(), copy.getHash(), "decoded hash");
+      assertTrue(copy.hasCorrectHash(), "decoded block rehashes the same");
+      buf.rewind();
+      assertEquals(blk.getHash(), BlockCodec.decodeHash(buf), "hash alone");
+    } // for
+  } // timedRoundTripTest()
+
+  /**
+   * Strings should be UTF-8, and the preimage should use the same bytes.
+   */
+  @Test
+  public void utf8Test() {
+    for (String str : new String[] {"plain", "ü", "€", "😀", "\uD800 lone"}) {
+      byte[] expected = str.getBytes(StandardCharsets.UTF_8);
+      ByteBuffer buf = ByteBuffer.allocate(64);
+      BlockCodec.putUtf8(buf, str);
+      assertEquals(BlockCodec.utf8Length(str), buf.position(), "length of " + str);
+      byte[] actual = new byte[buf.position()];
+      buf.flip().get(actual);
+      assertArrayEquals(expected, actual, "bytes of " + str);
+    } // for
+    Transaction t = new Transaction("Zoë", "Ann", 3);
+    Hash prev = new Hash(new byte[] {9});
+    ByteBuffer buf = ByteBuffer.allocate(BlockCodec.preimageLength(7, t, prev));
+    BlockCodec.putPreimage(buf, 7, t, prev);
+    assertArrayEquals(ByteBuffer.allocate(16).putInt(7).put("Zoë".getBytes(StandardCharsets.UTF_8))
+        .put("Ann".getBytes(StandardCharsets.UTF_8)).putInt(3).put((byte) 9).array(), buf.array(),
+        "preimage");
+  } // utf8Test()
+
+  /**
+   * Encodings from an unknown version should be refused.
+   */
+  @Test
+  public void versionTest() {
+    ByteBuffer buf = ByteBuffer.allocate(100);
+    BlockCodec.encode(new Transaction("A", "B", 1), buf);
+    buf.put(0, (byte) 2).flip();
+    assertThrows(IllegalArgumentException.class, () -> BlockCodec.decodeTransaction(buf));
+  } // versionTest()
+} // class TestBlockCodec
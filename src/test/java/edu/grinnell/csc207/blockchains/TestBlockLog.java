@@ -0,0 +1,326 @@
+package edu.grinnell.csc207.blockchains;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Some simple tests of our BlockLog class.
+ *
+ * @author Alex Pollock
+ * @author Kevin Tang
+ */
+public class TestBlockLog {
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Make a chain of simple blocks.
+   */
+  static List<Block> blocks(int count) {
+    List<Block> blocks = new ArrayList<Block>();
+    Hash prev = new Hash(new byte[] {});
+    for (int i = 0; i < count; i++) {
+      Block blk = new Block(i, new Transaction((i == 0) ? "" : "Ann", "Bé" + i, i), prev, i);
+      blocks.add(blk);
+      prev = blk.getHash();
+    } // for
+    return blocks;
+  } // blocks(int)
+
+  /**
+   * Read back every record in a log.
+   */
+  static List<Block> replay(BlockLog log, List<Long> times) throws IOException {
+    List<Block> result = new ArrayList<Block>();
+    log.replay(0, (blk, time) -> {
+      result.add(blk);
+      times.add(time);
+    });
+    return result;
+  } // replay(BlockLog, List<Long>)
+
+  /**
+   * Assert that two lists hold blocks with the same contents.
+   */
+  static void assertSameBlocks(List<Block> expected, List<Block> actual) {
+    assertEquals(expected.size(), actual.size(), "number of blocks");
+    for (int i = 0; i < expected.size(); i++) {
+      assertEquals(expected.get(i).toString(), actual.get(i).toString(), "block " + i);
+      assertEquals(expected.get(i).getHash(), actual.get(i).getHash(), "hash of block " + i);
+    } // for
+  } // assertSameBlocks(List<Block>, List<Block>)
+
+  // +-------+-------------------------------------------------------
+  // | Tests |
+  // +-------+
+
+  /**
+   * Records should survive closing and reopening the log, across segments.
+   */
+  @Test
+  public void reopenTest(@TempDir Path dir) throws Exception {
+    List<Block> blocks = blocks(50);
+    BlockLog log = new BlockLog(dir, 512);
+    for (int i = 0; i < blocks.size(); i++) {
+      log.append(blocks.get(i), 1000 + i);
+    } // for
+    log.close();
+    assertTrue(Files.exists(log.segmentPath(2)), "several segments");
+
+    List<Long> times = new ArrayList<Long>();
+    log = new BlockLog(dir, 512);
+    assertEquals(50, log.size(), "records after reopening");
+    assertSameBlocks(blocks, replay(log, times));
+    assertEquals(1049L, times.get(49), "time of last record");
+    log.close();
+  } // reopenTest()
+
+  /**
+   * Truncating should drop records, and whole segments, from the end.
+   */
+  @Test
+  public void truncateTest(@TempDir Path dir) throws Exception {
+    List<Block> blocks = blocks(50);
+    BlockLog log = new BlockLog(dir, 512);
+    for (int i = 0; i < blocks.size(); i++) {
+      log.append(blocks.get(i), i);
+    } // for
+    log.truncate(7);
+    assertFalse(Files.exists(log.segmentPath(2)), "later segments deleted");
+    log.append(blocks.get(7), 7);
+    log.close();
+
+    log = new BlockLog(dir, 512);
+    assertSameBlocks(blocks.subList(0, 8), replay(log, new ArrayList<Long>()));
+    log.close();
+  } // truncateTest()
+
+  /**
+   * Reading each record as soon as it is appended should map the segment only a few times,
+   * reading the newest records from the file in between.
+   */
+  @Test
+  public void tailReadTest(@TempDir Path dir) throws Exception {
+    List<Block> blocks = blocks(20000);
+    BlockLog log = new BlockLog(dir);
+    int maps = 0;
+    MappedByteBuffer last = null;
+    for (int i = 0; i < blocks.size(); i++) {
+      log.write(blocks.get(i), i);
+      assertEquals(blocks.get(i).getHash(), log.hash(i), "hash of record " + i);
+      if (log.maps[0] != last) {
+        maps++;
+        last = log.maps[0];
+      } // if
+    } // for
+    assertTrue(maps <= 4, "the segment was mapped " + maps + " times");
+    assertSameBlocks(blocks, replay(log, new ArrayList<Long>()));
+    log.close();
+  } // tailReadTest()
+
+  /**
+   * A record torn by a crash, or damaged on disk, should be discarded along with everything
+   * after it.
+   */
+  @Test
+  public void tornTailTest(@TempDir Path dir) throws Exception {
+    List<Block> blocks = blocks(10);
+    BlockLog log = new BlockLog(dir);
+    for (int i = 0; i < blocks.size(); i++) {
+      log.append(blocks.get(i), i);
+    } // for
+    log.close();
+    Path segment = log.segmentPath(0);
+
+    // Lose the end of the last record.
+    long length = Files.size(segment);
+    try (FileChannel ch = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+      ch.truncate(length - 3);
+    } // try
+    log = new BlockLog(dir);
+    assertSameBlocks(blocks.subList(0, 9), replay(log, new ArrayList<Long>()));
+    log.close();
+    assertTrue(Files.size(segment) < length - 3, "torn record removed from the file");
+
+    // Corrupt a byte in the middle of the log.
+    byte[] data = Files.readAllBytes(segment);
+    data[data.length / 2] ^= 1;
+    Files.write(segment, data);
+    log = new BlockLog(dir);
+    int kept = log.size();
+    assertTrue(kept > 0 && kept < 9, "records before the damage kept");
+    assertSameBlocks(blocks.subList(0, kept), replay(log, new ArrayList<Long>()));
+    log.append(blocks.get(kept), kept);
+    log.close();
+
+    log = new BlockLog(dir);
+    assertEquals(kept + 1, log.size(), "appending after recovery");
+    log.close();
+  } // tornTailTest()
+
+  /**
+   * Damage in the last segment should only cost records in that segment, and the segments
+   * before it should be mapped as they are found.
+   */
+  @Test
+  public void lastSegmentTest(@TempDir Path dir) throws Exception {
+    List<Block> blocks = blocks(50);
+    BlockLog log = new BlockLog(dir, 512);
+    for (int i = 0; i < blocks.size(); i++) {
+      log.append(blocks.get(i), i);
+    } // for
+    log.close();
+    int last = 0;
+    while (Files.exists(log.segmentPath(last + 1))) {
+      last++;
+    } // while
+    Path segment = log.segmentPath(last);
+    byte[] data = Files.readAllBytes(segment);
+    data[data.length - 2] ^= 1;
+    Files.write(segment, data);
+
+    log = new BlockLog(dir, 512);
+    assertEquals(49, log.size(), "only the damaged record is lost");
+    assertTrue(log.maps[0] != null, "earlier segments mapped while opening");
+    assertSameBlocks(blocks.subList(0, 49), replay(log, new ArrayList<Long>()));
+    log.close();
+  } // lastSegmentTest()
+
+  /**
+   * Damage before the last segment cannot come from a crash, so opening the log should fail
+   * and leave every segment as it was.
+   */
+  @Test
+  public void sealedDamageTest(@TempDir Path dir) throws Exception {
+    List<Block> blocks = blocks(50);
+    BlockLog log = new BlockLog(dir, 512);
+    for (int i = 0; i < blocks.size(); i++) {
+      log.append(blocks.get(i), i);
+    } // for
+    log.close();
+    assertTrue(Files.exists(log.segmentPath(2)), "several segments");
+    Path segment = log.segmentPath(0);
+    byte[] data = Files.readAllBytes(segment);
+    Files.write(segment, Arrays.copyOf(data, data.length - 3));
+    List<byte[]> before = new ArrayList<byte[]>();
+    for (int i = 0; Files.exists(log.segmentPath(i)); i++) {
+      before.add(Files.readAllBytes(log.segmentPath(i)));
+    } // for
+
+    assertThrows(IOException.class, () -> new BlockLog(dir, 512));
+    for (int i = 0; i < before.size(); i++) {
+      assertArrayEquals(before.get(i), Files.readAllBytes(log.segmentPath(i)), "segment " + i);
+    } // for
+  } // sealedDamageTest()
+
+  /**
+   * Each append should return only once its record is on disk, even when several threads
+   * append at once and share forces.
+   */
+  @Test
+  public void groupCommitTest(@TempDir Path dir) throws Exception {
+    BlockLog log = new BlockLog(dir, 4096);
+    List<Block> blocks = blocks(10);
+    for (int i = 0; i < blocks.size(); i++) {
+      log.append(blocks.get(i), i);
+      assertEquals(i + 1, log.onDisk(), "on disk after append " + i);
+    } // for
+
+    Thread[] threads = new Thread[4];
+    List<Throwable> failures = Collections.synchronizedList(new ArrayList<Throwable>());
+    for (int t = 0; t < threads.length; t++) {
+      threads[t] = new Thread(() -> {
+        try {
+          for (int i = 0; i < 50; i++) {
+            long before = log.size();
+            log.append(blocks.get(i % blocks.size()), i);
+            if (log.onDisk() <= before) {
+              failures.add(new AssertionError("append returned before its record was synced"));
+            } // if
+          } // for
+        } catch (Throwable e) {
+          failures.add(e);
+        } // try/catch
+      });
+      threads[t].start();
+    } // for
+    for (Thread thread : threads) {
+      thread.join();
+    } // for
+    assertEquals(List.of(), failures, "failures");
+    assertEquals(210, log.size(), "records");
+    assertEquals(210, log.onDisk(), "all on disk");
+    log.close();
+    assertEquals(210, new BlockLog(dir, 4096).size(), "records after reopening");
+  } // groupCommitTest()
+
+  /**
+   * A log that writes behind should let records wait until enough of them have built up.
+   */
+  @Test
+  public void writeBehindTest(@TempDir Path dir) throws Exception {
+    List<Block> blocks = blocks(20);
+    BlockLog log = new BlockLog(dir, 4096, false, 8, 60000);
+    for (int i = 0; i < 7; i++) {
+      log.append(blocks.get(i), i);
+    } // for
+    assertEquals(0, log.onDisk(), "waiting records");
+    log.append(blocks.get(7), 7);
+    assertEquals(8, log.onDisk(), "a full batch is synced");
+    log.append(blocks.get(8), 8);
+    log.sync();
+    assertEquals(9, log.onDisk(), "synced on request");
+    log.close();
+    assertSameBlocks(blocks.subList(0, 9),
+        replay(new BlockLog(dir, 4096), new ArrayList<Long>()));
+  } // writeBehindTest()
+
+  /**
+   * Records in earlier segments are not checked while opening the log, so a damaged one should
+   * be caught when it is read instead.
+   */
+  @Test
+  public void readChecksumTest(@TempDir Path dir) throws Exception {
+    List<Block> blocks = blocks(50);
+    BlockLog log = new BlockLog(dir, 512);
+    for (int i = 0; i < blocks.size(); i++) {
+      log.append(blocks.get(i), i);
+    } // for
+    log.close();
+    Path segment = log.segmentPath(0);
+    byte[] data = Files.readAllBytes(segment);
+    int second = BlockLog.HEADER_BYTES + ByteBuffer.wrap(data).getInt(0);
+    data[second + BlockLog.HEADER_BYTES + 3] ^= 1;
+    Files.write(segment, data);
+
+    log = new BlockLog(dir, 512);
+    assertEquals(50, log.size(), "sealed segments are not checked while opening");
+    assertEquals(blocks.get(0).getHash(), log.hash(0), "intact record");
+    BlockLog damaged = log;
+    assertThrows(UncheckedIOException.class, () -> damaged.read(1));
+    assertThrows(UncheckedIOException.class, () -> damaged.hash(1));
+    assertThrows(IOException.class, () -> replay(damaged, new ArrayList<Long>()));
+    assertEquals(blocks.get(2).toString(), log.read(2).toString(), "later record");
+    log.close();
+  } // readChecksumTest()
+} // class TestBlockLog
@@ -0,0 +1,56 @@
+package edu.grinnell.csc207.blockchains;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Some simple tests of our BlockStore class.
+ *
+ * @author Alex Pollock
+ * @author Kevin Tang
+ */
+public class TestBlockStore {
+  /**
+   * Blocks should be found by height across several chunks, and removed
+   * back across chunk boundaries.
+   */
+  @Test
+  public void chunksTest() {
+    BlockStore store = new BlockStore();
+    HashValidator v = (h) -> true;
+    Hash ph = new Hash(new byte[] {});
+    int count = BlockStore.CHUNK_SIZE * 5 + 3;
+    Block[] blocks = new Block[count];
+    for (int i = 0; i < count; i++) {
+      blocks[i] = new Block(i, new Transaction("", "A", i), ph, i);
+      store.add(blocks[i], 1000 + i, v);
+    } // for
+    assertEquals(count, store.size(), "size after adding");
+    for (int i = 0; i < count; i += 97) {
+      assertSame(blocks[i], store.get(i), "block " + i);
+      assertEquals(1000 + i, store.getTime(i), "time of block " + i);
+      assertSame(v, store.getValidator(i), "validator of block " + i);
+    } // for
+    for (int i = count - 1; i >= BlockStore.CHUNK_SIZE * 3; i--) {
+      assertSame(blocks[i], store.removeLast(), "removing block " + i);
+    } // for
+    assertEquals(BlockStore.CHUNK_SIZE * 3, store.size(), "size after removing");
+    store.add(blocks[0], 0, v);
+    assertSame(blocks[0], store.get(BlockStore.CHUNK_SIZE * 3), "block added after removal");
+  } // chunksTest()
+
+  /**
+   * Heights outside the store are rejected.
+   */
+  @Test
+  public void boundsTest() {
+    BlockStore store = new BlockStore();
+    assertThrows(IndexOutOfBoundsException.class, () -> store.get(0));
+    store.add(new Block(0, new Transaction("", "", 0), new Hash(new byte[] {}), 0), 0, null);
+    assertThrows(IndexOutOfBoundsException.class, () -> store.get(1));
+    assertThrows(IndexOutOfBoundsException.class, () -> store.get(-1));
+  } // boundsTest()
+} // class TestBlockStore
@@ -0,0 +1,76 @@
+package edu.grinnell.csc207.blockchains;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Some simple tests of our ChainAccumulator class.
+ *
+ * @author Alex Pollock
+ * @author Kevin Tang
+ */
+public class TestChainAccumulator {
+  /**
+   * Compute the root and a path over the hashes in a store from scratch.
+   *
+   * @param store The store.
+   * @param height The block whose path we want.
+   *
+   * @return the path, followed by the root.
+   */
+  static Hash[] expected(BlockStore store, int height) {
+    Hash[] leaves = new Hash[store.size()];
+    for (int i = 0; i < leaves.length; i++) {
+      leaves[i] = store.getHash(i);
+    } // for
+    Hash[] path = MerkleTree.path(leaves, height);
+    Hash[] result = Arrays.copyOf(path, path.length + 1);
+    result[path.length] = MerkleTree.climb(leaves[height], height, leaves.length, path);
+    return result;
+  } // expected(BlockStore, int)
+
+  /**
+   * Roots and paths should match a tree built from scratch as blocks come and go, and the
+   * accumulator should notice blocks being replaced.
+   */
+  @Test
+  public void accumulateTest() {
+    BlockStore store = new BlockStore();
+    HashValidator v = (h) -> true;
+    Hash prev = new Hash(new byte[] {});
+    List<Block> blocks = new ArrayList<Block>();
+    for (int i = 0; i < 70; i++) {
+      Block blk = new Block(i, new Transaction("", "A", i), prev, i);
+      blocks.add(blk);
+      prev = blk.getHash();
+    } // for
+    store.add(blocks.get(0), 0, v);
+    ChainAccumulator acc = new ChainAccumulator(store);
+    for (int i = 1; i < 70; i++) {
+      store.add(blocks.get(i), i, v);
+      acc.add(i);
+      for (int h = 0; h <= i; h += Math.max(1, i / 7)) {
+        Hash[] want = expected(store, h);
+        assertEquals(want[want.length - 1], acc.root(), "root of " + (i + 1));
+        assertArrayEquals(Arrays.copyOf(want, want.length - 1), acc.path(h),
+            "path of " + h + " in " + (i + 1));
+      } // for
+    } // for
+    for (int i = 69; i > 20; i--) {
+      acc.removeLast();
+      store.removeLast();
+      Hash[] want = expected(store, i - 1);
+      assertEquals(want[want.length - 1], acc.root(), "root after removing " + i);
+      assertEquals(i, acc.size(), "size after removing " + i);
+    } // for
+    store.set(5, new Block(5, new Transaction("", "B", 1), store.getHash(4), 3));
+    assertEquals(expected(store, 0)[expected(store, 0).length - 1], acc.root(),
+        "root after replacing");
+  } // accumulateTest()
+} // class TestChainAccumulator
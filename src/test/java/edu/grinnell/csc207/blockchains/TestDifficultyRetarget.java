@@ -0,0 +1,61 @@
+package edu.grinnell.csc207.blockchains;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Some simple tests of our DifficultyRetarget class.
+ *
+ * @author Alex Pollock
+ * @author Kevin Tang
+ */
+public class TestDifficultyRetarget {
+  /**
+   * Windows that take about as long as expected keep the same difficulty.
+   */
+  @Test
+  public void onTargetTest() {
+    DifficultyRetarget policy = new DifficultyRetarget(10, 1000, 0, 64);
+    assertEquals(20, policy.retarget(20, 10000), "exactly on target");
+    assertEquals(20, policy.retarget(20, 13000), "a little slow");
+    assertEquals(20, policy.retarget(20, 8000), "a little fast");
+  } // onTargetTest()
+
+  /**
+   * Each halving or doubling of the time moves the difficulty by one bit.
+   */
+  @Test
+  public void stepTest() {
+    DifficultyRetarget policy = new DifficultyRetarget(10, 1000, 0, 64);
+    assertEquals(21, policy.retarget(20, 5000), "twice as fast");
+    assertEquals(22, policy.retarget(20, 2500), "four times as fast");
+    assertEquals(19, policy.retarget(20, 20000), "twice as slow");
+    assertEquals(18, policy.retarget(20, 40000), "four times as slow");
+  } // stepTest()
+
+  /**
+   * Very fast or slow windows only move the difficulty a little, and never out of bounds.
+   */
+  @Test
+  public void boundsTest() {
+    DifficultyRetarget policy = new DifficultyRetarget(10, 1000, 4, 24);
+    assertEquals(22, policy.retarget(20, 0), "instant window");
+    assertEquals(18, policy.retarget(20, 1000000), "very slow window");
+    assertEquals(24, policy.retarget(23, 0), "capped at the maximum");
+    assertEquals(4, policy.retarget(5, 1000000), "capped at the minimum");
+    assertEquals(4, policy.clamp(0), "clamp below");
+    assertEquals(24, policy.clamp(100), "clamp above");
+  } // boundsTest()
+
+  /**
+   * Policies must make sense.
+   */
+  @Test
+  public void invalidTest() {
+    assertThrows(IllegalArgumentException.class, () -> new DifficultyRetarget(0, 1000, 0, 8));
+    assertThrows(IllegalArgumentException.class, () -> new DifficultyRetarget(5, 0, 0, 8));
+    assertThrows(IllegalArgumentException.class, () -> new DifficultyRetarget(5, 1000, 9, 8));
+  } // invalidTest()
+} // class TestDifficultyRetarget
@@ -106,5 +106,48 @@ public class TestHash {
     assertFalse(h.equals(new Hash(bytes)), 
        "a hash does not equal a hash made from its modified bytes");
   } // testReturnBytes
-  
+
+  /**
+   * Every byte should render as two upper-case hex digits.
+   */
+  @Test
+  public void testEveryByteString() {
+    byte[] bytes = new byte[256];
+    StringBuilder expected = new StringBuilder();
+    for (int i = 0; i < bytes.length; i++) {
+      bytes[i] = (byte) i;
+      expected.append(String.format("%02X", i));
+    } // for
+    assertEquals(expected.toString(), new Hash(bytes).toString(), "all 256 bytes");
+    assertEquals("", new Hash(new byte[] {}).toString(), "empty hash");
+  } // testEveryByteString()
+
+  /**
+   * Equal hashes should have equal hash codes, hashes whose bytes differ only by trailing
+   * zeros should not be equal, and a view should follow changes to its bytes.
+   */
+  @Test
+  public void testHashCodes() {
+    byte[] bytes = new byte[32];
+    for (int i = 0; i < bytes.length; i++) {
+      bytes[i] = (byte) (i * 37);
+    } // for
+    Hash h = new Hash(bytes);
+    assertEquals(h.hashCode(), new Hash(bytes).hashCode(), "equal hashes, equal codes");
+    assertEquals(h.hashCode(), h.hashCode(), "cached code");
+    assertFalse(new Hash(new byte[] {1}).equals(new Hash(new byte[] {1, 0})),
+        "trailing zero");
+    assertNotEquals(new Hash(new byte[] {1}).hashCode(), new Hash(new byte[] {1, 0}).hashCode(),
+        "trailing zero changes the code");
+
+    byte[] scratch = bytes.clone();
+    Hash view = Hash.view(scratch);
+    assertTrue(view.equals(h), "view equals the hash");
+    assertEquals(h.hashCode(), view.hashCode(), "view has the same code");
+    scratch[31]++;
+    assertFalse(view.equals(h), "view follows its bytes");
+    assertEquals(new Hash(scratch).hashCode(), view.hashCode(), "view code follows its bytes");
+    scratch[31]--;
+    assertTrue(h.equals(view), "view equals the hash again");
+  } // testHashCodes()
 } // class TestHash
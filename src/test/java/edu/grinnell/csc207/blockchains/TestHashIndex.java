@@ -0,0 +1,57 @@
+package edu.grinnell.csc207.blockchains;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Some simple tests of our HashIndex class.
+ *
+ * @author Alex Pollock
+ * @author Kevin Tang
+ */
+public class TestHashIndex {
+  /**
+   * Every block should be found by its hash as blocks come and go, and the
+   * index should notice blocks being replaced.
+   */
+  @Test
+  public void findTest() {
+    BlockStore store = new BlockStore();
+    HashValidator v = (h) -> true;
+    Hash prev = new Hash(new byte[] {});
+    for (int i = 0; i < 100; i++) {
+      Block blk = new Block(i, new Transaction("", "A", i), prev, i);
+      store.add(blk, i, v);
+      prev = blk.getHash();
+    } // for
+    HashIndex index = new HashIndex(store);
+    for (int i = 100; i < 3000; i++) {
+      Block blk = new Block(i, new Transaction("", "A", i), prev, i);
+      store.add(blk, i, v);
+      index.add(i);
+      prev = blk.getHash();
+    } // for
+    for (int i = 0; i < 3000; i++) {
+      assertEquals(i, index.find(store.getHash(i)), "height of block " + i);
+    } // for
+    assertEquals(-1, index.find(new Hash(new byte[] {1, 2, 3})), "missing hash");
+
+    for (int i = 2999; i >= 1000; i--) {
+      Hash gone = store.getHash(i);
+      index.remove(i, gone);
+      store.removeLast();
+      assertEquals(-1, index.find(gone), "removed block " + i);
+    } // for
+    assertEquals(1000, index.size(), "size after removing");
+    for (int i = 0; i < 1000; i++) {
+      assertEquals(i, index.find(store.getHash(i)), "height of remaining block " + i);
+    } // for
+
+    Hash old = store.getHash(500);
+    Block replacement = new Block(500, new Transaction("", "B", 1), store.getHash(499), 7);
+    store.set(500, replacement);
+    assertEquals(-1, index.find(old), "replaced block");
+    assertEquals(500, index.find(replacement.getHash()), "replacement block");
+  } // findTest()
+} // class TestHashIndex
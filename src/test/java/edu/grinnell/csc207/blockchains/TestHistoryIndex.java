@@ -0,0 +1,70 @@
+package edu.grinnell.csc207.blockchains;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Some simple tests of our HistoryIndex class.
+ *
+ * @author Alex Pollock
+ * @author Kevin Tang
+ */
+public class TestHistoryIndex {
+  /**
+   * Each user's heights should be listed newest first, a page at a time, as blocks come and
+   * go, and the index should notice blocks being replaced.
+   */
+  @Test
+  public void historyTest() {
+    BlockStore store = new BlockStore();
+    HashValidator v = (h) -> true;
+    Hash prev = new Hash(new byte[] {});
+    String[] names = {"B", "A", "C"};
+    Block first = new Block(0, new Transaction("", "", 0), prev, 0);
+    store.add(first, 0, v);
+    HistoryIndex index = new HistoryIndex(store);
+    prev = first.getHash();
+    for (int i = 1; i < 100; i++) {
+      // Heights 1, 4, 7, ... move from A to B, and the rest from B or C to themselves.
+      Transaction t = (i % 3 == 1) ? new Transaction("A", "B", i)
+          : new Transaction(names[i % 3], names[i % 3], i);
+      Block blk = new Block(i, t, prev, i);
+      store.add(blk, i, v);
+      index.add(i);
+      prev = blk.getHash();
+    } // for
+    assertEquals(33, index.count("A"), "blocks naming A");
+    assertEquals(66, index.count("B"), "blocks naming B");
+    assertEquals(33, index.count("C"), "blocks naming C");
+    assertEquals(0, index.count(""), "deposits are not indexed");
+    assertEquals(0, index.count("D"), "unknown user");
+    assertArrayEquals(new int[] {97, 94, 91}, index.heights("A", 0, 3), "first page of A");
+    assertArrayEquals(new int[] {88, 85, 82}, index.heights("A", 3, 3), "second page of A");
+    assertArrayEquals(new int[] {4, 1}, index.heights("A", 31, 3), "last page of A");
+    assertArrayEquals(new int[] {}, index.heights("A", 33, 3), "past the end of A");
+    assertArrayEquals(new int[] {}, index.heights("D", 0, 3), "unknown user's page");
+    // A has sent 1 + 4 + ... up to each of its blocks; B received the same.
+    assertEquals(0, index.balance("A", 0), "A as of the initial block");
+    assertEquals(-1, index.balance("A", 3), "A as of height 3");
+    assertEquals(-5, index.balance("A", 4), "A as of height 4");
+    assertEquals(5, index.balance("B", 6), "B as of height 6");
+    assertEquals(0, index.balance("C", 99), "C only pays itself");
+    assertEquals(0, index.balance("D", 99), "unknown user");
+
+    for (int i = 99; i >= 90; i--) {
+      index.remove(i, store.get(i));
+      store.removeLast();
+    } // for
+    assertArrayEquals(new int[] {88, 85}, index.heights("A", 0, 2), "A after removing");
+    assertArrayEquals(new int[] {88, 87, 85}, index.heights("B", 0, 3), "B after removing");
+
+    Block replacement = new Block(88, new Transaction("C", "D", 1), store.getHash(87), 7);
+    store.set(88, replacement);
+    assertArrayEquals(new int[] {85, 82}, index.heights("A", 0, 2), "A after replacing");
+    assertArrayEquals(new int[] {88}, index.heights("D", 0, 2), "D after replacing");
+    assertEquals(1, index.balance("D", 89), "D's balance after replacing");
+    assertEquals(-1, index.balance("C", 88), "C's balance after replacing");
+  } // historyTest()
+} // class TestHistoryIndex
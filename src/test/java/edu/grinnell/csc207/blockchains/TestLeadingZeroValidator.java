@@ -0,0 +1,99 @@
+package edu.grinnell.csc207.blockchains;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Some simple tests of our LeadingZeroValidator class.
+ *
+ * @author Alex Pollock
+ * @author Kevin Tang
+ */
+public class TestLeadingZeroValidator {
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Count the leading zero bits of a hash one bit at a time.
+   */
+  static int leadingZeros(Hash hash) {
+    for (int i = 0; i < hash.length() * 8; i++) {
+      if ((hash.get(i / 8) & (0x80 >>> (i % 8))) != 0) {
+        return i;
+      } // if
+    } // for
+    return hash.length() * 8;
+  } // leadingZeros(Hash)
+
+  // +-------+-------------------------------------------------------
+  // | Tests |
+  // +-------+
+
+  /**
+   * Some basic tests.
+   */
+  @Test
+  public void basicTests() {
+    Hash h = new Hash(new byte[] {0, 0, 0x1f, 5});
+    assertTrue(new LeadingZeroValidator(0).isValid(h), "no bits required");
+    assertTrue(new LeadingZeroValidator(16).isValid(h), "two zero bytes");
+    assertTrue(new LeadingZeroValidator(19).isValid(h), "nineteen zero bits");
+    assertFalse(new LeadingZeroValidator(20).isValid(h), "twenty zero bits");
+    assertFalse(new LeadingZeroValidator(40).isValid(new Hash(new byte[4])),
+        "more bits than the hash has");
+    assertTrue(new LeadingZeroValidator(0).isValid(new Hash(new byte[] {})), "empty hash");
+    assertEquals(19, new LeadingZeroValidator(19).getBits(), "bits of validator");
+  } // basicTests()
+
+  /**
+   * The validator should agree with a bit-by-bit count for hashes of many lengths.
+   */
+  @Test
+  public void randomHashesTest() {
+    Random rand = new Random(207);
+    for (int len = 0; len <= 40; len++) {
+      for (int trial = 0; trial < 50; trial++) {
+        byte[] bytes = new byte[len];
+        rand.nextBytes(bytes);
+        // Clear a random number of leading bits so long runs of zeros are tested.
+        int clear = rand.nextInt(len * 8 + 1);
+        for (int i = 0; i < clear; i++) {
+          bytes[i / 8] &= (byte) ~(0x80 >>> (i % 8));
+        } // for
+        Hash h = new Hash(bytes);
+        int zeros = leadingZeros(h);
+        for (int bits = 0; bits <= 330; bits += 1 + rand.nextInt(4)) {
+          int required = bits;
+          assertEquals(bits <= zeros, new LeadingZeroValidator(bits).isValid(h),
+              () -> required + " bits required of " + h);
+        } // for
+        assertTrue(new LeadingZeroValidator(zeros).isValid(h), "exactly " + zeros + " bits");
+      } // for
+    } // for
+  } // randomHashesTest()
+
+  /**
+   * Blocks mined with the validator should have enough leading zero bits.
+   */
+  @Test
+  public void mineTest() {
+    LeadingZeroValidator v = new LeadingZeroValidator(13);
+    Block b = new Block(3, new Transaction("A", "B", 5), new Hash(new byte[] {}), v);
+    assertTrue(leadingZeros(b.getHash()) >= 13, "mined hash has 13 zero bits");
+  } // mineTest()
+
+  /**
+   * A validator cannot require a negative number of bits.
+   */
+  @Test
+  public void negativeTest() {
+    assertThrows(IllegalArgumentException.class, () -> new LeadingZeroValidator(-1));
+  } // negativeTest()
+} // class TestLeadingZeroValidator
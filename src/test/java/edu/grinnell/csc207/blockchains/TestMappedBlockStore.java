@@ -0,0 +1,61 @@
+package edu.grinnell.csc207.blockchains;
+
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Some simple tests of our MappedBlockStore class.
+ *
+ * @author Alex Pollock
+ * @author Kevin Tang
+ */
+public class TestMappedBlockStore {
+  /**
+   * Blocks, hashes, times, and validators should be read back from the log, across segments
+   * and while the log is still growing.
+   */
+  @Test
+  public void readTest(@TempDir Path dir) throws Exception {
+    List<Block> blocks = TestBlockLog.blocks(100);
+    HashValidator easy = (h) -> true;
+    HashValidator hard = (h) -> h.get(0) == 0;
+    BlockLog log = new BlockLog(dir, 1024);
+    MappedBlockStore store = new MappedBlockStore(log);
+    for (int i = 0; i < blocks.size(); i++) {
+      log.append(blocks.get(i), 5000 + i);
+      store.add(blocks.get(i), 5000 + i, (i / 30 % 2 == 0) ? easy : hard);
+      assertEquals(blocks.get(i).getHash(), store.getHash(i), "tip hash " + i);
+      assertEquals(blocks.get(i / 2).toString(), store.get(i / 2).toString(), "block " + i / 2);
+    } // for
+    for (int i = 0; i < blocks.size(); i++) {
+      assertEquals(blocks.get(i).getHash(), store.get(i).getHash(), "hash of block " + i);
+      assertEquals(blocks.get(i).getHash(), store.getHash(i), "hash " + i);
+      assertEquals(5000 + i, store.getTime(i), "time " + i);
+      assertSame((i / 30 % 2 == 0) ? easy : hard, store.getValidator(i), "validator " + i);
+    } // for
+    assertThrows(IndexOutOfBoundsException.class, () -> store.get(100));
+    assertThrows(UnsupportedOperationException.class, () -> store.set(0, blocks.get(0)));
+
+    // Remove back into the first run of validators.
+    for (int i = 99; i >= 20; i--) {
+      log.truncate(i);
+      store.removeLast();
+    } // for
+    assertEquals(20, store.size(), "size after removing");
+    assertEquals(blocks.get(19).getHash(), store.getHash(19), "tip after removing");
+    log.append(blocks.get(20), 1);
+    store.add(blocks.get(20), 1, hard);
+    assertSame(easy, store.getValidator(19), "validator before the new run");
+    assertSame(hard, store.getValidator(20), "validator of the new run");
+    assertEquals(1, store.getTime(20), "time of the replacement block");
+    assertThrows(IllegalStateException.class, () -> store.add(blocks.get(21), 2, hard));
+    log.close();
+  } // readTest()
+} // class TestMappedBlockStore
@@ -0,0 +1,119 @@
+package edu.grinnell.csc207.blockchains;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Some simple tests of our Mempool class.
+ *
+ * @author Alex Pollock
+ * @author Kevin Tang
+ */
+public class TestMempool {
+  /**
+   * Batches should come out by priority and then by arrival, and bad transactions should be
+   * turned away.
+   */
+  @Test
+  public void orderTest() {
+    Mempool pool = new Mempool((user) -> 100);
+    assertTrue(pool.submit(new Transaction("A", "B", 1)), "first");
+    assertTrue(pool.submit(new Transaction("A", "B", 2)), "second");
+    assertTrue(pool.submit(new Transaction("", "C", 3), 5), "urgent");
+    assertTrue(pool.submit(new Transaction("A", "C", 4)), "third");
+    assertFalse(pool.submit(new Transaction("A", "B", 1)), "duplicate");
+    assertFalse(pool.submit(new Transaction("A", "B", -1)), "negative");
+    assertFalse(pool.submit(new Transaction("A", "", 1)), "no target");
+    assertFalse(pool.submit(new Transaction("A", "B", 94)), "overdraws with what is pending");
+    assertTrue(pool.submit(new Transaction("A", "B", 93)), "exactly the rest");
+    assertEquals(5, pool.size(), "pending");
+
+    List<Transaction> batch = pool.take(3);
+    assertEquals(List.of(new Transaction("", "C", 3), new Transaction("A", "B", 1),
+        new Transaction("A", "B", 2)), batch, "first batch");
+    assertFalse(pool.submit(new Transaction("A", "B", 1)), "duplicate of a taken one");
+    assertFalse(pool.submit(new Transaction("A", "B", 5)), "taken ones still hold money");
+
+    pool.putBack(batch);
+    assertEquals(batch, pool.take(3), "put back in place");
+    pool.confirm(batch);
+    assertTrue(pool.submit(new Transaction("A", "B", 1)), "confirmed ones are forgotten");
+    assertEquals(List.of(new Transaction("A", "C", 4), new Transaction("A", "B", 93),
+        new Transaction("A", "B", 1)), pool.take(10), "the rest");
+    assertEquals(0, pool.take(10).size(), "empty");
+  } // orderTest()
+
+  /**
+   * Looking up a balance may wait for the chain, which may be releasing holds for the same
+   * source meanwhile, so it must not happen while the held amounts are locked.
+   */
+  @Test
+  public void balanceLookupTest() {
+    Transaction first = new Transaction("A", "B", 60);
+    Mempool[] pool = new Mempool[1];
+    AtomicInteger lookups = new AtomicInteger();
+    pool[0] = new Mempool((user) -> {
+      int lookup = lookups.getAndIncrement();
+      if (lookup == 0) {
+        return 100;
+      } else if (lookup == 1) {
+        // As if the chain confirmed the first transaction while we looked up the balance.
+        pool[0].release(first);
+      } // if/else
+      return 40;
+    });
+    assertTrue(pool[0].submit(first), "first");
+    assertTrue(pool[0].submit(new Transaction("A", "C", 40)), "after the first is released");
+    assertFalse(pool[0].submit(new Transaction("A", "C", 1)), "nothing left");
+  } // balanceLookupTest()
+
+  /**
+   * Many producers at once should never overdraw a source or lose a transaction.
+   *
+   * @throws InterruptedException if a producer is interrupted.
+   */
+  @Test
+  public void concurrentTest() throws InterruptedException {
+    Mempool pool = new Mempool((user) -> 1000);
+    AtomicInteger accepted = new AtomicInteger();
+    Thread[] producers = new Thread[8];
+    for (int p = 0; p < producers.length; p++) {
+      String target = "T" + p;
+      producers[p] = new Thread(() -> {
+        for (int i = 1; i <= 500; i++) {
+          if (pool.submit(new Transaction("A", target + "." + i, 1), i % 3)) {
+            accepted.incrementAndGet();
+          } // if
+          pool.submit(new Transaction("", target, i));
+        } // for
+      });
+      producers[p].start();
+    } // for
+    int taken = 0;
+    while (taken < 1000 + 8 * 500) {
+      List<Transaction> batch = pool.take(64);
+      taken += batch.size();
+      if (batch.isEmpty()) {
+        Thread.yield();
+      } // if
+      boolean done = true;
+      for (Thread producer : producers) {
+        done = done && !producer.isAlive();
+      } // for
+      if (done && pool.size() == 0) {
+        break;
+      } // if
+    } // while
+    for (Thread producer : producers) {
+      producer.join();
+    } // for
+    taken += pool.take(Integer.MAX_VALUE).size();
+    assertEquals(1000, accepted.get(), "debits accepted");
+    assertEquals(1000 + 8 * 500, taken, "transactions taken");
+  } // concurrentTest()
+} // class TestMempool
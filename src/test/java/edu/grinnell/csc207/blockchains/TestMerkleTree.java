@@ -0,0 +1,78 @@
+package edu.grinnell.csc207.blockchains;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Some simple tests of our MerkleTree class.
+ *
+ * @author Alex Pollock
+ * @author Kevin Tang
+ */
+public class TestMerkleTree {
+  /**
+   * Roots should pair hashes level by level, move an odd hash up unchanged, and depend on the
+   * order of the transactions.
+   */
+  @Test
+  public void rootTest() {
+    Transaction a = new Transaction("", "A", 1);
+    Transaction b = new Transaction("A", "B", 2);
+    Transaction c = new Transaction("B", "C", 3);
+    Hash la = MerkleTree.leaf(a);
+    Hash lb = MerkleTree.leaf(b);
+    Hash lc = MerkleTree.leaf(c);
+    assertEquals(32, la.length(), "leaves are SHA-256");
+    assertEquals(la, MerkleTree.root(List.of(a)), "one transaction");
+    assertEquals(MerkleTree.node(la, lb), MerkleTree.root(List.of(a, b)), "two transactions");
+    assertEquals(MerkleTree.node(MerkleTree.node(la, lb), lc), MerkleTree.root(List.of(a, b, c)),
+        "three transactions");
+    assertEquals(MerkleTree.node(MerkleTree.node(la, lb), MerkleTree.node(lc, la)),
+        MerkleTree.root(List.of(a, b, c, a)), "four transactions");
+    assertFalse(MerkleTree.root(List.of(a, b)).equals(MerkleTree.root(List.of(b, a))),
+        "order matters");
+    assertFalse(MerkleTree.root(List.of(a, b, c)).equals(MerkleTree.root(List.of(a, b, c, c))),
+        "repeating the last transaction changes the root");
+    assertFalse(MerkleTree.node(la, lb).equals(MerkleTree.root(List.of(a, b, a, b))),
+        "an inner node is not a leaf");
+    assertThrows(IllegalArgumentException.class, () -> MerkleTree.root(List.of()));
+  } // rootTest()
+
+  /**
+   * Every leaf's path should climb back to the root, for every size of tree, and paths should
+   * not climb to the root from the wrong leaf or index.
+   */
+  @Test
+  public void pathTest() {
+    List<Transaction> batch = new ArrayList<Transaction>();
+    for (int size = 1; size <= 40; size++) {
+      batch.add(new Transaction("", "User" + size, size));
+      Hash root = MerkleTree.root(batch);
+      Hash[] leaves = new Hash[size];
+      for (int i = 0; i < size; i++) {
+        leaves[i] = MerkleTree.leaf(batch.get(i));
+      } // for
+      for (int i = 0; i < size; i++) {
+        Hash[] path = MerkleTree.path(leaves, i);
+        assertTrue(path.length <= 6, "short path");
+        assertEquals(root, MerkleTree.climb(leaves[i], i, size, path), i + " of " + size);
+        if (size > 1) {
+          assertFalse(root.equals(MerkleTree.climb(leaves[(i + 1) % size], i, size, path)),
+              "wrong leaf");
+        } // if
+      } // for
+    } // for
+    Hash[] leaves = {MerkleTree.leaf(batch.get(0)), MerkleTree.leaf(batch.get(1))};
+    assertNull(MerkleTree.climb(leaves[0], 2, 2, MerkleTree.path(leaves, 0)), "bad index");
+    assertNull(MerkleTree.climb(leaves[0], 0, 3, MerkleTree.path(leaves, 0)), "too few");
+    assertNull(MerkleTree.climb(leaves[0], 0, 1, MerkleTree.path(leaves, 0)), "too many");
+  } // pathTest()
+} // class TestMerkleTree
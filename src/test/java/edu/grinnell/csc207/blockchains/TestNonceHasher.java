@@ -0,0 +1,131 @@
+package edu.grinnell.csc207.blockchains;
+
+import java.lang.management.ManagementFactory;
+import java.security.MessageDigest;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests of our hand-rolled SHA-256 midstate hasher.
+ *
+ * @author Alex Pollock
+ * @author Kevin Tang
+ */
+public class TestNonceHasher {
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Compute the hash of a block with the standard library.
+   */
+  static byte[] expectedHash(int num, Transaction t, Hash prev, long nonce) throws Exception {
+    MessageDigest md = MessageDigest.getInstance("sha-256");
+    md.update(NonceHasher.prefix(num, t, prev));
+    byte[] tail = new byte[Long.BYTES];
+    NonceHasher.putLong(tail, 0, nonce);
+    md.update(tail);
+    return md.digest();
+  } // expectedHash(int, Transaction, Hash, long)
+
+  // +-------+-------------------------------------------------------
+  // | Tests |
+  // +-------+
+
+  /**
+   * The hasher should agree with MessageDigest for every prefix length around the chunk
+   * boundaries, where the nonce and padding move between one and two final chunks.
+   */
+  @Test
+  public void chunkBoundariesTest() throws Exception {
+    Hash prev = new Hash(new byte[32]);
+    for (int len = 0; len < 200; len++) {
+      Transaction t = new Transaction("s", "x".repeat(len), len);
+      NonceHasher hasher = new NonceHasher(len, t, prev);
+      for (long nonce : new long[] {0, 1, -1, Long.MIN_VALUE, 0x0123456789abcdefL}) {
+        assertArrayEquals(expectedHash(len, t, prev, nonce), hasher.hash(nonce).getBytes(),
+            "hash with " + len + " target bytes and nonce " + nonce);
+      } // for
+    } // for
+  } // chunkBoundariesTest()
+
+  /**
+   * The hasher should agree with the blocks it is used to mine.
+   */
+  @Test
+  public void matchesBlockTest() {
+    Transaction t = new Transaction("Rebel", "Sky", 250);
+    Hash ph = new Hash(new byte[] {42, 42, 42, 42, 42, 42});
+    NonceHasher hasher = new NonceHasher(5, t, ph);
+    for (long nonce = -100; nonce < 100; nonce++) {
+      assertArrayEquals(new Block(5, t, ph, nonce).getHash().getBytes(),
+          hasher.hash(nonce).getBytes(), "hash with nonce " + nonce);
+    } // for
+  } // matchesBlockTest()
+
+  /**
+   * Hashing a block once, without a midstate, should agree with MessageDigest around the chunk
+   * boundaries too.
+   */
+  @Test
+  public void encoderTest() throws Exception {
+    Hash prev = new Hash(new byte[32]);
+    for (int len = 0; len < 200; len++) {
+      Transaction t = new Transaction("s", "x".repeat(len), len);
+      for (long nonce : new long[] {0, -1, 0x0123456789abcdefL}) {
+        assertArrayEquals(expectedHash(len, t, prev, nonce),
+            new Block(len, t, prev, nonce).getHash().getBytes(),
+            "hash with " + len + " target bytes and nonce " + nonce);
+      } // for
+    } // for
+  } // encoderTest()
+
+  /**
+   * Checking a block's hash should reuse the thread's encoder and allocate nothing.
+   */
+  @Test
+  public void checkAllocationFreeTest() {
+    com.sun.management.ThreadMXBean bean =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    Block blk = new Block(1, new Transaction("A", "B".repeat(100), 2), new Hash(new byte[32]), 7);
+    boolean correct = true;
+    for (int i = 0; i < 20000; i++) {
+      correct &= blk.hasCorrectHash();
+    } // for
+    long id = Thread.currentThread().getId();
+    long before = bean.getThreadAllocatedBytes(id);
+    for (int i = 0; i < 100000; i++) {
+      correct &= blk.hasCorrectHash();
+    } // for
+    long allocated = bean.getThreadAllocatedBytes(id) - before;
+    assertTrue(correct, "the block's hash is correct");
+    assertTrue(allocated < 10000, "allocated " + allocated + " bytes in 100000 checks");
+  } // checkAllocationFreeTest()
+
+  /**
+   * Trying a nonce should reuse the same candidate and allocate nothing.
+   */
+  @Test
+  public void allocationFreeTest() {
+    com.sun.management.ThreadMXBean bean =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    NonceHasher hasher = new NonceHasher(1, new Transaction("A", "B", 2), new Hash(new byte[32]));
+    HashValidator v = (h) -> h.get(0) == 0 && h.get(1) == 0 && h.get(2) == 0;
+    Hash first = hasher.candidate(0);
+    for (long nonce = 0; nonce < 20000; nonce++) {
+      v.isValid(hasher.candidate(nonce));
+    } // for
+    long id = Thread.currentThread().getId();
+    long before = bean.getThreadAllocatedBytes(id);
+    for (long nonce = 0; nonce < 100000; nonce++) {
+      v.isValid(hasher.candidate(nonce));
+    } // for
+    long allocated = bean.getThreadAllocatedBytes(id) - before;
+    assertSame(first, hasher.candidate(1), "candidate is reused");
+    assertTrue(allocated < 10000, "allocated " + allocated + " bytes in 100000 attempts");
+  } // allocationFreeTest()
+} // class TestNonceHasher
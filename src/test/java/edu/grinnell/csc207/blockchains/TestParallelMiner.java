@@ -0,0 +1,72 @@
+package edu.grinnell.csc207.blockchains;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Some simple tests of our ParallelMiner class.
+ *
+ * @author Alex Pollock
+ * @author Kevin Tang
+ */
+public class TestParallelMiner {
+  // +-------+-------------------------------------------------------
+  // | Tests |
+  // +-------+
+
+  /**
+   * A single worker should behave like the sequential miner.
+   */
+  @Test
+  public void singleWorkerTest() {
+    HashValidator v = (h) -> (h.length() > 0) && (h.get(0) == 5);
+    Transaction t = new Transaction("Source", "Target", 100);
+    Hash ph = new Hash(new byte[] {1, 2, 3});
+    Block b = new ParallelMiner(1).mine(4, t, ph, v);
+
+    assertEquals(4, b.getNum(), "number of mined block");
+    assertEquals(t, b.getTransaction(), "transaction in mined block");
+    assertEquals(ph, b.getPrevHash(), "previous hash of mined block");
+    assertTrue(v.isValid(b.getHash()), "hash of mined block is valid");
+  } // singleWorkerTest()
+
+  /**
+   * Many workers should still produce a block whose hash matches its contents.
+   */
+  @Test
+  public void manyWorkersTest() {
+    HashValidator v = (h) -> (h.length() > 1) && (h.get(0) == 0) && (h.get(1) == 7);
+    Transaction t = new Transaction("", "Deposited", 888);
+    Hash ph = new Hash(new byte[] {8, 8, 8});
+    Block b = new ParallelMiner(8).mine(8, t, ph, v);
+
+    assertTrue(v.isValid(b.getHash()), "hash of block mined by many workers is valid");
+    assertEquals(new Block(8, t, ph, b.getNonce()).getHash(), b.getHash(),
+        "hash of block mined by many workers matches its contents");
+  } // manyWorkersTest()
+
+  /**
+   * A miner can be reused for several searches.
+   */
+  @Test
+  public void reuseTest() {
+    ParallelMiner miner = new ParallelMiner(3);
+    Hash ph = new Hash(new byte[] {});
+    for (int i = 0; i < 5; i++) {
+      Block b = miner.mine(i, new Transaction("A", "B", i), ph, (h) -> h.get(0) == 1);
+      assertEquals(1, b.getHash().get(0), "hash of reused miner's block " + i);
+      ph = b.getHash();
+    } // for
+  } // reuseTest()
+
+  /**
+   * A miner must have at least one worker.
+   */
+  @Test
+  public void noWorkersTest() {
+    assertThrows(IllegalArgumentException.class, () -> new ParallelMiner(0));
+  } // noWorkersTest()
+} // class TestParallelMiner
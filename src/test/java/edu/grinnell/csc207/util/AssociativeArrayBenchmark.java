@@ -0,0 +1,138 @@
+package edu.grinnell.csc207.util;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of the operations BlockChain performs on its balance table. Run with
+ *
+ * <pre>
+ * mvn test-compile exec:exec -Dexec.executable=java -Dexec.classpathScope=test \
+ *     -Dexec.args="-cp %classpath org.openjdk.jmh.Main AssociativeArrayBenchmark"
+ * </pre>
+ *
+ * @author Alex Pollock
+ * @author Kevin Tang
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class AssociativeArrayBenchmark {
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The number of keys in the table.
+   */
+  @Param({"100", "10000", "100000"})
+  int size;
+
+  /**
+   * The keys in the table.
+   */
+  String[] keys;
+
+  /**
+   * Keys that are not in the table.
+   */
+  String[] missing;
+
+  /**
+   * The table.
+   */
+  AssociativeArray<String, Integer> array;
+
+  /**
+   * The index of the next key to use.
+   */
+  int next;
+
+  // +-------+-------------------------------------------------------
+  // | Setup |
+  // +-------+
+
+  /**
+   * Fill the table.
+   *
+   * @throws Exception if the table rejects a key.
+   */
+  @Setup
+  public void setup() throws Exception {
+    this.keys = new String[this.size];
+    this.missing = new String[this.size];
+    this.array = new AssociativeArray<String, Integer>();
+    for (int i = 0; i < this.size; i++) {
+      this.keys[i] = "user" + i;
+      this.missing[i] = "nobody" + i;
+      this.array.set(this.keys[i], i);
+    } // for
+  } // setup()
+
+  // +------------+--------------------------------------------------
+  // | Benchmarks |
+  // +------------+
+
+  /**
+   * Look up a key that is present.
+   *
+   * @return the value found.
+   * @throws Exception if the key is missing.
+   */
+  @Benchmark
+  public Integer get() throws Exception {
+    this.next = (this.next + 1) % this.size;
+    return this.array.get(this.keys[this.next]);
+  } // get()
+
+  /**
+   * Check for a key that is absent.
+   *
+   * @return whether the key was found.
+   */
+  @Benchmark
+  public boolean hasKeyMissing() {
+    this.next = (this.next + 1) % this.size;
+    return this.array.hasKey(this.missing[this.next]);
+  } // hasKeyMissing()
+
+  /**
+   * Add to a balance, as BlockChain does for each transaction.
+   *
+   * @throws Exception if the key is missing.
+   */
+  @Benchmark
+  public void adjust() throws Exception {
+    this.next = (this.next + 1) % this.size;
+    String key = this.keys[this.next];
+    if (this.array.hasKey(key)) {
+      this.array.set(key, this.array.get(key) + 1);
+    } // if
+  } // adjust()
+
+  /**
+   * Remove a key and put it back.
+   *
+   * @throws Exception if the table rejects the key.
+   */
+  @Benchmark
+  public void removeAndSet() throws Exception {
+    this.next = (this.next + 1) % this.size;
+    this.array.remove(this.keys[this.next]);
+    this.array.set(this.keys[this.next], this.next);
+  } // removeAndSet()
+} // class AssociativeArrayBenchmark
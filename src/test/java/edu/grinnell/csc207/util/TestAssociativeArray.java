@@ -0,0 +1,107 @@
+package edu.grinnell.csc207.util;
+
+import java.util.HashMap;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Some simple tests of our AssociativeArray class.
+ *
+ * @author Alex Pollock
+ * @author Kevin Tang
+ */
+public class TestAssociativeArray {
+  /**
+   * Some basic tests.
+   */
+  @Test
+  public void basicTests() throws Exception {
+    AssociativeArray<String, Integer> aa = new AssociativeArray<String, Integer>();
+    assertEquals(0, aa.size(), "empty size");
+    assertFalse(aa.hasKey("a"), "empty has no keys");
+    assertFalse(aa.hasKey(null), "null key is never present");
+    aa.set("a", 1);
+    aa.set("b", 2);
+    aa.set("a", 3);
+    assertEquals(2, aa.size(), "size after replacing a value");
+    assertEquals(3, aa.get("a"), "replaced value");
+    assertEquals(2, aa.get("b"), "other value");
+    assertEquals("a", aa.getElement(0).getKey(), "pairs stay in the order they were added");
+    aa.remove("a");
+    assertFalse(aa.hasKey("a"), "removed key");
+    assertEquals("b", aa.getElement(0).getKey(), "last pair fills the gap");
+    assertThrows(KeyNotFoundException.class, () -> aa.get("a"));
+    assertThrows(KeyNotFoundException.class, () -> aa.get(null));
+    assertThrows(NullKeyException.class, () -> aa.set(null, 0));
+    aa.remove("missing");
+    assertEquals(1, aa.size(), "removing a missing key does nothing");
+  } // basicTests()
+
+  /**
+   * Keys whose hash codes collide should all still be found, including after removals shift
+   * them around the table.
+   */
+  @Test
+  public void collisionTest() throws Exception {
+    // "Aa" and "BB" have the same hash code, and so do all strings built from them.
+    String[] keys = new String[64];
+    for (int i = 0; i < keys.length; i++) {
+      StringBuilder key = new StringBuilder();
+      for (int bit = 0; bit < 6; bit++) {
+        key.append(((i >> bit) & 1) == 0 ? "Aa" : "BB");
+      } // for
+      keys[i] = key.toString();
+    } // for
+    AssociativeArray<String, Integer> aa = new AssociativeArray<String, Integer>();
+    for (int i = 0; i < keys.length; i++) {
+      aa.set(keys[i], i);
+    } // for
+    for (int i = 0; i < keys.length; i += 2) {
+      aa.remove(keys[i]);
+    } // for
+    for (int i = 0; i < keys.length; i++) {
+      assertEquals(i % 2 == 1, aa.hasKey(keys[i]), "colliding key " + i);
+    } // for
+  } // collisionTest()
+
+  /**
+   * A long random sequence of operations should match java.util.HashMap.
+   */
+  @Test
+  public void randomTest() throws Exception {
+    Random rand = new Random(207);
+    AssociativeArray<Integer, Integer> aa = new AssociativeArray<Integer, Integer>();
+    HashMap<Integer, Integer> expected = new HashMap<Integer, Integer>();
+    for (int step = 0; step < 200000; step++) {
+      Integer key = rand.nextInt(5000);
+      switch (rand.nextInt(3)) {
+        case 0:
+          aa.remove(key);
+          expected.remove(key);
+          break;
+        default:
+          aa.set(key, step);
+          expected.put(key, step);
+          break;
+      } // switch
+    } // for
+    assertEquals(expected.size(), aa.size(), "size");
+    for (int key = 0; key < 5000; key++) {
+      assertEquals(expected.containsKey(key), aa.hasKey(key), "presence of " + key);
+      if (expected.containsKey(key)) {
+        assertEquals(expected.get(key), aa.get(key), "value of " + key);
+      } // if
+    } // for
+    for (int i = 0; i < aa.size(); i++) {
+      KVPair<Integer, Integer> pair = aa.getElement(i);
+      assertEquals(expected.get(pair.getKey()), pair.getVal(), "pair " + i);
+    } // for
+    assertTrue(aa.clone().size() == aa.size(), "clone has the same size");
+  } // randomTest()
+} // class TestAssociativeArray
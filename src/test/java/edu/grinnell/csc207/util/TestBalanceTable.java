@@ -0,0 +1,74 @@
+package edu.grinnell.csc207.util;
+
+import java.util.HashMap;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Some simple tests of our BalanceTable class.
+ *
+ * @author Alex Pollock
+ * @author Kevin Tang
+ */
+public class TestBalanceTable {
+  /**
+   * Some basic tests.
+   */
+  @Test
+  public void basicTests() throws Exception {
+    BalanceTable table = new BalanceTable();
+    assertEquals(0, table.get("A"), "unused account");
+    assertFalse(table.hasKey("A"), "unused account is not present");
+    assertEquals(100, table.add("A", 100), "deposit");
+    assertEquals(70, table.subtract("A", 30), "withdrawal");
+    assertEquals(-5, table.subtract("B", 5), "overdraft on a new account");
+    assertEquals(2, table.size(), "two accounts");
+    assertEquals("A", table.keyAt(0), "first account");
+    assertEquals(-5, table.valueAt(1), "second balance");
+    assertEquals("{A:70, B:-5}", table.toString(), "string form");
+    assertThrows(NullKeyException.class, () -> table.add(null, 1));
+  } // basicTests()
+
+  /**
+   * Balances are longs, so they do not overflow at Integer.MAX_VALUE.
+   */
+  @Test
+  public void largeTest() throws Exception {
+    BalanceTable table = new BalanceTable();
+    table.add("A", Integer.MAX_VALUE);
+    table.add("A", Integer.MAX_VALUE);
+    assertEquals(2L * Integer.MAX_VALUE, table.get("A"), "sum of two large deposits");
+  } // largeTest()
+
+  /**
+   * A long random sequence of updates should match java.util.HashMap.
+   */
+  @Test
+  public void randomTest() throws Exception {
+    Random rand = new Random(207);
+    BalanceTable table = new BalanceTable();
+    HashMap<String, Long> expected = new HashMap<String, Long>();
+    for (int step = 0; step < 100000; step++) {
+      String key = "user" + rand.nextInt(20000);
+      long amount = rand.nextInt(1000) - 500;
+      table.add(key, amount);
+      expected.merge(key, amount, Long::sum);
+    } // for
+    assertEquals(expected.size(), table.size(), "size");
+    for (int i = 0; i < table.size(); i++) {
+      assertEquals(expected.get(table.keyAt(i)), table.valueAt(i), "balance " + i);
+      assertEquals(table.valueAt(i), table.get(table.keyAt(i)), "lookup " + i);
+    } // for
+    assertEquals(expected.values().stream().filter((v) -> v < 0).count(), table.negatives(),
+        "overdrawn accounts");
+    BalanceTable clone = table.clone();
+    clone.add("user0", 1);
+    assertTrue(clone.get("user0") == table.get("user0") + 1, "clone is independent");
+  } // randomTest()
+} // class TestBalanceTable